@@ -0,0 +1,18 @@
+-- elwasys portal, migration 001: credit balance checkpoints
+--
+-- Run once as the owner of the elwasys database. Requires PostgreSQL 9.5 or newer.
+--
+-- The portal stores one checkpoint per user and sums only the accounting entries booked since. Without this table the
+-- portal computes the credit from all accounting entries.
+
+CREATE TABLE IF NOT EXISTS credit_balances (
+    user_id       INTEGER PRIMARY KEY REFERENCES users (id) ON DELETE CASCADE,
+    accounting_id INTEGER   NOT NULL,
+    balance       NUMERIC   NOT NULL,
+    updated       TIMESTAMP NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS credit_accounting_user_id_idx ON credit_accounting (user_id, id);
+
+-- Replace elwaportal with the database user of the portal.
+-- GRANT SELECT, INSERT, UPDATE, DELETE ON credit_balances TO elwaportal;
@@ -0,0 +1,38 @@
+-- elwasys portal, migration 002: change notifications
+--
+-- Run once as the owner of the elwasys database.
+--
+-- Every change of an execution, accounting entry, user or device is reported on the notification channel
+-- elwaportal_changes as "<table>:<operation>:<id>:<related id>". The portal listens on this channel to update its
+-- cache and dashboards without polling. Without these triggers the portal polls the dashboards instead.
+
+CREATE OR REPLACE FUNCTION elwaportal_notify_change() RETURNS trigger AS $$
+DECLARE
+    r json;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        r := row_to_json(OLD);
+    ELSE
+        r := row_to_json(NEW);
+    END IF;
+    PERFORM pg_notify('elwaportal_changes', TG_TABLE_NAME || ':' || TG_OP || ':' || (r ->> 'id') || ':'
+        || COALESCE(CASE WHEN TG_NARGS > 0 THEN r ->> TG_ARGV[0] END, ''));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS elwaportal_change ON executions;
+CREATE TRIGGER elwaportal_change AFTER INSERT OR UPDATE OR DELETE ON executions
+    FOR EACH ROW EXECUTE PROCEDURE elwaportal_notify_change('device_id');
+
+DROP TRIGGER IF EXISTS elwaportal_change ON credit_accounting;
+CREATE TRIGGER elwaportal_change AFTER INSERT OR UPDATE OR DELETE ON credit_accounting
+    FOR EACH ROW EXECUTE PROCEDURE elwaportal_notify_change('user_id');
+
+DROP TRIGGER IF EXISTS elwaportal_change ON users;
+CREATE TRIGGER elwaportal_change AFTER INSERT OR UPDATE OR DELETE ON users
+    FOR EACH ROW EXECUTE PROCEDURE elwaportal_notify_change();
+
+DROP TRIGGER IF EXISTS elwaportal_change ON devices;
+CREATE TRIGGER elwaportal_change AFTER INSERT OR UPDATE OR DELETE ON devices
+    FOR EACH ROW EXECUTE PROCEDURE elwaportal_notify_change();
@@ -0,0 +1,29 @@
+-- elwasys portal, migration 003: outgoing emails
+--
+-- Run once as the owner of the elwasys database. Requires PostgreSQL 9.5 or newer.
+--
+-- The portal stores outgoing emails here before sending them in the background, so that they survive an outage of
+-- the mail server or a restart of the portal. Without this table, the portal sends emails synchronously and does not
+-- retry them.
+--
+-- Emails with a password reset link only store a placeholder for the key together with the user. The key is created
+-- right before sending. The body is cleared once an email has been sent or given up.
+
+CREATE TABLE IF NOT EXISTS mail_outbox (
+    id           SERIAL PRIMARY KEY,
+    recipient    TEXT      NOT NULL,
+    subject      TEXT      NOT NULL,
+    body         TEXT      NOT NULL,
+    user_id      INTEGER   REFERENCES users (id) ON DELETE CASCADE,
+    created      TIMESTAMP NOT NULL DEFAULT now(),
+    attempts     INTEGER   NOT NULL DEFAULT 0,
+    next_attempt TIMESTAMP NOT NULL DEFAULT now(),
+    last_error   TEXT,
+    sent         TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS mail_outbox_pending ON mail_outbox (next_attempt) WHERE sent IS NULL;
+
+-- Replace elwaportal with the database user of the portal.
+-- GRANT SELECT, INSERT, UPDATE, DELETE ON mail_outbox TO elwaportal;
+-- GRANT USAGE ON SEQUENCE mail_outbox_id_seq TO elwaportal;
@@ -0,0 +1,293 @@
+package org.kabieror.elwasys.webportal;
+
+import org.kabieror.elwasys.webportal.data.ChangeEvent;
+import org.kabieror.elwasys.webportal.data.ChangeFeed;
+import org.kabieror.elwasys.webportal.data.ExecutionSummary;
+import org.kabieror.elwasys.webportal.data.PortalDataManager;
+import org.kabieror.elwasys.webportal.events.IDatabaseChangedEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verfolgt die Belegung der Geräte und deren letzte Programmausführungen für
+ * alle geöffneten Dashboards gemeinsam. Die Daten werden in festen Abständen
+ * mit einer einzigen Abfrage für alle abonnierten Geräte geladen. Jeder
+ * Abonnent erhält pro Durchlauf höchstens eine Benachrichtigung mit den
+ * Geräten, die sich seit dem letzten Durchlauf geändert haben.
+ * <p>
+ * Solange der Änderungsstrom der Datenbank verbunden ist, werden nur die
+ * Geräte neu geladen, für die eine Änderung gemeldet wurde, sowie die Geräte,
+ * deren laufende Ausführung ihr Ende erreicht hat. Letztere laufen ohne
+ * Änderung der Datenbank ab und werden daher nicht gemeldet. Meldungen, die
+ * kurz nacheinander eintreffen, werden zu einem Durchlauf zusammengefasst.
+ *
+ * @author Oliver Kabierschke
+ */
+public class DashboardBroadcaster implements IDatabaseChangedEventListener {
+
+    /**
+     * Die Verzögerung in Millisekunden, mit der nach einer Änderungsmeldung
+     * aktualisiert wird
+     */
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PortalDataManager dataManager;
+
+    private final ChangeFeed changeFeed;
+
+    private final int historyDepth;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Die abonnierten Geräte je Abonnent
+     */
+    private final Map<IExecutionsChangedListener, Set<Integer>> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Der zuletzt geladene Stand je Gerät
+     */
+    private final Map<Integer, List<ExecutionSummary>> snapshot = new ConcurrentHashMap<>();
+
+    /**
+     * Die Geräte, für die seit dem letzten Durchlauf Änderungen gemeldet wurden
+     */
+    private final Set<Integer> dirtyDevices = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Gibt an, ob ein vorgezogener Durchlauf bereits geplant ist
+     */
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    /**
+     * Gibt an, ob beim nächsten Durchlauf alle Geräte neu geladen werden müssen
+     */
+    private volatile boolean resync = true;
+
+    /**
+     * Konstruktor
+     *
+     * @param dataManager
+     *            Der Manager, über den die Ausführungen geladen werden
+     * @param changeFeed
+     *            Der Änderungsstrom der Datenbank oder null, falls in jedem
+     *            Durchlauf alle Geräte geladen werden sollen
+     * @param historyDepth
+     *            Die Anzahl der Ausführungen je Gerät
+     * @param intervalSeconds
+     *            Der Abstand zwischen zwei Aktualisierungen in Sekunden
+     */
+    public DashboardBroadcaster(PortalDataManager dataManager, ChangeFeed changeFeed, int historyDepth,
+                                int intervalSeconds) {
+        this.dataManager = dataManager;
+        this.changeFeed = changeFeed;
+        this.historyDepth = historyDepth;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "dashboard-broadcaster");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::poll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        if (changeFeed != null) {
+            changeFeed.addListener(this);
+        }
+    }
+
+    /**
+     * Gibt die letzten Ausführungen der Geräte zurück. Geräte, die bereits
+     * verfolgt werden, werden ohne Datenbankzugriff beantwortet.
+     *
+     * @param deviceIds
+     *            Die IDs der Geräte
+     * @return Die Ausführungen je Gerät, die neueste zuerst
+     * @throws SQLException
+     */
+    public Map<Integer, List<ExecutionSummary>> getExecutions(Collection<Integer> deviceIds) throws SQLException {
+        final Set<Integer> missing = new HashSet<>(deviceIds);
+        missing.removeAll(this.snapshot.keySet());
+        if (!missing.isEmpty()) {
+            this.snapshot.putAll(this.load(missing, false));
+        }
+        final Map<Integer, List<ExecutionSummary>> res = new HashMap<>();
+        for (final Integer id : deviceIds) {
+            res.put(id, this.snapshot.getOrDefault(id, Collections.emptyList()));
+        }
+        return res;
+    }
+
+    /**
+     * Abonniert die Änderungen der Ausführungen einiger Geräte. Der Abonnent
+     * wird auf dem Thread des Broadcasters benachrichtigt und muss selbst für
+     * den Zugriff auf seine UI sorgen.
+     *
+     * @param listener
+     *            Der Abonnent
+     * @param deviceIds
+     *            Die IDs der Geräte
+     */
+    public void subscribe(IExecutionsChangedListener listener, Collection<Integer> deviceIds) {
+        this.subscriptions.put(listener, new HashSet<>(deviceIds));
+    }
+
+    /**
+     * Beendet ein Abonnement.
+     *
+     * @param listener
+     *            Der Abonnent
+     */
+    public void unsubscribe(IExecutionsChangedListener listener) {
+        this.subscriptions.remove(listener);
+    }
+
+    /**
+     * Beendet die Aktualisierung der Dashboards.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.subscriptions.clear();
+    }
+
+    /**
+     * @return Die Anzahl der Abonnenten
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    private Map<Integer, List<ExecutionSummary>> load(Collection<Integer> deviceIds, boolean primary)
+            throws SQLException {
+        final Map<Integer, List<ExecutionSummary>> res = this.dataManager.getLastExecutions(deviceIds,
+                this.historyDepth, primary);
+        for (final Integer id : deviceIds) {
+            res.putIfAbsent(id, Collections.emptyList());
+        }
+        return res;
+    }
+
+    /**
+     * @return Die Geräte, deren Ausführung laut dem geladenen Stand noch läuft,
+     *         obwohl ihr Ende bereits erreicht ist
+     */
+    private Set<Integer> getExpiredDevices() {
+        final LocalDateTime now = LocalDateTime.now();
+        final Set<Integer> res = new HashSet<>();
+        for (final Map.Entry<Integer, List<ExecutionSummary>> e : this.snapshot.entrySet()) {
+            for (final ExecutionSummary x : e.getValue()) {
+                if (x.isRunning() && x.getStopDate() != null && !x.getStopDate().isAfter(now)) {
+                    res.add(e.getKey());
+                }
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void onDatabaseChanged(ChangeEvent e) {
+        if (e.getTable() != ChangeEvent.Table.EXECUTION || e.getRelatedId() == null) {
+            return;
+        }
+        this.dirtyDevices.add(e.getRelatedId());
+        if (this.refreshPending.compareAndSet(false, true)) {
+            this.executor.schedule(this::poll, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void onChangesMissed() {
+        this.resync = true;
+    }
+
+    private void poll() {
+        this.refreshPending.set(false);
+        final Set<Integer> deviceIds = new HashSet<>();
+        for (final Set<Integer> ids : this.subscriptions.values()) {
+            deviceIds.addAll(ids);
+        }
+        // Nicht mehr angezeigte Geräte vergessen, damit sie beim nächsten
+        // Öffnen frisch geladen werden
+        this.snapshot.keySet().retainAll(deviceIds);
+        if (deviceIds.isEmpty()) {
+            this.dirtyDevices.clear();
+            return;
+        }
+
+        // Ohne Änderungsstrom alle Geräte laden, sonst nur die geänderten und
+        // die abgelaufenen. Was der Änderungsstrom meldet, kennt ein Replikat
+        // eventuell noch nicht, daher wird dann die primäre Datenbank gelesen.
+        final Set<Integer> toLoad = new HashSet<>(deviceIds);
+        final boolean feedConnected = this.changeFeed != null && this.changeFeed.isConnected();
+        if (feedConnected && !this.resync) {
+            final Set<Integer> due = new HashSet<>(this.dirtyDevices);
+            due.addAll(this.getExpiredDevices());
+            toLoad.retainAll(due);
+        }
+        this.resync = false;
+        this.dirtyDevices.removeAll(toLoad);
+
+        final Map<Integer, List<ExecutionSummary>> changed = new HashMap<>();
+        if (!toLoad.isEmpty()) {
+            final Map<Integer, List<ExecutionSummary>> fresh;
+            try {
+                fresh = this.load(toLoad, feedConnected);
+            } catch (final SQLException e) {
+                this.logger.error("Could not load the executions for the dashboards.", e);
+                this.resync = true;
+                return;
+            }
+            for (final Map.Entry<Integer, List<ExecutionSummary>> e : fresh.entrySet()) {
+                if (!e.getValue().equals(this.snapshot.put(e.getKey(), e.getValue()))) {
+                    changed.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        // Geräte mit laufender Ausführung gelten immer als geändert, da sich
+        // deren Laufzeit fortschreibt
+        for (final Map.Entry<Integer, List<ExecutionSummary>> e : this.snapshot.entrySet()) {
+            if (e.getValue().stream().anyMatch(ExecutionSummary::isRunning)) {
+                changed.put(e.getKey(), e.getValue());
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        for (final Map.Entry<IExecutionsChangedListener, Set<Integer>> s : this.subscriptions.entrySet()) {
+            final Map<Integer, List<ExecutionSummary>> delta = new HashMap<>();
+            for (final Integer id : s.getValue()) {
+                if (changed.containsKey(id)) {
+                    delta.put(id, changed.get(id));
+                }
+            }
+            if (!delta.isEmpty()) {
+                try {
+                    s.getKey().onExecutionsChanged(delta);
+                } catch (final RuntimeException e) {
+                    this.logger.warn("Could not notify a dashboard.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Abonnent der Änderungen an den Ausführungen von Geräten
+     */
+    @FunctionalInterface
+    public interface IExecutionsChangedListener {
+        /**
+         * @param changed
+         *            Die geänderten Geräte mit ihren aktuellen Ausführungen
+         */
+        void onExecutionsChanged(Map<Integer, List<ExecutionSummary>> changed);
+    }
+}
@@ -0,0 +1,360 @@
+package org.kabieror.elwasys.webportal;
+
+import org.apache.commons.mail.EmailException;
+import org.kabieror.elwasys.common.User;
+import org.kabieror.elwasys.webportal.data.MailOutbox;
+import org.kabieror.elwasys.webportal.data.OutboxMail;
+import org.kabieror.elwasys.webportal.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.*;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Versendet Emails im Hintergrund. Emails werden zunächst in der Datenbank
+ * abgelegt, sodass der Aufrufer nicht auf den Mailserver warten muss. Ein
+ * eigener Thread versendet die fälligen Emails über eine gemeinsame
+ * Verbindung zum Mailserver. Schlägt der Versand fehl, wird er mit
+ * wachsendem Abstand wiederholt, bis die erlaubte Anzahl an Versuchen
+ * erreicht ist.
+ * <p>
+ * Zugangsdaten werden nicht in der Datenbank abgelegt. Emails mit einem Link
+ * zum Zurücksetzen des Passworts enthalten bis zum Versand nur einen
+ * Platzhalter, für den unmittelbar vor dem Versand ein neuer Schlüssel erzeugt
+ * wird. Der Text versandter und aufgegebener Emails wird verworfen.
+ * <p>
+ * Fehlt die Tabelle der ausgehenden Emails, werden Emails wie bisher
+ * synchron über {@link WashportalUtilities} versandt und nicht wiederholt.
+ *
+ * @author Oliver Kabierschke
+ */
+public class MailQueue {
+
+    /**
+     * Der größte Abstand zwischen zwei Versuchen in Sekunden
+     */
+    private static final long MAX_RETRY_DELAY_SECONDS = 3600;
+
+    /**
+     * Der Platzhalter für den Schlüssel zum Zurücksetzen des Passworts
+     */
+    public static final String RESET_KEY_PLACEHOLDER = "{reset-key}";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MailOutbox outbox;
+
+    private final WashportalConfiguration config;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final long retryDelaySeconds;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Ist gesetzt, solange ein Versand ansteht, der noch nicht begonnen hat
+     */
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final LatencyHistogram deliveryDelay = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+
+    /**
+     * Konstruktor
+     *
+     * @param outbox
+     *            Die Tabelle der ausgehenden Emails oder null, falls sie
+     *            nicht angelegt ist
+     * @param config
+     *            Die Konfiguration mit den Zugangsdaten des Mailservers
+     */
+    public MailQueue(MailOutbox outbox, WashportalConfiguration config) {
+        this.outbox = outbox;
+        this.config = config;
+        this.batchSize = config.getMailBatchSize();
+        this.maxAttempts = config.getMailMaxAttempts();
+        this.retryDelaySeconds = config.getMailRetryDelay();
+        if (outbox == null) {
+            this.executor = null;
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "mail-sender");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::drain, 0, config.getMailPollInterval(), TimeUnit.SECONDS);
+        this.executor.scheduleWithFixedDelay(this::cleanup, 1, 24, TimeUnit.HOURS);
+    }
+
+    /**
+     * Legt eine Email mit einem Link zum Zurücksetzen des Passworts zum
+     * Versand ab. Der Schlüssel wird erst unmittelbar vor dem Versand erzeugt
+     * und an die Stelle von {@link #RESET_KEY_PLACEHOLDER} gesetzt, sodass er
+     * nie in der Datenbank der ausgehenden Emails steht. Ohne Tabelle der
+     * ausgehenden Emails wird die Email sofort versandt.
+     *
+     * @param user
+     *            Der Benutzer, an den die Email geht
+     * @param subject
+     *            Der Betreff
+     * @param message
+     *            Der Text mit dem Platzhalter für den Schlüssel
+     * @throws SQLException
+     *             Falls die Email nicht abgelegt werden konnte
+     * @throws EmailException
+     *             Falls die Email ohne Tabelle der ausgehenden Emails nicht
+     *             versandt werden konnte
+     */
+    public void enqueuePasswordReset(User user, String subject, String message)
+            throws SQLException, EmailException {
+        if (this.outbox == null) {
+            try {
+                WashportalManager.instance.getUtilities().sendEmail(subject, this.insertResetKey(user, message),
+                        user);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new EmailException("Could not create the password reset key.", e);
+            }
+            return;
+        }
+        final int id = this.outbox.add(user.getEmail(), subject, message, user.getId());
+        this.logger.debug("Queued email " + id + " to " + user.getEmail() + ".");
+        if (this.drainPending.compareAndSet(false, true)) {
+            this.executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Versendet alle fälligen Emails über eine gemeinsame Verbindung.
+     */
+    private void drain() {
+        this.drainPending.set(false);
+        final Session session = this.createSession();
+        Transport transport = null;
+        try {
+            transport = session.getTransport("smtp");
+            List<OutboxMail> due;
+            int sentInBatch;
+            do {
+                due = this.outbox.getDue(this.maxAttempts, this.batchSize);
+                sentInBatch = 0;
+                for (int i = 0; i < due.size(); i++) {
+                    final OutboxMail mail = due.get(i);
+                    if (!transport.isConnected()) {
+                        try {
+                            this.connect(transport);
+                        } catch (final MessagingException e) {
+                            // Mailserver nicht erreichbar, alle Emails des Durchlaufs verschieben
+                            for (final OutboxMail m : due.subList(i, due.size())) {
+                                this.onFailed(m, e);
+                            }
+                            return;
+                        }
+                    }
+                    try {
+                        this.send(session, transport, mail);
+                        sentInBatch++;
+                    } catch (final MessagingException e) {
+                        this.onFailed(mail, e);
+                    }
+                }
+            } while (due.size() == this.batchSize && sentInBatch > 0);
+        } catch (final SQLException e) {
+            this.logger.error("Could not read the outgoing emails.", e);
+        } catch (final NoSuchProviderException e) {
+            this.logger.error("Could not create the mail transport.", e);
+        } finally {
+            this.close(transport);
+        }
+    }
+
+    private Session createSession() {
+        final Properties props = new Properties();
+        props.setProperty("mail.smtp.host", this.config.getMailServer());
+        props.setProperty("mail.smtp.port", String.valueOf(this.config.getMailPort()));
+        props.setProperty("mail.smtp.auth", String.valueOf(!this.config.getMailUser().isEmpty()));
+        props.setProperty("mail.smtp.ssl.enable", String.valueOf(this.config.isMailSsl()));
+        props.setProperty("mail.smtp.connectiontimeout", "30000");
+        props.setProperty("mail.smtp.timeout", "30000");
+        return Session.getInstance(props);
+    }
+
+    private void connect(Transport transport) throws MessagingException {
+        final String user = this.config.getMailUser();
+        transport.connect(this.config.getMailServer(), this.config.getMailPort(), user.isEmpty() ? null : user,
+                user.isEmpty() ? null : this.config.getMailPassword());
+        this.connections.increment();
+    }
+
+    private void send(Session session, Transport transport, OutboxMail mail) throws MessagingException {
+        final MimeMessage msg = new MimeMessage(session);
+        msg.setFrom(new InternetAddress(this.config.getMailSender()));
+        msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(mail.getRecipient()));
+        msg.setSubject(mail.getSubject(), "UTF-8");
+        msg.setText(this.resolveBody(mail), "UTF-8");
+        msg.setSentDate(new Date());
+        msg.saveChanges();
+
+        final long start = System.nanoTime();
+        transport.sendMessage(msg, msg.getAllRecipients());
+        this.sendLatency.recordSince(start);
+        this.sent.increment();
+        this.deliveryDelay.record(Duration.between(mail.getCreated(), LocalDateTime.now()).toNanos());
+        try {
+            this.outbox.markSent(mail.getId());
+        } catch (final SQLException e) {
+            // Die Email könnte beim nächsten Durchlauf erneut versandt werden
+            this.logger.error("Could not mark the email " + mail.getId() + " as sent.", e);
+        }
+    }
+
+    /**
+     * Setzt einen neuen Schlüssel zum Zurücksetzen des Passworts in den Text
+     * ein, falls die Email einen solchen Link enthält.
+     */
+    private String resolveBody(OutboxMail mail) throws MessagingException {
+        if (mail.getUserId() == null) {
+            return mail.getBody();
+        }
+        try {
+            final User user = WashportalManager.instance.getDataManager().getUserById(mail.getUserId());
+            if (user == null) {
+                throw new MessagingException("The user " + mail.getUserId() + " does not exist anymore.");
+            }
+            return this.insertResetKey(user, mail.getBody());
+        } catch (final SQLException | NoSuchAlgorithmException e) {
+            throw new MessagingException("Could not create the password reset key.", e);
+        }
+    }
+
+    private String insertResetKey(User user, String body) throws SQLException, NoSuchAlgorithmException {
+        final String key = user.generatePasswordResetKey();
+        WashportalManager.instance.getEntityCache().onUserUpdated(user);
+        return body.replace(RESET_KEY_PLACEHOLDER, key);
+    }
+
+    private void onFailed(OutboxMail mail, MessagingException e) {
+        this.failures.increment();
+        final int attempt = mail.getAttempts() + 1;
+        final long delay = Math.min(this.retryDelaySeconds << Math.min(mail.getAttempts(), 20),
+                MAX_RETRY_DELAY_SECONDS);
+        if (attempt >= this.maxAttempts) {
+            this.logger.error("Giving up on the email " + mail.getId() + " to " + mail.getRecipient() + " after "
+                    + attempt + " attempts.", e);
+        } else {
+            this.logger.warn("Could not send the email " + mail.getId() + " to " + mail.getRecipient()
+                    + ". Retrying in " + delay + " s.", e);
+        }
+        try {
+            if (attempt >= this.maxAttempts) {
+                this.outbox.markGivenUp(mail.getId(), e.getMessage());
+            } else {
+                this.outbox.markFailed(mail.getId(), e.getMessage(), delay);
+            }
+        } catch (final SQLException e1) {
+            this.logger.error("Could not record the failed attempt of the email " + mail.getId() + ".", e1);
+        }
+    }
+
+    private void close(Transport transport) {
+        if (transport != null && transport.isConnected()) {
+            try {
+                transport.close();
+            } catch (final MessagingException e) {
+                this.logger.debug("Could not close the mail transport.", e);
+            }
+        }
+    }
+
+    private void cleanup() {
+        try {
+            final int count = this.outbox.deleteFinished(this.maxAttempts, this.config.getMailRetention());
+            this.logger.debug("Deleted " + count + " sent or given up emails.");
+        } catch (final SQLException e) {
+            this.logger.error("Could not delete the sent and given up emails.", e);
+        }
+    }
+
+    /**
+     * Beendet den Versand. Noch nicht versandte Emails verbleiben in der
+     * Datenbank und werden nach dem nächsten Start versandt.
+     */
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return True, falls Emails über die Tabelle der ausgehenden Emails
+     *         versandt werden, false beim synchronen Versand
+     */
+    public boolean isQueued() {
+        return this.outbox != null;
+    }
+
+    /**
+     * @return Die Anzahl der Emails, die auf ihren Versand warten, und die
+     *         Anzahl der Emails, deren Versand aufgegeben wurde, oder null
+     *         beim synchronen Versand
+     * @throws SQLException
+     */
+    public int[] getQueueDepth() throws SQLException {
+        return this.outbox != null ? this.outbox.count(this.maxAttempts) : null;
+    }
+
+    /**
+     * @return Die Dauer der Übergabe einer Email an den Mailserver
+     */
+    public LatencyHistogram getSendLatency() {
+        return this.sendLatency;
+    }
+
+    /**
+     * @return Die Zeit zwischen Ablage und Versand einer Email
+     */
+    public LatencyHistogram getDeliveryDelay() {
+        return this.deliveryDelay;
+    }
+
+    /**
+     * @return Die Anzahl der versandten Emails
+     */
+    public long getSentCount() {
+        return this.sent.sum();
+    }
+
+    /**
+     * @return Die Anzahl der fehlgeschlagenen Versuche
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return Die Anzahl der Verbindungen zum Mailserver
+     */
+    public long getConnectionCount() {
+        return this.connections.sum();
+    }
+}
@@ -1,13 +1,26 @@
 package org.kabieror.elwasys.webportal;
 
 import org.kabieror.elwasys.common.Location;
-import org.kabieror.elwasys.common.maintenance.IClientConnection;
-import org.kabieror.elwasys.common.maintenance.MaintenanceServer;
+import org.kabieror.elwasys.common.maintenance.*;
+import org.kabieror.elwasys.webportal.maintenance.LogFilter;
+import org.kabieror.elwasys.webportal.maintenance.LogMatch;
+import org.kabieror.elwasys.webportal.maintenance.MaintenanceMetrics;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Dieser Manager hält Verbindungen zu Client-Instanzen an Standorten.
+ * <p>
+ * Anfragen an die Clients können asynchron gestellt werden. Sie laufen dann
+ * auf einem begrenzten Thread-Pool und werden nach einer Frist abgebrochen,
+ * sodass ein langsamer Client weder die Oberfläche noch die Threads des
+ * Servlet-Containers blockiert.
  *
  * @author Oliver Kabierschke
  *
@@ -15,9 +28,51 @@ import java.io.IOException;
 public class MaintenanceConnectionManager {
     MaintenanceServer server;
 
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long callTimeout;
+
+    private final MaintenanceMetrics metrics = new MaintenanceMetrics();
+
     public MaintenanceConnectionManager() throws IOException {
-        server =
-                new MaintenanceServer(WashportalManager.instance.getConfigurationManager().getMaintenancePort(), 50000);
+        this(WashportalManager.instance.getConfigurationManager());
+    }
+
+    private MaintenanceConnectionManager(WashportalConfiguration config) throws IOException {
+        this(new MaintenanceServer(config.getMaintenancePort(), 50000), config.getMaintenanceThreads(),
+                config.getMaintenanceQueueSize(), TimeUnit.SECONDS.toMillis(config.getMaintenanceCallTimeout()));
+    }
+
+    /**
+     * Konstruktor ohne Konfiguration, z.B. für Tests
+     *
+     * @param server
+     *            Der Wartungs-Server, über den die Clients erreicht werden
+     * @param threads
+     *            Die Anzahl der Threads für Anfragen
+     * @param queueSize
+     *            Die Anzahl der Anfragen, die auf einen Thread warten dürfen
+     * @param callTimeout
+     *            Die Frist für Anfragen in Millisekunden
+     */
+    MaintenanceConnectionManager(MaintenanceServer server, int threads, int queueSize, long callTimeout) {
+        this.server = server;
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    final Thread t = new Thread(r, "maintenance-call-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "maintenance-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.callTimeout = callTimeout;
     }
 
     /**
@@ -30,4 +85,250 @@ public class MaintenanceConnectionManager {
     public IClientConnection getClient(Location location) {
         return this.server.getClientConnection(location.getName());
     }
+
+    /**
+     * Stellt eine Anfrage an den Client eines Standorts, ohne auf die Antwort
+     * zu warten. Es gilt die konfigurierte Frist.
+     *
+     * @param location
+     *            Der Standort, dessen Client angefragt wird.
+     * @param call
+     *            Die Anfrage, z.B. {@code c -> c.sendQuery(new GetLogRequest())}.
+     * @return Das Ergebnis der Anfrage.
+     * @see #callAsync(Location, ClientCall, long)
+     */
+    public <T> CompletableFuture<T> callAsync(Location location, ClientCall<T> call) {
+        return this.callAsync(location, call, this.callTimeout);
+    }
+
+    /**
+     * Stellt eine Anfrage an den Client eines Standorts, ohne auf die Antwort
+     * zu warten.
+     * <p>
+     * Das Ergebnis schlägt mit einer {@link ClientNotConnectedException} fehl,
+     * falls der Client nicht verbunden ist, mit einer
+     * {@link RejectedExecutionException}, falls bereits zu viele Anfragen
+     * warten, und mit einer {@link TimeoutException}, falls die Frist
+     * verstrichen ist. Wird das Ergebnis abgebrochen, wird auch die Anfrage
+     * abgebrochen.
+     *
+     * @param location
+     *            Der Standort, dessen Client angefragt wird.
+     * @param call
+     *            Die Anfrage.
+     * @param timeoutMillis
+     *            Die Frist in Millisekunden.
+     * @return Das Ergebnis der Anfrage.
+     */
+    public <T> CompletableFuture<T> callAsync(Location location, ClientCall<T> call, long timeoutMillis) {
+        final IClientConnection client = this.getClient(location);
+        if (client == null) {
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(new ClientNotConnectedException(location.getName()));
+            return result;
+        }
+        return this.callAsync(location.getName(), client, call, timeoutMillis);
+    }
+
+    /**
+     * Stellt eine Anfrage an einen bereits ermittelten Client.
+     *
+     * @param locationName
+     *            Der Name des Standorts, unter dem die Messwerte erfasst werden.
+     * @param client
+     *            Der Wartungs-Zugang zum Client.
+     * @param call
+     *            Die Anfrage.
+     * @param timeoutMillis
+     *            Die Frist in Millisekunden.
+     * @return Das Ergebnis der Anfrage.
+     * @see #callAsync(Location, ClientCall, long)
+     */
+    <T> CompletableFuture<T> callAsync(String locationName, IClientConnection client, ClientCall<T> call,
+                                       long timeoutMillis) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Future<?> task;
+        try {
+            task = this.executor.submit(() -> {
+                final long start = System.nanoTime();
+                try {
+                    final T value = call.call(client);
+                    this.metrics.recordCall(locationName, System.nanoTime() - start);
+                    result.complete(value);
+                } catch (final Exception e) {
+                    if (!result.isDone()) {
+                        this.metrics.recordFailure(locationName, false);
+                    }
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        final ScheduledFuture<?> deadline = this.scheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("The client at " + locationName
+                    + " did not respond within " + timeoutMillis + " ms."))) {
+                this.metrics.recordFailure(locationName, true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((r, e) -> {
+            deadline.cancel(false);
+            // Bei Abbruch oder Fristablauf den Thread wieder freigeben
+            task.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * Ruft die Log-Datei des Clients eines Standorts ab, ohne auf die Antwort
+     * zu warten.
+     *
+     * @param location
+     *            Der Standort, dessen Log-Datei abgerufen wird.
+     * @return Die Zeilen der Log-Datei.
+     */
+    public CompletableFuture<List<String>> getLogAsync(Location location) {
+        return this.getLogAsync(location, log -> log);
+    }
+
+    /**
+     * Ruft die Log-Datei des Clients eines Standorts ab und wertet sie auf dem
+     * Thread der Anfrage aus. Anders als bei einer nachgelagerten Auswertung
+     * des Ergebnisses erreicht ein Abbruch des Ergebnisses so die Anfrage.
+     *
+     * @param location
+     *            Der Standort, dessen Log-Datei abgerufen wird.
+     * @param mapper
+     *            Die Auswertung der Zeilen der Log-Datei.
+     * @return Das Ergebnis der Auswertung.
+     */
+    public <T> CompletableFuture<T> getLogAsync(Location location, Function<List<String>, T> mapper) {
+        return this.callAsync(location, c -> mapper.apply(this.fetchLog(location, c, null)));
+    }
+
+    /**
+     * Durchsucht die Log-Datei des Clients eines Standorts. Der Filter wird
+     * auf dem Thread der Anfrage angewendet, sodass nur die Treffer im
+     * Speicher verbleiben.
+     *
+     * @param location
+     *            Der Standort, dessen Log-Datei durchsucht wird.
+     * @param filter
+     *            Der Filter für die Zeilen.
+     * @param transferred
+     *            Wird um die Größe der empfangenen Log-Datei in Bytes erhöht.
+     * @return Die Treffer mit ihren Kontextzeilen.
+     */
+    public CompletableFuture<List<LogMatch>> searchLogAsync(Location location, LogFilter filter,
+                                                            AtomicLong transferred) {
+        return this.callAsync(location,
+                c -> filter.apply(location.getName(), this.fetchLog(location, c, transferred)));
+    }
+
+    /**
+     * Führt eine Aufgabe regelmäßig aus, z.B. um wiederholt Anfragen an einen
+     * Client zu stellen. Die Aufgabe sollte selbst nicht blockieren.
+     *
+     * @param task
+     *            Die Aufgabe.
+     * @param periodMillis
+     *            Der Abstand zwischen zwei Ausführungen in Millisekunden.
+     * @return Die geplante Aufgabe, über die sie beendet werden kann.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long periodMillis) {
+        return this.scheduler.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Führt eine Aufgabe einmalig nach einer Verzögerung aus. Die Aufgabe
+     * sollte selbst nicht blockieren.
+     *
+     * @param task
+     *            Die Aufgabe.
+     * @param delayMillis
+     *            Die Verzögerung in Millisekunden.
+     * @return Die geplante Aufgabe, über die sie abgebrochen werden kann.
+     */
+    public ScheduledFuture<?> runLater(Runnable task, long delayMillis) {
+        return this.scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Beendet die Threads der Anfragen und der geplanten Aufgaben. Laufende
+     * Anfragen werden unterbrochen.
+     */
+    public void shutdown() {
+        this.scheduler.shutdownNow();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return Die Messwerte der Wartungsverbindungen je Standort.
+     */
+    public MaintenanceMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    private List<String> fetchLog(Location location, IClientConnection client, AtomicLong transferred)
+            throws IOException {
+        final MaintenanceResponse res = client.sendQuery(new GetLogRequest());
+        if (!(res instanceof GetLogResponse)) {
+            throw new IOException("Expected GetLogResponse but got " + (res != null ? res.getClass().getName() : null));
+        }
+        final List<String> lines = ((GetLogResponse) res).getLogContent();
+        long bytes = 0;
+        for (final String line : lines) {
+            bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        this.metrics.recordBytesIn(location.getName(), bytes);
+        if (transferred != null) {
+            transferred.addAndGet(bytes);
+        }
+        return lines;
+    }
+
+    /**
+     * @return Die Frist für Anfragen an die Clients in Millisekunden.
+     */
+    public long getCallTimeout() {
+        return this.callTimeout;
+    }
+
+    /**
+     * @return Die Anzahl der Anfragen, die auf einen freien Thread warten.
+     */
+    public int getQueuedCalls() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return Die Anzahl der gerade laufenden Anfragen.
+     */
+    public int getActiveCalls() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * Eine Anfrage an einen Client
+     *
+     * @param <T>
+     *            Der Typ der Antwort
+     */
+    @FunctionalInterface
+    public interface ClientCall<T> {
+        T call(IClientConnection client) throws Exception;
+    }
+
+    /**
+     * Wird geworfen, falls der Client eines Standorts nicht verbunden ist.
+     */
+    public static class ClientNotConnectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ClientNotConnectedException(String locationName) {
+            super("No client is connected for the location " + locationName + ".");
+        }
+    }
 }
@@ -0,0 +1,313 @@
+package org.kabieror.elwasys.webportal;
+
+import org.kabieror.elwasys.common.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prüft Passwörter auf einem eigenen, begrenzten Thread-Pool, damit das
+ * rechenintensive Hashen nicht die Threads des Servlet-Containers belegt.
+ * Während einer Prüfung wartet der aufrufende Thread des Containers, es
+ * warten also höchstens so viele Threads wie der Pool Threads und
+ * Warteplätze hat.
+ * <p>
+ * Fehlgeschlagene Versuche werden je Benutzername und mit höherer Grenze je
+ * Client-Adresse gezählt. Wird die erlaubte Anzahl innerhalb des
+ * Zeitfensters erreicht, werden weitere Versuche für kurze Zeit ohne Hashen
+ * abgewiesen.
+ *
+ * @author Oliver Kabierschke
+ */
+public class PasswordVerifier {
+
+    /**
+     * Die Zeit, die maximal auf das Ergebnis einer Prüfung gewartet wird
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * Ab dieser Anzahl an Zählern werden abgelaufene Zähler entfernt
+     */
+    private static final int CLEANUP_THRESHOLD = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<String, AttemptCounter> attempts = new ConcurrentHashMap<>();
+
+    private final int maxAttempts;
+
+    private final int maxClientAttempts;
+
+    private final long windowMillis;
+
+    private final long lockoutMillis;
+
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Konstruktor
+     *
+     * @param threads
+     *            Die Anzahl an Threads, auf denen Passwörter geprüft werden
+     * @param queueSize
+     *            Die maximale Anzahl an wartenden Prüfungen
+     * @param maxAttempts
+     *            Die Anzahl erlaubter Fehlversuche je Benutzername und
+     *            Zeitfenster
+     * @param maxClientAttempts
+     *            Die Anzahl erlaubter Fehlversuche je Client-Adresse und
+     *            Zeitfenster
+     * @param windowSeconds
+     *            Die Länge des Zeitfensters in Sekunden
+     * @param lockoutSeconds
+     *            Die Dauer der Sperre nach zu vielen Fehlversuchen in Sekunden
+     */
+    public PasswordVerifier(int threads, int queueSize, int maxAttempts, int maxClientAttempts, int windowSeconds,
+                            int lockoutSeconds) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    final Thread t = new Thread(r, "password-verifier-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.maxAttempts = maxAttempts;
+        this.maxClientAttempts = maxClientAttempts;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        this.lockoutMillis = TimeUnit.SECONDS.toMillis(lockoutSeconds);
+    }
+
+    /**
+     * Prüft, ob der Benutzername oder die Client-Adresse gesperrt ist.
+     *
+     * @param username
+     *            Der Benutzername
+     * @param client
+     *            Die Adresse des Clients oder null, falls unbekannt
+     * @return True, falls weitere Versuche abgewiesen werden sollen
+     */
+    public boolean isThrottled(String username, String client) {
+        final long now = System.currentTimeMillis();
+        if (this.isLocked(userKey(username), now) || client != null && this.isLocked(clientKey(client), now)) {
+            this.throttled.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Zählt einen Fehlversuch für den Benutzernamen und die Client-Adresse.
+     * Erreicht einer der Zähler seine Grenze, wird er für die Dauer der
+     * Sperre gesperrt und beginnt danach von vorn.
+     *
+     * @param username
+     *            Der Benutzername
+     * @param client
+     *            Die Adresse des Clients oder null, falls unbekannt
+     */
+    public void recordFailure(String username, String client) {
+        final long now = System.currentTimeMillis();
+        this.recordFailure(userKey(username), this.maxAttempts, now);
+        if (client != null) {
+            this.recordFailure(clientKey(client), this.maxClientAttempts, now);
+        }
+        if (this.attempts.size() > CLEANUP_THRESHOLD) {
+            this.attempts.values().removeIf(c -> c.isExpired(now, this.windowMillis));
+        }
+    }
+
+    /**
+     * Setzt die Fehlversuche eines Benutzernamens zurück. Die Zähler der
+     * Client-Adressen bleiben erhalten.
+     *
+     * @param username
+     *            Der Benutzername
+     */
+    public void reset(String username) {
+        this.attempts.remove(userKey(username));
+    }
+
+    private boolean isLocked(String key, long now) {
+        final AttemptCounter c = this.attempts.get(key);
+        return c != null && now < c.lockedUntil;
+    }
+
+    private void recordFailure(String key, int max, long now) {
+        this.attempts.compute(key, (k, c) -> {
+            final AttemptCounter res = c == null || c.isExpired(now, this.windowMillis) ? new AttemptCounter(now) : c;
+            if (res.failures.incrementAndGet() >= max) {
+                res.lockedUntil = now + this.lockoutMillis;
+                res.failures.set(0);
+            }
+            return res;
+        });
+    }
+
+    private static String userKey(String username) {
+        return "user:" + username.toLowerCase();
+    }
+
+    private static String clientKey(String client) {
+        return "client:" + client;
+    }
+
+    /**
+     * Prüft das Passwort eines Benutzers auf dem Thread-Pool. Ist dieser
+     * ausgelastet, wird die Prüfung sofort abgewiesen.
+     *
+     * @param user
+     *            Der Benutzer
+     * @param password
+     *            Das zu prüfende Passwort
+     * @return True, falls das Passwort korrekt ist
+     * @throws VerificationRejectedException
+     *             Falls die Prüfung wegen Überlastung abgewiesen wurde
+     */
+    public boolean verify(User user, String password) throws VerificationRejectedException {
+        final Future<Boolean> result;
+        try {
+            result = this.executor.submit(() -> {
+                final long start = System.nanoTime();
+                try {
+                    return user.checkPassword(password);
+                } finally {
+                    final long duration = System.nanoTime() - start;
+                    this.totalHashNanos.add(duration);
+                    this.maxHashNanos.accumulate(duration);
+                    this.verifications.increment();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.rejected.increment();
+            this.logger.warn("Password verification rejected, " + this.getQueueDepth() + " verifications queued.");
+            throw new VerificationRejectedException(true);
+        }
+        try {
+            return result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final TimeoutException e) {
+            result.cancel(true);
+            this.rejected.increment();
+            this.logger.warn("Password verification timed out.");
+            throw new VerificationRejectedException(true);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VerificationRejectedException(true);
+        } catch (final ExecutionException e) {
+            this.logger.error("Password verification failed.", e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Beendet den Thread-Pool. Wartende Prüfungen werden verworfen.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return Die Anzahl der wartenden Prüfungen
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return Die Anzahl der gerade laufenden Prüfungen
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return Die Anzahl der durchgeführten Prüfungen
+     */
+    public long getVerificationCount() {
+        return this.verifications.sum();
+    }
+
+    /**
+     * @return Die Anzahl der wegen zu vieler Fehlversuche abgewiesenen Versuche
+     */
+    public long getThrottledCount() {
+        return this.throttled.sum();
+    }
+
+    /**
+     * @return Die Anzahl der wegen Überlastung abgewiesenen Prüfungen
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return Die durchschnittliche Dauer einer Prüfung in Millisekunden
+     */
+    public double getAverageHashMillis() {
+        final long count = this.verifications.sum();
+        return count == 0 ? 0 : this.totalHashNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return Die längste Dauer einer Prüfung in Millisekunden
+     */
+    public double getMaxHashMillis() {
+        return this.maxHashNanos.get() / 1e6;
+    }
+
+    /**
+     * Fehlversuche eines Schlüssels innerhalb eines Zeitfensters
+     */
+    private static class AttemptCounter {
+        private final long windowStart;
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long lockedUntil;
+
+        AttemptCounter(long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        boolean isExpired(long now, long windowMillis) {
+            return now - this.windowStart > windowMillis && now >= this.lockedUntil;
+        }
+    }
+
+    /**
+     * Wird geworfen, falls eine Passwortprüfung nicht durchgeführt wurde, weil
+     * zu viele Fehlversuche vorliegen oder der Server ausgelastet ist.
+     */
+    public static class VerificationRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean overloaded;
+
+        /**
+         * @param overloaded
+         *            True, falls der Server ausgelastet ist, false bei zu
+         *            vielen Fehlversuchen
+         */
+        public VerificationRejectedException(boolean overloaded) {
+            super(overloaded ? "Server ausgelastet, bitte erneut versuchen."
+                    : "Zu viele Anmeldeversuche. Bitte versuchen Sie es später erneut.");
+            this.overloaded = overloaded;
+        }
+
+        /**
+         * @return True, falls die Prüfung wegen Überlastung abgewiesen wurde
+         */
+        public boolean isOverloaded() {
+            return this.overloaded;
+        }
+    }
+}
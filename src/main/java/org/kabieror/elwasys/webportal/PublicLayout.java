@@ -5,6 +5,7 @@ import com.vaadin.server.FontAwesome;
 import com.vaadin.server.Page;
 import com.vaadin.shared.Position;
 import com.vaadin.ui.*;
+import org.kabieror.elwasys.webportal.PasswordVerifier.VerificationRejectedException;
 import org.kabieror.elwasys.webportal.components.PasswordForgotWindow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,6 +90,12 @@ public class PublicLayout extends VerticalLayout {
                     // Login erfolgreich
                     ui.loadSessionContent();
                 }
+            } catch (final VerificationRejectedException e1) {
+                final Notification msg = new Notification("Login fehlgeschlagen", e1.getMessage());
+                msg.setDelayMsec(3000);
+                msg.setPosition(Position.TOP_CENTER);
+                msg.setStyleName("error bar");
+                msg.show(Page.getCurrent());
             } catch (final SQLException e1) {
                 this.logger.error("Failed to log user in.", e1);
                 final Notification msg = new Notification("Datenbankfehler", e1.getMessage());
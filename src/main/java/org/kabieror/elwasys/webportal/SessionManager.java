@@ -1,9 +1,13 @@
 package org.kabieror.elwasys.webportal;
 
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinService;
 import com.vaadin.server.VaadinSession;
 import org.kabieror.elwasys.common.User;
+import org.kabieror.elwasys.webportal.PasswordVerifier.VerificationRejectedException;
 
 import java.sql.SQLException;
+import java.util.Set;
 
 public class SessionManager {
 
@@ -15,30 +19,64 @@ public class SessionManager {
      * Registriert die aktuelle Session als Admin-Session
      *
      * @throws SQLException
+     * @throws VerificationRejectedException
+     *             Falls zu viele Fehlversuche vorliegen oder der Server ausgelastet ist
      */
-    public boolean login(String username, String password) throws SQLException {
+    public boolean login(String username, String password) throws SQLException, VerificationRejectedException {
         if (username == null || username.isEmpty() || password == null) {
             return false;
         }
-        for (final User u : WashportalManager.instance.getDataManager().getUsers()) {
-            if (u.getUsername().equalsIgnoreCase(username)) {
-                if (u.checkPassword(password)) {
-                    u.updateLastLogin();
-                    if (u.isAdmin()) {
-                        VaadinSession.getCurrent().setAttribute(ATTRIBUTE_AUTHORIZED,
-                                AuthorizedType.ADMINISTRATOR);
-                    } else {
-                        VaadinSession.getCurrent().setAttribute(ATTRIBUTE_AUTHORIZED,
-                                AuthorizedType.USER);
-                    }
-                    VaadinSession.getCurrent().setAttribute(ATTRIBUTE_USER, u);
-                    return true;
-                } else {
-                    return false;
-                }
+        final PasswordVerifier verifier = WashportalManager.instance.getPasswordVerifier();
+        final String client = this.getClientAddress();
+        if (verifier.isThrottled(username, client)) {
+            throw new VerificationRejectedException(false);
+        }
+        final Integer userId = WashportalManager.instance.getPortalDataManager().getUserIdByUsername(username);
+        final User u = userId != null ? WashportalManager.instance.getDataManager().getUserById(userId) : null;
+        if (u == null || !verifier.verify(u, password)) {
+            verifier.recordFailure(username, client);
+            return false;
+        }
+        verifier.reset(username);
+        u.updateLastLogin();
+        if (u.isAdmin()) {
+            VaadinSession.getCurrent().setAttribute(ATTRIBUTE_AUTHORIZED, AuthorizedType.ADMINISTRATOR);
+        } else {
+            VaadinSession.getCurrent().setAttribute(ATTRIBUTE_AUTHORIZED, AuthorizedType.USER);
+        }
+        VaadinSession.getCurrent().setAttribute(ATTRIBUTE_USER, u);
+        return true;
+    }
+
+    /**
+     * Ermittelt die Adresse des Clients der aktuellen Anfrage. Stammt die
+     * Anfrage von einem vertrauenswürdigen Reverse-Proxy, wird die von ihm
+     * weitergeleitete Adresse verwendet, sonst ließe sich die Adresse
+     * beliebig vorgeben.
+     *
+     * @return Die Adresse des Clients oder null, falls es keine aktuelle
+     *         Anfrage gibt
+     */
+    public String getClientAddress() {
+        final VaadinRequest request = VaadinService.getCurrentRequest();
+        if (request == null) {
+            return null;
+        }
+        final String remote = request.getRemoteAddr();
+        final Set<String> trusted = WashportalManager.instance.getConfigurationManager().getTrustedProxies();
+        final String forwarded = request.getHeader("X-Forwarded-For");
+        if (!trusted.contains(remote) || forwarded == null) {
+            return remote;
+        }
+        // Von hinten die erste Adresse, die nicht selbst ein Proxy ist
+        final String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            final String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trusted.contains(hop)) {
+                return hop;
             }
         }
-        return false;
+        return remote;
     }
 
     public void logout() {
@@ -1,5 +1,6 @@
 package org.kabieror.elwasys.webportal;
 
+import com.vaadin.annotations.Push;
 import com.vaadin.annotations.Theme;
 import com.vaadin.annotations.Title;
 import com.vaadin.annotations.VaadinServletConfiguration;
@@ -17,6 +18,7 @@ import javax.servlet.annotation.WebServlet;
 import java.sql.SQLException;
 
 @SuppressWarnings("serial")
+@Push
 @Theme("waschportal")
 @Title("Waschportal")
 public class WaschportalUI extends UI {
@@ -84,6 +86,11 @@ public class WaschportalUI extends UI {
             ui = WaschportalUI.class)
     public static class Servlet extends VaadinServlet {
 
+        @Override
+        public void destroy() {
+            WashportalManager.instance.shutdown();
+            super.destroy();
+        }
     }
 
 }
\ No newline at end of file
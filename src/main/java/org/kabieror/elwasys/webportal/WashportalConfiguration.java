@@ -3,6 +3,9 @@ package org.kabieror.elwasys.webportal;
 import org.kabieror.elwasys.common.ConfigurationManager;
 
 import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Dieser Manager verwaltet die Konfiguration des Waschportals
@@ -54,4 +57,509 @@ public class WashportalConfiguration extends ConfigurationManager {
         }
         return res;
     }
+
+    /**
+     * Gibt die Anzahl der Threads zurück, auf denen Anfragen an die Clients
+     * gesendet werden.
+     *
+     * @return Die Anzahl der Threads für Wartungsanfragen.
+     */
+    public int getMaintenanceThreads() {
+        return this.getIntProperty("maintenance.threads", 4);
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Wartungsanfragen zurück, die auf einen
+     * freien Thread warten dürfen.
+     *
+     * @return Die maximale Länge der Warteschlange.
+     */
+    public int getMaintenanceQueueSize() {
+        return this.getIntProperty("maintenance.queueSize", 20);
+    }
+
+    /**
+     * Gibt die Zeit zurück, nach der eine Wartungsanfrage ohne Antwort
+     * abgebrochen wird.
+     *
+     * @return Die Zeit in Sekunden.
+     */
+    public int getMaintenanceCallTimeout() {
+        return this.getIntProperty("maintenance.callTimeout", 15);
+    }
+
+    /**
+     * Gibt den Abstand zurück, in dem die Clients aller Standorte geprüft
+     * werden.
+     *
+     * @return Der Abstand in Sekunden.
+     */
+    public int getHealthInterval() {
+        return this.getIntProperty("health.interval", 30);
+    }
+
+    /**
+     * Gibt die Frist für die Prüfung eines Clients zurück.
+     *
+     * @return Die Frist in Millisekunden.
+     */
+    public int getHealthTimeout() {
+        return this.getIntProperty("health.timeout", 2000);
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Clients zurück, die gleichzeitig geprüft
+     * werden.
+     *
+     * @return Die maximale Anzahl gleichzeitiger Prüfungen.
+     */
+    public int getHealthConcurrency() {
+        return this.getIntProperty("health.concurrency", 2);
+    }
+
+    /**
+     * Gibt die Adresse des Mailservers zurück.
+     *
+     * @return Die Adresse des Mailservers.
+     */
+    public String getMailServer() {
+        return this.props.getProperty("smtp.server", "").trim();
+    }
+
+    /**
+     * Gibt den Port des Mailservers zurück.
+     *
+     * @return Der Port des Mailservers.
+     */
+    public int getMailPort() {
+        return this.getIntProperty("smtp.port", 465);
+    }
+
+    /**
+     * Gibt den Benutzernamen für den Mailserver zurück.
+     *
+     * @return Der Benutzername oder eine leere Zeichenkette, falls keine
+     *         Anmeldung erforderlich ist.
+     */
+    public String getMailUser() {
+        return this.props.getProperty("smtp.user", "").trim();
+    }
+
+    /**
+     * Gibt das Passwort für den Mailserver zurück.
+     *
+     * @return Das Passwort.
+     */
+    public String getMailPassword() {
+        return this.props.getProperty("smtp.password", "");
+    }
+
+    /**
+     * Gibt zurück, ob die Verbindung zum Mailserver verschlüsselt wird.
+     *
+     * @return True, falls SSL verwendet wird.
+     */
+    public boolean isMailSsl() {
+        return Boolean.parseBoolean(this.props.getProperty("smtp.useSSL", "").trim());
+    }
+
+    /**
+     * Gibt die Absenderadresse der Emails zurück.
+     *
+     * @return Die Absenderadresse.
+     */
+    public String getMailSender() {
+        return this.props.getProperty("smtp.senderAddress", "").trim();
+    }
+
+    /**
+     * Gibt den Abstand zurück, in dem nach fälligen Emails gesucht wird, z.B.
+     * nach einem fehlgeschlagenen Versuch.
+     *
+     * @return Der Abstand in Sekunden.
+     */
+    public int getMailPollInterval() {
+        return this.getIntProperty("mail.pollInterval", 30);
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Emails zurück, die auf einmal aus der
+     * Warteschlange geladen werden.
+     *
+     * @return Die maximale Anzahl an Emails.
+     */
+    public int getMailBatchSize() {
+        return this.getIntProperty("mail.batchSize", 20);
+    }
+
+    /**
+     * Gibt die Anzahl an Versuchen zurück, nach der der Versand einer Email
+     * aufgegeben wird.
+     *
+     * @return Die maximale Anzahl an Versuchen.
+     */
+    public int getMailMaxAttempts() {
+        return this.getIntProperty("mail.maxAttempts", 8);
+    }
+
+    /**
+     * Gibt den Abstand nach dem ersten fehlgeschlagenen Versuch zurück. Er
+     * verdoppelt sich mit jedem weiteren Versuch.
+     *
+     * @return Der Abstand in Sekunden.
+     */
+    public int getMailRetryDelay() {
+        return this.getIntProperty("mail.retryDelay", 60);
+    }
+
+    /**
+     * Gibt zurück, wie lange versandte und aufgegebene Emails aufbewahrt
+     * werden.
+     *
+     * @return Die Aufbewahrungsdauer in Tagen.
+     */
+    public int getMailRetention() {
+        return this.getIntProperty("mail.retention", 7);
+    }
+
+    /**
+     * Gibt den Schlüssel zurück, mit dem die Messwerte maschinenlesbar
+     * abgerufen werden können.
+     *
+     * @return Der Schlüssel oder eine leere Zeichenkette, falls der Abruf
+     *         abgeschaltet ist.
+     */
+    public String getMetricsToken() {
+        return this.props.getProperty("metrics.token", "").trim();
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Zeilen zurück, die der Log-Betrachter vom
+     * Ende der Log-Datei eines Clients vorhält. Abgerufen wird dennoch die
+     * vollständige Log-Datei.
+     *
+     * @return Die maximale Anzahl an Zeilen.
+     */
+    public int getLogViewerMaxLines() {
+        return this.getIntProperty("logviewer.maxLines", 5000);
+    }
+
+    /**
+     * Gibt den Abstand zurück, in dem der Log-Betrachter beim Verfolgen nach
+     * neuen Zeilen fragt. Jede Abfrage überträgt die vollständige Log-Datei.
+     *
+     * @return Der Abstand in Sekunden.
+     */
+    public int getLogViewerFollowInterval() {
+        return this.getIntProperty("logviewer.followInterval", 120);
+    }
+
+    /**
+     * Gibt die Dauer zurück, nach der der Log-Betrachter das Verfolgen von
+     * selbst beendet.
+     *
+     * @return Die Dauer in Minuten.
+     */
+    public int getLogViewerFollowDuration() {
+        return this.getIntProperty("logviewer.followDuration", 10);
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Standorten zurück, deren Log-Dateien eine
+     * Suche gleichzeitig abruft.
+     *
+     * @return Die maximale Anzahl an Standorten.
+     */
+    public int getLogSearchMaxConcurrent() {
+        return this.getIntProperty("logsearch.maxConcurrent", 4);
+    }
+
+    /**
+     * Gibt die Größe der abgerufenen Log-Dateien zurück, ab der eine Suche
+     * keine weiteren Standorte mehr abfragt.
+     *
+     * @return Die Größe in Megabytes.
+     */
+    public int getLogSearchMaxMegabytes() {
+        return this.getIntProperty("logsearch.maxMegabytes", 64);
+    }
+
+    /**
+     * Gibt die JDBC-URL der Datenbank zurück, auf welche das Waschportal selbst
+     * zugreift.
+     *
+     * @return Die JDBC-URL der Datenbank.
+     */
+    public String getJdbcUrl() {
+        return "jdbc:postgresql://" + this.props.getProperty("database.server") + "/"
+                + this.props.getProperty("database.name");
+    }
+
+    /**
+     * Gibt die Anmeldedaten für die Datenbank zurück.
+     *
+     * @return Benutzername und Passwort für die Datenbank.
+     */
+    public Properties getJdbcProperties() {
+        final Properties res = new Properties();
+        res.setProperty("user", this.props.getProperty("database.user", ""));
+        res.setProperty("password", this.props.getProperty("database.password", ""));
+        return res;
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Einträgen im Zwischenspeicher für Entitäten zurück.
+     *
+     * @return Die maximale Anzahl an Einträgen im Zwischenspeicher.
+     */
+    public int getCacheMaxSize() {
+        return this.getIntProperty("cache.maxSize", 2000);
+    }
+
+    /**
+     * Gibt die Zeit in Sekunden zurück, nach der ein Eintrag im Zwischenspeicher neu geladen wird.
+     *
+     * @return Die maximale Lebensdauer eines Eintrags in Sekunden.
+     */
+    public int getCacheMaxAge() {
+        return this.getIntProperty("cache.maxAge", 60);
+    }
+
+    /**
+     * Gibt die Anzahl der letzten Programmausführungen zurück, die pro Gerät auf
+     * dem Dashboard angezeigt werden.
+     *
+     * @return Die Anzahl der angezeigten Ausführungen pro Gerät.
+     */
+    public int getDashboardHistoryDepth() {
+        return this.getIntProperty("dashboard.historyDepth", 10);
+    }
+
+    /**
+     * Gibt den Abstand zurück, in dem die geöffneten Dashboards aktualisiert
+     * werden.
+     *
+     * @return Der Abstand zwischen zwei Aktualisierungen in Sekunden.
+     */
+    public int getDashboardRefreshInterval() {
+        return this.getIntProperty("dashboard.refreshInterval", 5);
+    }
+
+    /**
+     * Gibt den Abstand zurück, in dem Änderungsmeldungen der Datenbank
+     * abgeholt werden.
+     *
+     * @return Der Abstand in Millisekunden oder 0, falls keine Änderungen
+     *         empfangen werden sollen.
+     */
+    public int getChangeFeedPollInterval() {
+        return this.getIntProperty("changefeed.pollInterval", 500);
+    }
+
+    /**
+     * Gibt die JDBC-URL des Replikats zurück, an das lesende Abfragen gerichtet
+     * werden können.
+     *
+     * @return Die JDBC-URL des Replikats oder null, falls kein Replikat konfiguriert ist.
+     */
+    public String getReplicaJdbcUrl() {
+        final String server = this.props.getProperty("database.replica.server", "").trim();
+        if (server.isEmpty()) {
+            return null;
+        }
+        final String name = this.props.getProperty("database.replica.name", "").trim();
+        return "jdbc:postgresql://" + server + "/"
+                + (name.isEmpty() ? this.props.getProperty("database.name") : name);
+    }
+
+    /**
+     * Gibt die Anmeldedaten für das Replikat zurück. Fehlen sie, werden die der
+     * Hauptdatenbank verwendet.
+     *
+     * @return Benutzername und Passwort für das Replikat.
+     */
+    public Properties getReplicaJdbcProperties() {
+        final Properties res = this.getJdbcProperties();
+        final String user = this.props.getProperty("database.replica.user", "").trim();
+        if (!user.isEmpty()) {
+            res.setProperty("user", user);
+            res.setProperty("password", this.props.getProperty("database.replica.password", ""));
+        }
+        return res;
+    }
+
+    /**
+     * @return Der maximale Rückstand des Replikats in Sekunden, bis zu dem noch von ihm gelesen wird.
+     */
+    public int getReplicaMaxLag() {
+        return this.getIntProperty("database.replica.maxLag", 10);
+    }
+
+    /**
+     * @return Das Intervall in Sekunden, in dem der Rückstand des Replikats gemessen wird.
+     */
+    public int getReplicaCheckInterval() {
+        return this.getIntProperty("database.replica.checkInterval", 5);
+    }
+
+    /**
+     * @return Die Anzahl der Datenbankverbindungen, die beim Start geöffnet werden.
+     */
+    public int getPoolMinSize() {
+        return this.getIntProperty("database.pool.minSize", 2);
+    }
+
+    /**
+     * @return Die maximale Anzahl gleichzeitig geöffneter Datenbankverbindungen.
+     */
+    public int getPoolMaxSize() {
+        return this.getIntProperty("database.pool.maxSize", 10);
+    }
+
+    /**
+     * @return Die maximale Wartezeit auf eine freie Datenbankverbindung in Sekunden.
+     */
+    public int getPoolAcquireTimeout() {
+        return this.getIntProperty("database.pool.acquireTimeout", 5);
+    }
+
+    /**
+     * @return Die Zeit in Sekunden, nach der eine ungenutzte Verbindung vor der Ausgabe geprüft wird.
+     */
+    public int getPoolValidationInterval() {
+        return this.getIntProperty("database.pool.validationInterval", 30);
+    }
+
+    /**
+     * @return Die maximale Lebensdauer einer Datenbankverbindung in Sekunden.
+     */
+    public int getPoolMaxLifetime() {
+        return this.getIntProperty("database.pool.maxLifetime", 1800);
+    }
+
+    /**
+     * @return Die Anzahl der PreparedStatements, die je Datenbankverbindung vorgehalten werden.
+     */
+    public int getStatementCacheSize() {
+        return this.getIntProperty("database.statementCacheSize", 50);
+    }
+
+    /**
+     * @return Die Anzahl an Ausführungen eines PreparedStatements, ab der es serverseitig vorbereitet wird.
+     */
+    public int getPrepareThreshold() {
+        return this.getIntProperty("database.prepareThreshold", 1);
+    }
+
+    /**
+     * @return Die Mindestanzahl neuer Buchungen eines Benutzers, ab der ein neuer Guthabenabschluss erstellt wird.
+     */
+    public int getCreditCheckpointMinEntries() {
+        return this.getIntProperty("credit.checkpoint.minEntries", 20);
+    }
+
+    /**
+     * @return Das Intervall in Minuten, in dem Guthabenabschlüsse fortgeschrieben werden.
+     */
+    public int getCreditCheckpointInterval() {
+        return this.getIntProperty("credit.checkpoint.interval", 15);
+    }
+
+    /**
+     * @return Das Intervall in Stunden, in dem die Guthabenabschlüsse gegen alle Buchungen geprüft werden.
+     */
+    public int getCreditVerifyInterval() {
+        return this.getIntProperty("credit.verify.interval", 24);
+    }
+
+    /**
+     * Gibt die Anzahl der Threads zurück, auf denen Passwörter geprüft werden.
+     *
+     * @return Die Anzahl der Threads zur Passwortprüfung.
+     */
+    public int getPasswordThreads() {
+        return this.getIntProperty("password.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Gibt die maximale Anzahl an Passwortprüfungen zurück, die auf einen freien
+     * Thread warten dürfen. Jede wartende Prüfung belegt einen Thread des
+     * Servlet-Containers, daher sollte die Summe aus Threads und Warteplätzen
+     * deutlich unter der Anzahl seiner Threads liegen.
+     *
+     * @return Die maximale Länge der Warteschlange.
+     */
+    public int getPasswordQueueSize() {
+        return this.getIntProperty("password.queueSize", this.getPasswordThreads() * 4);
+    }
+
+    /**
+     * Gibt die Anzahl erlaubter Fehlversuche je Benutzername innerhalb des
+     * Zeitfensters zurück.
+     *
+     * @return Die Anzahl erlaubter Fehlversuche.
+     */
+    public int getPasswordMaxAttempts() {
+        return this.getIntProperty("password.maxAttempts", 10);
+    }
+
+    /**
+     * Gibt die Anzahl erlaubter Fehlversuche je Client-Adresse innerhalb des
+     * Zeitfensters zurück. Sie liegt höher als die je Benutzername, da sich
+     * hinter einem NAT viele Benutzer eine Adresse teilen.
+     *
+     * @return Die Anzahl erlaubter Fehlversuche.
+     */
+    public int getPasswordMaxClientAttempts() {
+        return this.getIntProperty("password.maxClientAttempts", 100);
+    }
+
+    /**
+     * Gibt die Dauer der Sperre nach zu vielen Fehlversuchen zurück.
+     *
+     * @return Die Dauer der Sperre in Sekunden.
+     */
+    public int getPasswordLockout() {
+        return this.getIntProperty("password.lockout", 60);
+    }
+
+    /**
+     * Gibt die Adressen der Reverse-Proxies zurück, deren Angabe der
+     * Client-Adresse (X-Forwarded-For) vertraut wird.
+     *
+     * @return Die Adressen der vertrauenswürdigen Proxies.
+     */
+    public Set<String> getTrustedProxies() {
+        final Set<String> res = new HashSet<>();
+        for (final String address : this.props.getProperty("password.trustedProxies", "").split(",")) {
+            if (!address.trim().isEmpty()) {
+                res.add(address.trim());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gibt die Länge des Zeitfensters für Fehlversuche in Sekunden zurück.
+     *
+     * @return Die Länge des Zeitfensters in Sekunden.
+     */
+    public int getPasswordAttemptWindow() {
+        return this.getIntProperty("password.attemptWindow", 300);
+    }
+
+    /**
+     * Liest eine ganzzahlige Einstellung.
+     *
+     * @param key          Der Schlüssel der Einstellung.
+     * @param defaultValue Der Wert, falls die Einstellung fehlt oder ungültig ist.
+     * @return Der Wert der Einstellung.
+     */
+    protected int getIntProperty(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(this.props.getProperty(key).trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            return defaultValue;
+        }
+    }
 }
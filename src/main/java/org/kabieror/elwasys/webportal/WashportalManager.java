@@ -5,11 +5,23 @@ import com.vaadin.shared.Position;
 import com.vaadin.ui.Notification;
 import org.kabieror.elwasys.common.DataManager;
 import org.kabieror.elwasys.common.Utilities;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager.ClientNotConnectedException;
+import org.kabieror.elwasys.webportal.data.ChangeFeed;
+import org.kabieror.elwasys.webportal.data.CreditBalanceMaintenance;
+import org.kabieror.elwasys.webportal.data.MailOutbox;
+import org.kabieror.elwasys.webportal.data.EntityCache;
+import org.kabieror.elwasys.webportal.data.PortalDataManager;
+import org.kabieror.elwasys.webportal.data.PortalDatabase;
+import org.kabieror.elwasys.webportal.maintenance.FleetHealthMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Dieser Manager verbindet alle anderen Teile der Anwendung und hält u.a.
@@ -32,12 +44,28 @@ public class WashportalManager {
 
     private DataManager dataManager;
 
+    private EntityCache entityCache;
+
+    private PortalDataManager portalDataManager;
+
+    private CreditBalanceMaintenance creditBalanceMaintenance;
+
+    private ChangeFeed changeFeed;
+
     private SessionManager sessionManager;
 
+    private PasswordVerifier passwordVerifier;
+
+    private DashboardBroadcaster dashboardBroadcaster;
+
     private MaintenanceConnectionManager maintenanceConnectionManager;
 
+    private FleetHealthMonitor fleetHealthMonitor;
+
     private WashportalUtilities utilities;
 
+    private MailQueue mailQueue;
+
     private WashportalManager() {
         this.logger.info("----------------------------------------------------------------");
         this.logger.info("WASHPORTAL " + WashportalManager.VERSION);
@@ -71,19 +99,114 @@ public class WashportalManager {
         }
         try {
             this.dataManager = new DataManager(this.configurationManager);
+            this.portalDataManager = new PortalDataManager(new PortalDatabase(this.configurationManager));
         } catch (final ClassNotFoundException e) {
             this.logger.error("Cannot create data manager.", e);
             System.exit(1);
         }
+        boolean creditBalances = false;
+        try {
+            creditBalances = this.portalDataManager.detectCreditBalances();
+            if (!creditBalances) {
+                this.logger.warn("The table credit_balances does not exist, computing the credit from all accounting "
+                        + "entries. Run the migration sql/001_credit_balances.sql to speed this up.");
+            }
+            this.portalDataManager.warmUp();
+        } catch (final SQLException e) {
+            this.logger.warn("Could not prepare the frequent database queries.", e);
+        }
+        MailOutbox outbox = new MailOutbox(this.portalDataManager.getDatabase());
+        try {
+            if (!outbox.exists()) {
+                this.logger.warn("The table mail_outbox does not exist, sending emails synchronously without retries. "
+                        + "Run the migration sql/003_mail_outbox.sql.");
+                outbox = null;
+            }
+        } catch (final SQLException e) {
+            this.logger.warn("Could not look up the table of outgoing emails.", e);
+        }
+        this.mailQueue = new MailQueue(outbox, this.configurationManager);
+        if (creditBalances) {
+            this.creditBalanceMaintenance = new CreditBalanceMaintenance(this.portalDataManager,
+                    this.configurationManager.getCreditCheckpointMinEntries(),
+                    this.configurationManager.getCreditCheckpointInterval(),
+                    this.configurationManager.getCreditVerifyInterval());
+        }
+        this.entityCache = new EntityCache(this.dataManager, this.configurationManager.getCacheMaxSize(),
+                this.configurationManager.getCacheMaxAge());
+        if (this.configurationManager.getChangeFeedPollInterval() > 0) {
+            final ChangeFeed feed = new ChangeFeed(this.configurationManager.getJdbcUrl(),
+                    this.configurationManager.getJdbcProperties(),
+                    this.configurationManager.getChangeFeedPollInterval());
+            try {
+                if (feed.hasTriggers(this.portalDataManager.getDatabase())) {
+                    feed.addListener(this.entityCache);
+                    feed.start();
+                    this.changeFeed = feed;
+                } else {
+                    this.logger.warn("The change notification triggers are missing, falling back to polling. "
+                            + "Run the migration sql/002_change_feed.sql to enable them.");
+                }
+            } catch (final SQLException e) {
+                this.logger.warn("Could not look up the change notification triggers. Falling back to polling.", e);
+            }
+        }
+        this.dashboardBroadcaster = new DashboardBroadcaster(this.portalDataManager, this.changeFeed,
+                this.configurationManager.getDashboardHistoryDepth(),
+                this.configurationManager.getDashboardRefreshInterval());
         try {
             this.maintenanceConnectionManager = new MaintenanceConnectionManager();
+            this.fleetHealthMonitor = new FleetHealthMonitor(this.maintenanceConnectionManager, this.entityCache,
+                    this.configurationManager.getHealthInterval(), this.configurationManager.getHealthTimeout(),
+                    this.configurationManager.getHealthConcurrency());
         } catch (IOException e) {
             this.logger.error("Cannot start Maintenance Server.", e);
         }
+        this.passwordVerifier = new PasswordVerifier(this.configurationManager.getPasswordThreads(),
+                this.configurationManager.getPasswordQueueSize(), this.configurationManager.getPasswordMaxAttempts(),
+                this.configurationManager.getPasswordMaxClientAttempts(),
+                this.configurationManager.getPasswordAttemptWindow(), this.configurationManager.getPasswordLockout());
         this.sessionManager = new SessionManager();
         this.logger.debug("Managers initiated");
     }
 
+    /**
+     * Beendet die Hintergrunddienste, damit beim Entfernen der Anwendung aus
+     * dem Servlet-Container keine Threads und Verbindungen zurückbleiben.
+     */
+    protected void shutdown() {
+        if (this.configurationManager == null) {
+            // Nie initiiert
+            return;
+        }
+        this.logger.info("Shutting down managers");
+        if (this.passwordVerifier != null) {
+            this.passwordVerifier.shutdown();
+        }
+        if (this.creditBalanceMaintenance != null) {
+            this.creditBalanceMaintenance.shutdown();
+        }
+        if (this.dashboardBroadcaster != null) {
+            this.dashboardBroadcaster.shutdown();
+        }
+        if (this.changeFeed != null) {
+            this.changeFeed.shutdown();
+        }
+        if (this.fleetHealthMonitor != null) {
+            this.fleetHealthMonitor.shutdown();
+        }
+        if (this.maintenanceConnectionManager != null) {
+            this.maintenanceConnectionManager.shutdown();
+        }
+        if (this.mailQueue != null) {
+            this.mailQueue.shutdown();
+        }
+        if (this.portalDataManager != null) {
+            this.portalDataManager.getDatabase().close();
+        }
+        this.logger.debug("Managers shut down");
+    }
+
     public WashportalConfiguration getConfigurationManager() {
         return this.configurationManager;
     }
@@ -92,18 +215,93 @@ public class WashportalManager {
         return this.dataManager;
     }
 
+    /**
+     * Gibt den Zwischenspeicher zurück, über den häufig gelesene Entitäten
+     * abgefragt werden sollen.
+     *
+     * @return Der Zwischenspeicher für Entitäten.
+     */
+    public EntityCache getEntityCache() {
+        return this.entityCache;
+    }
+
+    /**
+     * Gibt den Manager für mengenbasierte Abfragen der Ansichten zurück.
+     *
+     * @return Der Manager für mengenbasierte Abfragen.
+     */
+    public PortalDataManager getPortalDataManager() {
+        return this.portalDataManager;
+    }
+
+    /**
+     * Gibt den Dienst zurück, der die Guthabenabschlüsse pflegt.
+     *
+     * @return Der Dienst für Guthabenabschlüsse oder null, falls die Tabelle
+     *         der Abschlüsse nicht angelegt ist.
+     */
+    public CreditBalanceMaintenance getCreditBalanceMaintenance() {
+        return this.creditBalanceMaintenance;
+    }
+
+    /**
+     * Gibt den Änderungsstrom der Datenbank zurück.
+     *
+     * @return Der Änderungsstrom oder null, falls er nicht aktiv ist.
+     */
+    public ChangeFeed getChangeFeed() {
+        return this.changeFeed;
+    }
+
+    /**
+     * Gibt den Dienst zurück, der die geöffneten Dashboards mit Änderungen
+     * versorgt.
+     *
+     * @return Der Dienst für die Aktualisierung der Dashboards.
+     */
+    public DashboardBroadcaster getDashboardBroadcaster() {
+        return this.dashboardBroadcaster;
+    }
+
     public SessionManager getSessionManager() {
         return this.sessionManager;
     }
 
+    /**
+     * Gibt den Dienst zurück, über den Passwörter geprüft werden.
+     *
+     * @return Der Dienst zur Prüfung von Passwörtern.
+     */
+    public PasswordVerifier getPasswordVerifier() {
+        return this.passwordVerifier;
+    }
+
     public MaintenanceConnectionManager getMaintenanceConnectionManager() {
         return this.maintenanceConnectionManager;
     }
 
+    /**
+     * Gibt den Dienst zurück, der den Zustand der Clients aller Standorte prüft.
+     *
+     * @return Der Dienst oder null, falls der Wartungsserver nicht läuft.
+     */
+    public FleetHealthMonitor getFleetHealthMonitor() {
+        return this.fleetHealthMonitor;
+    }
+
     public WashportalUtilities getUtilities() {
         return this.utilities;
     }
 
+    /**
+     * Gibt die Warteschlange zurück, über die Emails versandt werden.
+     *
+     * @return Die Warteschlange für ausgehende Emails.
+     */
+    public MailQueue getMailQueue() {
+        return this.mailQueue;
+    }
+
     /**
      * Zeigt einen Datenbankfehler an
      *
@@ -146,6 +344,27 @@ public class WashportalManager {
                 + "\nFür mehr Informationen bitte die Log-Datei prüfen.");
     }
 
+    /**
+     * Zeigt den Fehler einer Anfrage an den Client eines Standorts an.
+     *
+     * @param e
+     *            Der Fehler, mit dem die Anfrage fehlgeschlagen ist.
+     */
+    public void showMaintenanceError(Throwable e) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ClientNotConnectedException) {
+            this.showError("Fehler", "Keine Verbindung zum Client");
+        } else if (cause instanceof TimeoutException) {
+            this.logger.warn(cause.getMessage());
+            this.showError("Zeitüberschreitung", "Der Client hat nicht rechtzeitig geantwortet.");
+        } else if (cause instanceof RejectedExecutionException) {
+            this.showError("Fehler", "Zu viele laufende Anfragen. Bitte später erneut versuchen.");
+        } else {
+            this.logger.error("Kommunikationsfehler", cause);
+            this.showError(cause instanceof Exception ? (Exception) cause : new ExecutionException(cause));
+        }
+    }
+
     /**
      * Zeigt eine Information an.
      *
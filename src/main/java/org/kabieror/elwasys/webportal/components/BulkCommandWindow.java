@@ -0,0 +1,257 @@
+package org.kabieror.elwasys.webportal.components;
+
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.ui.*;
+import com.vaadin.ui.Table.Align;
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.maintenance.BulkCommand;
+import org.kabieror.elwasys.webportal.maintenance.BulkOperation;
+import org.kabieror.elwasys.webportal.maintenance.BulkResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fenster zum Senden eines Befehls an die Clients mehrerer Standorte. Der
+ * Fortschritt jedes Standorts wird laufend angezeigt.
+ *
+ * @author Oliver Kabierschke
+ */
+public class BulkCommandWindow extends Window {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String LOCATION_PROPERTY = "location";
+    private static final String STATE_PROPERTY = "state";
+    private static final String DURATION_PROPERTY = "duration";
+    private static final String MESSAGE_PROPERTY = "message";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final TwinColSelect selLocations;
+    private final NativeSelect selCommand;
+    private final NativeSelect selParallelism;
+    private final NativeSelect selWaveSize;
+    private final NativeSelect selWavePause;
+    private final CheckBox cbStopOnFailure;
+    private final Button btnStart;
+    private final Button btnCancel;
+    private final ProgressBar progress;
+    private final Label lblStatus;
+    private final IndexedContainer results;
+
+    private BulkOperation operation;
+
+    private int completed;
+
+    public BulkCommandWindow() {
+        this.setCaption("Befehl an mehrere Standorte senden");
+        this.setWidth("70em");
+        this.setHeight("45em");
+        this.setResizable(true);
+        this.setModal(true);
+        this.setClosable(true);
+
+        final VerticalLayout content = new VerticalLayout();
+        content.setSizeFull();
+        content.setMargin(true);
+        content.setSpacing(true);
+        this.setContent(content);
+
+        final HorizontalLayout options = new HorizontalLayout();
+        options.setSpacing(true);
+        content.addComponent(options);
+
+        this.selLocations = new TwinColSelect("Standorte");
+        this.selLocations.setRows(6);
+        this.selLocations.setLeftColumnCaption("Verfügbar");
+        this.selLocations.setRightColumnCaption("Ausgewählt");
+        try {
+            for (final Location l : WashportalManager.instance.getEntityCache().getLocations()) {
+                this.selLocations.addItem(l);
+                this.selLocations.setItemCaption(l, l.getName());
+            }
+        } catch (final SQLException e) {
+            this.logger.error("Could not load the locations.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        }
+        options.addComponent(this.selLocations);
+
+        final FormLayout settings = new FormLayout();
+        settings.setMargin(false);
+        options.addComponent(settings);
+
+        this.selCommand = new NativeSelect("Befehl");
+        this.selCommand.setNullSelectionAllowed(false);
+        for (final BulkCommand c : BulkCommand.values()) {
+            this.selCommand.addItem(c);
+            this.selCommand.setItemCaption(c, c.getCaption());
+        }
+        this.selCommand.setValue(BulkCommand.RESTART);
+        settings.addComponent(this.selCommand);
+
+        this.selParallelism = new NativeSelect("Gleichzeitig");
+        this.selParallelism.setNullSelectionAllowed(false);
+        for (final int p : new int[]{1, 2, 4, 8}) {
+            this.selParallelism.addItem(p);
+        }
+        this.selParallelism.setValue(4);
+        settings.addComponent(this.selParallelism);
+
+        this.selWaveSize = new NativeSelect("Standorte je Welle");
+        this.selWaveSize.setNullSelectionAllowed(false);
+        for (final int w : new int[]{0, 1, 5, 10, 25}) {
+            this.selWaveSize.addItem(w);
+            this.selWaveSize.setItemCaption(w, w == 0 ? "Alle" : String.valueOf(w));
+        }
+        this.selWaveSize.setValue(0);
+        settings.addComponent(this.selWaveSize);
+
+        this.selWavePause = new NativeSelect("Pause zwischen Wellen");
+        this.selWavePause.setNullSelectionAllowed(false);
+        for (final int s : new int[]{0, 10, 30, 60}) {
+            this.selWavePause.addItem(s);
+            this.selWavePause.setItemCaption(s, s + " s");
+        }
+        this.selWavePause.setValue(0);
+        settings.addComponent(this.selWavePause);
+
+        this.cbStopOnFailure = new CheckBox("Nach einer Welle mit Fehlern abbrechen", true);
+        settings.addComponent(this.cbStopOnFailure);
+
+        final HorizontalLayout actions = new HorizontalLayout();
+        actions.setSpacing(true);
+        content.addComponent(actions);
+
+        this.btnStart = new Button("Senden");
+        this.btnStart.addStyleName("primary");
+        this.btnStart.addClickListener(e -> this.start());
+        actions.addComponent(this.btnStart);
+
+        this.btnCancel = new Button("Abbrechen");
+        this.btnCancel.setEnabled(false);
+        this.btnCancel.addClickListener(e -> this.operation.cancel());
+        actions.addComponent(this.btnCancel);
+
+        this.progress = new ProgressBar(0f);
+        this.progress.setWidth("15em");
+        actions.addComponent(this.progress);
+        actions.setComponentAlignment(this.progress, Alignment.MIDDLE_LEFT);
+
+        this.lblStatus = new Label();
+        actions.addComponent(this.lblStatus);
+
+        this.results = new IndexedContainer();
+        this.results.addContainerProperty(LOCATION_PROPERTY, String.class, "");
+        this.results.addContainerProperty(STATE_PROPERTY, String.class, "");
+        this.results.addContainerProperty(DURATION_PROPERTY, String.class, "");
+        this.results.addContainerProperty(MESSAGE_PROPERTY, String.class, "");
+
+        final Table tblResults = new Table(null, this.results);
+        tblResults.setSizeFull();
+        tblResults.setSelectable(false);
+        tblResults.setColumnHeader(LOCATION_PROPERTY, "Standort");
+        tblResults.setColumnHeader(STATE_PROPERTY, "Zustand");
+        tblResults.setColumnHeader(DURATION_PROPERTY, "Dauer");
+        tblResults.setColumnHeader(MESSAGE_PROPERTY, "Ergebnis");
+        tblResults.setColumnAlignment(DURATION_PROPERTY, Align.RIGHT);
+        tblResults.setColumnExpandRatio(MESSAGE_PROPERTY, 1);
+        content.addComponent(tblResults);
+        content.setExpandRatio(tblResults, 1);
+
+        // Laufende Befehle beim Schließen abbrechen
+        this.addCloseListener(e -> {
+            if (this.operation != null) {
+                this.operation.cancel();
+            }
+        });
+    }
+
+    /**
+     * Sendet den Befehl an alle gewählten Standorte.
+     */
+    @SuppressWarnings("unchecked")
+    private void start() {
+        final Collection<Location> selected = (Collection<Location>) this.selLocations.getValue();
+        if (selected == null || selected.isEmpty()) {
+            WashportalManager.instance.showError("Keine Standorte", "Bitte mindestens einen Standort wählen.");
+            return;
+        }
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (manager == null) {
+            WashportalManager.instance.showError("Fehler", "Der Wartungsserver ist nicht verfügbar.");
+            return;
+        }
+
+        // Reihenfolge der Auswahlliste beibehalten
+        final List<Location> locations = new ArrayList<>();
+        for (final Object l : this.selLocations.getItemIds()) {
+            if (selected.contains(l)) {
+                locations.add((Location) l);
+            }
+        }
+
+        this.results.removeAllItems();
+        for (final Location l : locations) {
+            this.update(new BulkResult(l.getName(), BulkResult.State.WAITING, null, -1));
+        }
+        this.completed = 0;
+        this.progress.setValue(0f);
+        this.lblStatus.setValue("");
+        this.btnStart.setEnabled(false);
+        this.btnCancel.setEnabled(true);
+
+        final UI ui = this.getUI();
+        final int total = locations.size();
+        this.operation = new BulkOperation(manager, (BulkCommand) this.selCommand.getValue(), locations,
+                (Integer) this.selParallelism.getValue(), (Integer) this.selWaveSize.getValue(),
+                (Integer) this.selWavePause.getValue() * 1000L, this.cbStopOnFailure.getValue(),
+                r -> ui.access(() -> {
+                    this.update(r);
+                    if (r.getState() != BulkResult.State.RUNNING) {
+                        this.completed++;
+                        this.progress.setValue((float) this.completed / total);
+                    }
+                }));
+        this.operation.start().thenRun(() -> ui.access(this::showSummary));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void update(BulkResult r) {
+        Item item = this.results.getItem(r.getLocationName());
+        if (item == null) {
+            item = this.results.addItem(r.getLocationName());
+            item.getItemProperty(LOCATION_PROPERTY).setValue(r.getLocationName());
+        }
+        item.getItemProperty(STATE_PROPERTY).setValue(r.getState().getCaption());
+        item.getItemProperty(DURATION_PROPERTY).setValue(r.getDurationMillis() >= 0
+                ? r.getDurationMillis() + " ms" : "");
+        item.getItemProperty(MESSAGE_PROPERTY).setValue(r.getMessage() != null ? r.getMessage() : "");
+    }
+
+    private void showSummary() {
+        this.btnStart.setEnabled(true);
+        this.btnCancel.setEnabled(false);
+        int done = 0;
+        int failed = 0;
+        int skipped = 0;
+        for (final Object id : this.results.getItemIds()) {
+            final Object state = this.results.getContainerProperty(id, STATE_PROPERTY).getValue();
+            if (BulkResult.State.DONE.getCaption().equals(state)) {
+                done++;
+            } else if (BulkResult.State.FAILED.getCaption().equals(state)) {
+                failed++;
+            } else if (BulkResult.State.SKIPPED.getCaption().equals(state)) {
+                skipped++;
+            }
+        }
+        this.lblStatus.setValue(done + " erledigt, " + failed + " fehlgeschlagen, " + skipped + " übersprungen");
+    }
+}
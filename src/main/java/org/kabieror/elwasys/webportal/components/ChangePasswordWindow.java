@@ -3,8 +3,11 @@ package org.kabieror.elwasys.webportal.components;
 import com.vaadin.data.Validator;
 import com.vaadin.data.Validator.InvalidValueException;
 import com.vaadin.event.ShortcutAction.KeyCode;
+import com.vaadin.server.UserError;
 import com.vaadin.ui.*;
 import org.kabieror.elwasys.common.User;
+import org.kabieror.elwasys.webportal.PasswordVerifier;
+import org.kabieror.elwasys.webportal.PasswordVerifier.VerificationRejectedException;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,7 +53,6 @@ public class ChangePasswordWindow extends Window {
         this.tfOldPw.setWidth("100%");
         this.tfOldPw.setRequired(true);
         this.tfOldPw.setRequiredError("Bitte altes Passwort eingeben.");
-        this.tfOldPw.addValidator(new OldPasswordValidator());
         this.tfOldPw.setValidationVisible(false);
         this.tfOldPw.focus();
 
@@ -108,6 +110,7 @@ public class ChangePasswordWindow extends Window {
 
     private void save() {
         // Felder validieren
+        this.tfOldPw.setComponentError(null);
         try {
             this.tfOldPw.validate();
             this.tfNewPw1.validate();
@@ -119,8 +122,27 @@ public class ChangePasswordWindow extends Window {
             return;
         }
 
+        // Altes Passwort einmal je Absenden prüfen, nicht bei jeder Validierung
+        final PasswordVerifier verifier = WashportalManager.instance.getPasswordVerifier();
+        final String client = WashportalManager.instance.getSessionManager().getClientAddress();
+        try {
+            if (verifier.isThrottled(this.user.getUsername(), client)) {
+                throw new VerificationRejectedException(false);
+            }
+            if (!verifier.verify(this.user, this.tfOldPw.getValue())) {
+                verifier.recordFailure(this.user.getUsername(), client);
+                this.tfOldPw.setComponentError(new UserError("Das Passwort ist nicht korrekt."));
+                return;
+            }
+        } catch (final VerificationRejectedException e) {
+            this.tfOldPw.setComponentError(new UserError(e.getMessage()));
+            return;
+        }
+
         try {
             this.user.changePassword(this.tfNewPw1.getValue());
+            // Die Anmeldung darf das alte Passwort nicht mehr aus dem Zwischenspeicher lesen
+            WashportalManager.instance.getEntityCache().onUserUpdated(this.user);
         } catch (final NoSuchAlgorithmException e) {
             this.logger.error("Could not change the password of a user.", e);
             WashportalManager.instance.showError("Interner Fehler", e.getLocalizedMessage());
@@ -145,16 +167,4 @@ public class ChangePasswordWindow extends Window {
         }
 
     }
-
-    private class OldPasswordValidator implements Validator {
-
-        @Override
-        public void validate(Object value) throws InvalidValueException {
-            if (!WashportalManager.instance.getSessionManager().getCurrentUser()
-                    .checkPassword(ChangePasswordWindow.this.tfOldPw.getValue())) {
-                throw new InvalidValueException("Das Passwort ist nicht korrekt.");
-            }
-        }
-
-    }
 }
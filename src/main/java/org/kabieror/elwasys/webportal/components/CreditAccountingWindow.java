@@ -1,20 +1,16 @@
 package org.kabieror.elwasys.webportal.components;
 
-import com.vaadin.data.Item;
 import com.vaadin.data.util.converter.StringToBigDecimalConverter;
-import com.vaadin.ui.Table;
+import com.vaadin.ui.*;
 import com.vaadin.ui.Table.Align;
-import com.vaadin.ui.VerticalLayout;
-import com.vaadin.ui.Window;
-import org.kabieror.elwasys.common.CreditAccountingEntry;
 import org.kabieror.elwasys.common.User;
 import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.data.PagedAccountingContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.text.NumberFormat;
-import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -28,8 +24,8 @@ public class CreditAccountingWindow extends Window {
      * 
      */
     private static final long serialVersionUID = -4365804859608421600L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    @SuppressWarnings("unchecked")
     public CreditAccountingWindow(User user) throws SQLException {
         this.setCaption("Umsätze von Benutzer " + user.getName());
         this.setWidth("60em");
@@ -50,15 +46,20 @@ public class CreditAccountingWindow extends Window {
         table.setMultiSelect(false);
         table.setSelectable(false);
 
-        table.addContainerProperty("date", LocalDateTime.class, null, "Datum", null, Align.LEFT);
-        table.addContainerProperty("amount", BigDecimal.class, null, "Betrag", null, Align.LEFT);
-        table.addContainerProperty("text", String.class, null, "Buchungstext", null, Align.LEFT);
+        final PagedAccountingContainer container = new PagedAccountingContainer(user.getId());
+        table.setContainerDataSource(container);
+        table.setColumnHeader(PagedAccountingContainer.DATE_PROPERTY, "Datum");
+        table.setColumnHeader(PagedAccountingContainer.AMOUNT_PROPERTY, "Betrag");
+        table.setColumnHeader(PagedAccountingContainer.TEXT_PROPERTY, "Buchungstext");
+        table.setColumnAlignment(PagedAccountingContainer.DATE_PROPERTY, Align.LEFT);
+        table.setColumnAlignment(PagedAccountingContainer.AMOUNT_PROPERTY, Align.LEFT);
+        table.setColumnAlignment(PagedAccountingContainer.TEXT_PROPERTY, Align.LEFT);
 
-        table.setColumnWidth("date", 150);
-        table.setColumnWidth("amount", 100);
+        table.setColumnWidth(PagedAccountingContainer.DATE_PROPERTY, 150);
+        table.setColumnWidth(PagedAccountingContainer.AMOUNT_PROPERTY, 100);
 
-        table.setConverter("date", new StringToLocalDateTimeConverter());
-        table.setConverter("amount", new StringToBigDecimalConverter() {
+        table.setConverter(PagedAccountingContainer.DATE_PROPERTY, new StringToLocalDateTimeConverter());
+        table.setConverter(PagedAccountingContainer.AMOUNT_PROPERTY, new StringToBigDecimalConverter() {
             private static final long serialVersionUID = 1671726149722094077L;
 
             @Override
@@ -67,13 +68,21 @@ public class CreditAccountingWindow extends Window {
             }
         });
 
-        final List<CreditAccountingEntry> entries = WashportalManager.instance.getDataManager()
-                .getAccountingEntries(user);
-        for (final CreditAccountingEntry e : entries) {
-            final Item i = table.addItem(e.getId());
-            i.getItemProperty("date").setValue(e.getDate());
-            i.getItemProperty("amount").setValue(e.getAmount());
-            i.getItemProperty("text").setValue(e.getDescription());
-        }
+        container.loadFirstPage();
+
+        final Button btnLoadOlder = new Button("Ältere Buchungen laden");
+        content.addComponent(btnLoadOlder);
+        btnLoadOlder.addStyleName("small");
+        btnLoadOlder.setVisible(container.hasOlder());
+        btnLoadOlder.addClickListener(e -> {
+            try {
+                container.loadOlder();
+            } catch (final SQLException e1) {
+                this.logger.error("Could not load older accounting entries.", e1);
+                WashportalManager.instance.showDatabaseError(e1);
+            }
+            btnLoadOlder.setVisible(container.hasOlder());
+        });
+        content.setExpandRatio(table, 1);
     }
 }
@@ -9,6 +9,7 @@ import com.vaadin.shared.ui.label.ContentMode;
 import com.vaadin.ui.*;
 import org.kabieror.elwasys.common.*;
 import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.data.EntityCache;
 import org.kabieror.elwasys.webportal.events.IDeviceUpdatedEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -209,7 +210,7 @@ public class DeviceWindow extends Window {
         this.locationsContainer.addContainerProperty(VALUE_PROPERTY, Location.class, null);
 
         try {
-            for (final Location l : WashportalManager.instance.getDataManager().getLocations()) {
+            for (final Location l : WashportalManager.instance.getEntityCache().getLocations()) {
                 final Item i = this.locationsContainer.addItem(l.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(l.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(l);
@@ -281,7 +282,7 @@ public class DeviceWindow extends Window {
             this.programsContainer = new IndexedContainer();
             this.programsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.programsContainer.addContainerProperty(VALUE_PROPERTY, Program.class, "");
-            for (final Program p : WashportalManager.instance.getDataManager().getPrograms()) {
+            for (final Program p : WashportalManager.instance.getEntityCache().getPrograms()) {
                 final Item i = this.programsContainer.addItem(p.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(p.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(p);
@@ -315,7 +316,7 @@ public class DeviceWindow extends Window {
             this.groupsContainer = new IndexedContainer();
             this.groupsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.groupsContainer.addContainerProperty(VALUE_PROPERTY, UserGroup.class, "");
-            for (final UserGroup g : WashportalManager.instance.getDataManager().getUserGroups()) {
+            for (final UserGroup g : WashportalManager.instance.getEntityCache().getUserGroups()) {
                 final Item i = this.groupsContainer.addItem(g.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(g.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(g);
@@ -381,6 +382,7 @@ public class DeviceWindow extends Window {
     private void exitWindow() {
         try {
             WashportalManager.instance.getDataManager().removeUnusedLocations();
+            WashportalManager.instance.getEntityCache().invalidate(EntityCache.Kind.LOCATION);
         } catch (final SQLException e) {
             this.logger.error("Could not remove unused locations.", e);
             WashportalManager.instance.showDatabaseError(e);
@@ -467,6 +469,7 @@ public class DeviceWindow extends Window {
         }
 
         // Listener benachrichtigen
+        WashportalManager.instance.getEntityCache().onDeviceUpdated(device);
         for (final IDeviceUpdatedEventListener l : this.listeners) {
             l.onDeviceUpdated(device);
         }
@@ -69,7 +69,7 @@ public class LocationWindow extends Window {
             this.groupsContainer = new IndexedContainer();
             this.groupsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.groupsContainer.addContainerProperty(VALUE_PROPERTY, UserGroup.class, "");
-            for (final UserGroup g : WashportalManager.instance.getDataManager().getUserGroups()) {
+            for (final UserGroup g : WashportalManager.instance.getEntityCache().getUserGroups()) {
                 final Item i = this.groupsContainer.addItem(g.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(g.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(g);
@@ -142,6 +142,7 @@ public class LocationWindow extends Window {
 
         try {
             location.modify(tfName.getValue(), validUserGroups);
+            WashportalManager.instance.getEntityCache().onLocationUpdated(location);
             this.setVisible(false);
             this.getUI().removeWindow(this);
             listener.onLocationUpdated(location);
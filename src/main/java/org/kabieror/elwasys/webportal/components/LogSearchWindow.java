@@ -0,0 +1,248 @@
+package org.kabieror.elwasys.webportal.components;
+
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.event.ShortcutAction;
+import com.vaadin.shared.ui.datefield.Resolution;
+import com.vaadin.ui.*;
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.WashportalConfiguration;
+import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.maintenance.LogFilter;
+import org.kabieror.elwasys.webportal.maintenance.LogMatch;
+import org.kabieror.elwasys.webportal.maintenance.LogSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Fenster zum Durchsuchen der Log-Dateien mehrerer Standorte. Die Suche fragt
+ * eine begrenzte Anzahl an Standorten gleichzeitig ab und hört auf, sobald die
+ * abgerufenen Log-Dateien die erlaubte Größe erreichen. Die Treffer werden
+ * nach ihrem Zeitstempel zusammengeführt.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LogSearchWindow extends Window {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Die maximale Anzahl an Treffern je Standort
+     */
+    private static final int MAX_MATCHES = 500;
+
+    private static final String TIME_PROPERTY = "time";
+    private static final String LOCATION_PROPERTY = "location";
+    private static final String LEVEL_PROPERTY = "level";
+    private static final String TEXT_PROPERTY = "text";
+    private static final String STYLE_PROPERTY = "style";
+
+    private static final Comparator<LogMatch> BY_TIMESTAMP = Comparator
+            .comparing(LogMatch::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(LogMatch::getLocationName)
+            .thenComparingInt(LogMatch::getLineNumber);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final TwinColSelect selLocations;
+    private final TextField tfPattern;
+    private final DateField dfFrom;
+    private final DateField dfTo;
+    private final NativeSelect selLevel;
+    private final NativeSelect selContext;
+    private final Button btnSearch;
+    private final Label lblStatus;
+    private final IndexedContainer results;
+
+    public LogSearchWindow() {
+        this.setCaption("Log-Dateien durchsuchen");
+        this.setWidth("80em");
+        this.setHeight("45em");
+        this.setResizable(true);
+        this.setModal(true);
+        this.setClosable(true);
+
+        final VerticalLayout content = new VerticalLayout();
+        content.setSizeFull();
+        content.setMargin(true);
+        content.setSpacing(true);
+        this.setContent(content);
+
+        final HorizontalLayout filters = new HorizontalLayout();
+        filters.setSpacing(true);
+        content.addComponent(filters);
+
+        this.selLocations = new TwinColSelect("Standorte");
+        this.selLocations.setRows(5);
+        this.selLocations.setLeftColumnCaption("Verfügbar");
+        this.selLocations.setRightColumnCaption("Durchsuchen");
+        try {
+            for (final Location l : WashportalManager.instance.getEntityCache().getLocations()) {
+                this.selLocations.addItem(l);
+                this.selLocations.setItemCaption(l, l.getName());
+            }
+        } catch (final SQLException e) {
+            this.logger.error("Could not load the locations.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        }
+        filters.addComponent(this.selLocations);
+
+        final FormLayout criteria = new FormLayout();
+        criteria.setMargin(false);
+        filters.addComponent(criteria);
+
+        this.tfPattern = new TextField("Suchausdruck");
+        this.tfPattern.setInputPrompt("Regulärer Ausdruck");
+        this.tfPattern.setWidth("20em");
+        criteria.addComponent(this.tfPattern);
+
+        this.dfFrom = new DateField("Von");
+        this.dfFrom.setResolution(Resolution.MINUTE);
+        criteria.addComponent(this.dfFrom);
+
+        this.dfTo = new DateField("Bis");
+        this.dfTo.setResolution(Resolution.MINUTE);
+        criteria.addComponent(this.dfTo);
+
+        this.selLevel = new NativeSelect("Mindeststufe");
+        for (final LogFilter.Level level : LogFilter.Level.values()) {
+            this.selLevel.addItem(level);
+        }
+        criteria.addComponent(this.selLevel);
+
+        this.selContext = new NativeSelect("Kontextzeilen");
+        this.selContext.setNullSelectionAllowed(false);
+        for (final int c : new int[]{0, 2, 5, 10}) {
+            this.selContext.addItem(c);
+        }
+        this.selContext.setValue(2);
+        criteria.addComponent(this.selContext);
+
+        final HorizontalLayout actions = new HorizontalLayout();
+        actions.setSpacing(true);
+        content.addComponent(actions);
+
+        this.btnSearch = new Button("Suchen");
+        this.btnSearch.addStyleName("primary");
+        this.btnSearch.setClickShortcut(ShortcutAction.KeyCode.ENTER);
+        this.btnSearch.addClickListener(e -> this.search());
+        actions.addComponent(this.btnSearch);
+
+        this.lblStatus = new Label();
+        actions.addComponent(this.lblStatus);
+
+        this.results = new IndexedContainer();
+        this.results.addContainerProperty(TIME_PROPERTY, String.class, "");
+        this.results.addContainerProperty(LOCATION_PROPERTY, String.class, "");
+        this.results.addContainerProperty(LEVEL_PROPERTY, String.class, "");
+        this.results.addContainerProperty(TEXT_PROPERTY, String.class, "");
+        this.results.addContainerProperty(STYLE_PROPERTY, String.class, null);
+
+        final Table tblResults = new Table(null, this.results);
+        tblResults.setSizeFull();
+        tblResults.setSortEnabled(false);
+        tblResults.addStyleName("log-textfield");
+        tblResults.setVisibleColumns(TIME_PROPERTY, LOCATION_PROPERTY, LEVEL_PROPERTY, TEXT_PROPERTY);
+        tblResults.setColumnHeader(TIME_PROPERTY, "Zeit");
+        tblResults.setColumnHeader(LOCATION_PROPERTY, "Standort");
+        tblResults.setColumnHeader(LEVEL_PROPERTY, "Stufe");
+        tblResults.setColumnHeader(TEXT_PROPERTY, "Zeile");
+        tblResults.setColumnExpandRatio(TEXT_PROPERTY, 1);
+        // Kontextzeilen abgesetzt darstellen
+        tblResults.setCellStyleGenerator((source, itemId, propertyId) -> propertyId == null
+                ? (String) source.getContainerProperty(itemId, STYLE_PROPERTY).getValue() : null);
+        content.addComponent(tblResults);
+        content.setExpandRatio(tblResults, 1);
+    }
+
+    /**
+     * Startet die Suche für alle gewählten Standorte.
+     */
+    @SuppressWarnings("unchecked")
+    private void search() {
+        final Collection<Location> locations = (Collection<Location>) this.selLocations.getValue();
+        if (locations == null || locations.isEmpty()) {
+            WashportalManager.instance.showError("Keine Standorte", "Bitte mindestens einen Standort wählen.");
+            return;
+        }
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (manager == null) {
+            WashportalManager.instance.showError("Fehler", "Der Wartungsserver ist nicht verfügbar.");
+            return;
+        }
+
+        Pattern pattern = null;
+        if (this.tfPattern.getValue() != null && !this.tfPattern.getValue().isEmpty()) {
+            try {
+                pattern = Pattern.compile(this.tfPattern.getValue(), Pattern.CASE_INSENSITIVE);
+            } catch (final PatternSyntaxException e) {
+                WashportalManager.instance.showError("Ungültiger Suchausdruck", e.getDescription());
+                return;
+            }
+        }
+        final LogFilter filter = new LogFilter(pattern, this.toLocalDateTime(this.dfFrom.getValue()),
+                this.toLocalDateTime(this.dfTo.getValue()), (LogFilter.Level) this.selLevel.getValue(),
+                (Integer) this.selContext.getValue(), MAX_MATCHES);
+
+        this.btnSearch.setEnabled(false);
+        this.lblStatus.setValue("Suche in " + locations.size() + " Standorten...");
+        this.results.removeAllItems();
+
+        final WashportalConfiguration config = WashportalManager.instance.getConfigurationManager();
+        final UI ui = this.getUI();
+        new LogSearch(manager, filter, locations, config.getLogSearchMaxConcurrent(),
+                config.getLogSearchMaxMegabytes() * 1024L * 1024L).start()
+                .thenAccept(s -> ui.access(() -> this.showResults(s)));
+    }
+
+    private void showResults(LogSearch search) {
+        this.btnSearch.setEnabled(true);
+        final List<LogMatch> matches = search.getMatches();
+        matches.sort(BY_TIMESTAMP);
+
+        final DateTimeFormatter format = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
+                .withLocale(this.getLocale() != null ? this.getLocale() : Locale.getDefault());
+        int hits = 0;
+        for (final LogMatch m : matches) {
+            final Item item = this.results.addItem(this.results.size());
+            item.getItemProperty(TIME_PROPERTY).setValue(m.getTimestamp() != null ? m.getTimestamp().format(format)
+                    : "-");
+            item.getItemProperty(LOCATION_PROPERTY).setValue(m.getLocationName());
+            item.getItemProperty(LEVEL_PROPERTY).setValue(m.getLevel() != null ? m.getLevel() : "");
+            item.getItemProperty(TEXT_PROPERTY).setValue(m.getText());
+            item.getItemProperty(STYLE_PROPERTY).setValue(m.isContext() ? "log-context" : null);
+            if (!m.isContext()) {
+                hits++;
+            }
+        }
+
+        final StringBuilder status = new StringBuilder(hits + " Treffer");
+        status.append(String.format(" in %.1f MB", search.getTransferredBytes() / 1024.0 / 1024.0));
+        if (!search.getTruncated().isEmpty()) {
+            status.append(", gekürzt auf ").append(MAX_MATCHES).append(" für ")
+                    .append(String.join(", ", search.getTruncated()));
+        }
+        if (!search.getFailed().isEmpty()) {
+            status.append(", nicht erreichbar: ").append(String.join(", ", search.getFailed()));
+        }
+        if (!search.getSkipped().isEmpty()) {
+            status.append(", wegen der abgerufenen Datenmenge nicht durchsucht: ")
+                    .append(String.join(", ", search.getSkipped()));
+        }
+        this.lblStatus.setValue(status.toString());
+    }
+
+    private LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+}
@@ -1,16 +1,69 @@
 package org.kabieror.elwasys.webportal.components;
 
-import com.vaadin.ui.TextArea;
-import com.vaadin.ui.VerticalLayout;
-import com.vaadin.ui.Window;
-import org.apache.commons.lang3.StringUtils;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.ui.*;
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.WashportalConfiguration;
+import org.kabieror.elwasys.webportal.WashportalManager;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
+/**
+ * Zeigt das Ende der Log-Datei des Clients eines Standorts an. Es werden nur
+ * die letzten Zeilen vorgehalten und nur die sichtbaren Zeilen an den Browser
+ * übertragen. Auf Wunsch werden neue Zeilen in großem Abstand angehängt.
+ * <p>
+ * Die Begrenzung betrifft nur die Anzeige: Der Client sendet bei jedem Abruf,
+ * auch beim Verfolgen, die vollständige Log-Datei über die
+ * Wartungsverbindung. Das Verfolgen endet daher nach einer festen Dauer von
+ * selbst.
+ *
+ * @author Oliver Kabierschke
+ */
 public class LogViewerWindow extends Window {
 
-    public LogViewerWindow(List<String> logContents) {
-        this.setCaption("Log");
+    private static final long serialVersionUID = 1L;
+
+    private static final String LINE_PROPERTY = "line";
+
+    private final Location location;
+
+    private final int maxLines;
+
+    private final long followInterval;
+
+    private final long followDuration;
+
+    private final Table tblLog;
+
+    private final IndexedContainer lines;
+
+    private final CheckBox cbFollow;
+
+    private final Label lblStatus;
+
+    /**
+     * Die Anzahl der Zeilen der Log-Datei beim letzten Abruf
+     */
+    private int totalLines;
+
+    private boolean loading;
+
+    private ScheduledFuture<?> followTask;
+
+    private ScheduledFuture<?> followStopTask;
+
+    public LogViewerWindow(Location location) {
+        this.location = location;
+        final WashportalConfiguration config = WashportalManager.instance.getConfigurationManager();
+        this.maxLines = config.getLogViewerMaxLines();
+        this.followInterval = config.getLogViewerFollowInterval() * 1000L;
+        this.followDuration = config.getLogViewerFollowDuration() * 60000L;
+
+        this.setCaption("Log " + location.getName());
         this.setClosable(true);
         this.setModal(true);
         this.setWidth("70em");
@@ -19,16 +72,131 @@ public class LogViewerWindow extends Window {
 
         final VerticalLayout content = new VerticalLayout();
         content.setSizeFull();
+        content.setSpacing(true);
 
-        final TextArea tfLog = new TextArea();
+        // Die Tabelle überträgt nur die sichtbaren Zeilen an den Browser
+        this.lines = new IndexedContainer();
+        this.lines.addContainerProperty(LINE_PROPERTY, String.class, "");
+        this.tblLog = new Table(null, this.lines);
+        this.tblLog.setSizeFull();
+        this.tblLog.setColumnHeaderMode(Table.ColumnHeaderMode.HIDDEN);
+        this.tblLog.setSelectable(false);
+        this.tblLog.setSortEnabled(false);
+        this.tblLog.addStyleName("log-textfield");
+        content.addComponent(this.tblLog);
+        content.setExpandRatio(this.tblLog, 1);
 
-        tfLog.setSizeFull();
-        tfLog.setValue(StringUtils.join(logContents, "\n"));
-        tfLog.setReadOnly(true);
-        tfLog.addStyleName("log-textfield");
-
-        content.addComponent(tfLog);
+        final HorizontalLayout footer = new HorizontalLayout();
+        footer.setSpacing(true);
+        this.cbFollow = new CheckBox("Neue Zeilen verfolgen");
+        this.cbFollow.addValueChangeListener(e -> this.setFollowing(this.cbFollow.getValue()));
+        footer.addComponent(this.cbFollow);
+        this.lblStatus = new Label("Lade...");
+        footer.addComponent(this.lblStatus);
+        content.addComponent(footer);
 
         this.setContent(content);
     }
+
+    @Override
+    public void attach() {
+        super.attach();
+        this.load();
+    }
+
+    @Override
+    public void detach() {
+        this.setFollowing(false);
+        super.detach();
+    }
+
+    private void setFollowing(boolean follow) {
+        if (this.followTask != null) {
+            this.followTask.cancel(false);
+            this.followTask = null;
+        }
+        if (this.followStopTask != null) {
+            this.followStopTask.cancel(false);
+            this.followStopTask = null;
+        }
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (follow && manager != null) {
+            final UI ui = this.getUI();
+            this.followTask = manager.schedule(() -> ui.access(this::load), this.followInterval);
+            this.followStopTask = manager.runLater(() -> ui.access(() -> this.cbFollow.setValue(false)),
+                    this.followDuration);
+            this.scrollToEnd();
+        }
+    }
+
+    /**
+     * Ruft die Log-Datei beim Client ab, falls nicht bereits ein Abruf läuft.
+     */
+    private void load() {
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (this.loading || manager == null) {
+            return;
+        }
+        this.loading = true;
+        final UI ui = this.getUI();
+        manager.getLogAsync(this.location).whenComplete((log, e) -> ui.access(() -> {
+            this.loading = false;
+            if (e != null) {
+                this.cbFollow.setValue(false);
+                this.lblStatus.setValue("Fehler beim Abruf");
+                WashportalManager.instance.showMaintenanceError(e);
+            } else {
+                this.append(log);
+            }
+        }));
+    }
+
+    /**
+     * Hängt die seit dem letzten Abruf hinzugekommenen Zeilen an und verwirft
+     * die ältesten Zeilen, sobald mehr als die erlaubte Anzahl vorliegt.
+     *
+     * @param log
+     *            Die vollständige Log-Datei
+     */
+    private void append(List<String> log) {
+        final boolean first = this.totalLines == 0;
+        if (log.size() < this.totalLines) {
+            // Die Log-Datei wurde neu begonnen
+            this.lines.removeAllItems();
+            this.totalLines = 0;
+        }
+        final int from = Math.max(this.totalLines, log.size() - this.maxLines);
+        if (from > this.totalLines) {
+            // Mehr neue Zeilen als vorgehalten werden, alles ersetzen
+            this.lines.removeAllItems();
+        }
+        for (int i = from; i < log.size(); i++) {
+            this.lines.addItem(i).getItemProperty(LINE_PROPERTY).setValue(log.get(i));
+        }
+        this.totalLines = log.size();
+
+        final int overflow = this.lines.size() - this.maxLines;
+        if (overflow > 0) {
+            for (final Object id : new ArrayList<>(this.lines.getItemIds(0, overflow))) {
+                this.lines.removeItem(id);
+            }
+        }
+
+        if (this.lines.size() < this.totalLines) {
+            this.lblStatus.setValue("Angezeigt werden die letzten " + this.lines.size() + " von " + this.totalLines
+                    + " abgerufenen Zeilen");
+        } else {
+            this.lblStatus.setValue(this.totalLines + " Zeilen abgerufen");
+        }
+        if (first || this.cbFollow.getValue()) {
+            this.scrollToEnd();
+        }
+    }
+
+    private void scrollToEnd() {
+        final Object last = this.lines.lastItemId();
+        if (last != null) {
+            this.tblLog.setCurrentPageFirstItemId(last);
+        }
+    }
 }
@@ -6,11 +6,11 @@ import com.vaadin.event.ShortcutAction.KeyCode;
 import com.vaadin.ui.*;
 import org.apache.commons.mail.EmailException;
 import org.kabieror.elwasys.common.User;
+import org.kabieror.elwasys.webportal.MailQueue;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 
 /**
@@ -103,31 +103,24 @@ public class PasswordForgotWindow extends Window {
                         "Es konnte kein Benutzer mit der angegebenen Email-Adresse gefunden werden.");
                 return;
             }
-            String key = user.generatePasswordResetKey();
             String message = "Hallo " + user.getName() + ",\n\n";
             message += "bitte besuche die folgende Webseite zum Setzen eines neuen Passworts.\n";
-            message += WashportalManager.instance.getUtilities().getPasswordResetUrl(key);
+            message += WashportalManager.instance.getUtilities().getPasswordResetUrl(MailQueue.RESET_KEY_PLACEHOLDER);
             message += "\n\n--\nWaschportal";
-            WashportalManager.instance.getUtilities().sendEmail("Passwort zurücksetzen", message,
-                    user);
-        } catch (NoSuchAlgorithmException e) {
-            this.logger.error("Could not change the password of a user.", e);
-            WashportalManager.instance.showError("Interner Fehler", e.getLocalizedMessage());
-            return;
+            WashportalManager.instance.getMailQueue().enqueuePasswordReset(user, "Passwort zurücksetzen", message);
         } catch (SQLException e) {
             this.logger.error("Could not change the password of a user.", e);
             WashportalManager.instance.showDatabaseError(e);
             return;
         } catch (EmailException e) {
             this.logger.error("Could not send the email.", e);
-            WashportalManager.instance.showError("Interner Fehler",
-                    "Konnte die Email nicht senden.");
+            WashportalManager.instance.showError("Fehler", "Konnte die Email nicht senden.");
             return;
         }
 
         this.setVisible(false);
         this.getUI().removeWindow(this);
         WashportalManager.instance.showSuccessMessage("Email versandt",
-                "Die Email wurde versandt. Prüfe dein Postfach!");
+                "Die Email wird in Kürze versandt. Prüfe dein Postfach!");
     }
 }
@@ -505,7 +505,7 @@ public class ProgramWindow extends Window {
             this.groupsContainer = new IndexedContainer();
             this.groupsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.groupsContainer.addContainerProperty(VALUE_PROPERTY, UserGroup.class, "");
-            for (final UserGroup g : WashportalManager.instance.getDataManager().getUserGroups()) {
+            for (final UserGroup g : WashportalManager.instance.getEntityCache().getUserGroups()) {
                 final Item i = this.groupsContainer.addItem(g.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(g.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(g);
@@ -721,6 +721,7 @@ public class ProgramWindow extends Window {
                 return;
         }
 
+        WashportalManager.instance.getEntityCache().onProgramUpdated(program);
         for (final IProgramUpdatedEventListener l : this.listeners) {
             l.onProgramUpdated(program);
         }
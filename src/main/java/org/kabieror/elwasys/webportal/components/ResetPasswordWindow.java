@@ -110,6 +110,8 @@ public class ResetPasswordWindow extends Window {
 
         try {
             this.user.changePassword(this.tfNewPw1.getValue());
+            // Die Anmeldung darf das alte Passwort nicht mehr aus dem Zwischenspeicher lesen
+            WashportalManager.instance.getEntityCache().onUserUpdated(this.user);
         } catch (final NoSuchAlgorithmException e) {
             this.logger.error("Could not change the password of a user.", e);
             WashportalManager.instance.showError("Interner Fehler", e.getLocalizedMessage());
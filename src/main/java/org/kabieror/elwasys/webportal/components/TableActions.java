@@ -0,0 +1,104 @@
+package org.kabieror.elwasys.webportal.components;
+
+import com.vaadin.ui.Table;
+import com.vaadin.ui.Table.Align;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aktionsspalten für Tabellen. Anstatt für jede Zeile Schaltflächen zu
+ * erzeugen, wird das Symbol einer Aktion per CSS dargestellt und ein Klick auf
+ * die Zelle über einen gemeinsamen Listener der Tabelle ausgewertet. Die
+ * Darstellung kommt damit ohne Komponenten und ohne Datenbankzugriffe aus, die
+ * Entität wird erst beim Klick aufgelöst.
+ *
+ * @author Oliver Kabierschke
+ */
+public class TableActions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Table table;
+
+    private final Map<Object, Action> actions = new HashMap<>();
+
+    /**
+     * Konstruktor
+     *
+     * @param table
+     *            Die Tabelle, die mit Aktionsspalten versehen werden soll
+     */
+    public TableActions(Table table) {
+        this.table = table;
+
+        final Table.CellStyleGenerator styleGenerator = table.getCellStyleGenerator();
+        table.setCellStyleGenerator((source, itemId, propertyId) -> {
+            final Action action = this.actions.get(propertyId);
+            if (action != null) {
+                return action.styleName;
+            }
+            return styleGenerator != null ? styleGenerator.getStyle(source, itemId, propertyId) : null;
+        });
+
+        final Table.ItemDescriptionGenerator descriptionGenerator = table.getItemDescriptionGenerator();
+        table.setItemDescriptionGenerator((source, itemId, propertyId) -> {
+            final Action action = this.actions.get(propertyId);
+            if (action != null) {
+                return action.description;
+            }
+            return descriptionGenerator != null
+                    ? descriptionGenerator.generateDescription(source, itemId, propertyId) : null;
+        });
+
+        table.addItemClickListener(e -> {
+            final Action action = this.actions.get(e.getPropertyId());
+            if (action != null && e.getItemId() != null) {
+                action.handler.handle(e.getItemId());
+            }
+        });
+    }
+
+    /**
+     * Fügt der Tabelle eine Aktionsspalte hinzu.
+     *
+     * @param columnId
+     *            Die ID der Spalte
+     * @param styleName
+     *            Der Stil der Zellen, "action-edit" oder "action-delete"
+     * @param description
+     *            Der Tooltip der Aktion
+     * @param handler
+     *            Die Aktion, die mit der ID der geklickten Zeile ausgeführt wird
+     */
+    public void addAction(Object columnId, String styleName, String description, ActionHandler handler) {
+        this.actions.put(columnId, new Action(styleName, description, handler));
+        this.table.addGeneratedColumn(columnId, (source, itemId, id) -> "");
+        this.table.setColumnHeader(columnId, "");
+        this.table.setColumnWidth(columnId, 30);
+        this.table.setColumnAlignment(columnId, Align.CENTER);
+    }
+
+    /**
+     * Eine Aktion, die auf eine Zeile der Tabelle angewendet wird.
+     */
+    @FunctionalInterface
+    public interface ActionHandler extends Serializable {
+        void handle(Object itemId);
+    }
+
+    private static class Action implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String styleName;
+        private final String description;
+        private final ActionHandler handler;
+
+        Action(String styleName, String description, ActionHandler handler) {
+            this.styleName = styleName;
+            this.description = description;
+            this.handler = handler;
+        }
+    }
+}
@@ -175,6 +175,7 @@ public class UserCreditWindow extends Window {
                     "Das Guthaben des Benutzers reicht nicht aus für diese Operation.");
             return false;
         }
+        WashportalManager.instance.getPortalDataManager().markWritten();
         this.finishAction.run();
         return true;
     }
@@ -263,7 +263,7 @@ public class UserGroupWindow extends Window {
             this.locationsContainer = new IndexedContainer();
             this.locationsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.locationsContainer.addContainerProperty(VALUE_PROPERTY, Location.class, "");
-            for (final Location l : WashportalManager.instance.getDataManager().getLocations()) {
+            for (final Location l : WashportalManager.instance.getEntityCache().getLocations()) {
                 final Item i = this.locationsContainer.addItem(l.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(l.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(l);
@@ -295,7 +295,7 @@ public class UserGroupWindow extends Window {
             this.devicesContainer = new IndexedContainer();
             this.devicesContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.devicesContainer.addContainerProperty(VALUE_PROPERTY, Device.class, "");
-            for (final Device d : WashportalManager.instance.getDataManager().getDevices()) {
+            for (final Device d : WashportalManager.instance.getEntityCache().getDevices()) {
                 final Item i = this.devicesContainer.addItem(d.getId());
                 i.getItemProperty(CAPTION_PROPERTY)
                         .setValue(String.format("%s (%s)", d.getName(), d.getLocation().getName()));
@@ -328,7 +328,7 @@ public class UserGroupWindow extends Window {
             this.programsContainer = new IndexedContainer();
             this.programsContainer.addContainerProperty(CAPTION_PROPERTY, String.class, "");
             this.programsContainer.addContainerProperty(VALUE_PROPERTY, Program.class, "");
-            for (final Program p : WashportalManager.instance.getDataManager().getPrograms()) {
+            for (final Program p : WashportalManager.instance.getEntityCache().getPrograms()) {
                 final Item i = this.programsContainer.addItem(p.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(p.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(p);
@@ -469,6 +469,7 @@ public class UserGroupWindow extends Window {
                 .map(i -> (Program) this.programsContainer.getItem(i).getItemProperty(VALUE_PROPERTY).getValue())
                 .collect(Collectors.toCollection(Vector::new)));
 
+        WashportalManager.instance.getEntityCache().onUserGroupUpdated(group);
         for (final IUserGroupUpdatedEventListener l : this.listeners) {
             l.onUserGroupUpdated(group);
         }
@@ -11,15 +11,17 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.mail.EmailException;
 import org.kabieror.elwasys.common.User;
 import org.kabieror.elwasys.common.UserGroup;
-import org.kabieror.elwasys.common.Utilities;
+import org.kabieror.elwasys.webportal.MailQueue;
 import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.data.CardAssignment;
 import org.kabieror.elwasys.webportal.events.IUserUpdatedEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 /**
@@ -137,39 +139,7 @@ public class UserWindow extends Window {
                 "Die Kartennnummern, die dem Benutzer zugeordnet sind. Eine Nummer pro Zeile.");
         form.addComponent(this.tfCardIds);
         this.tfCardIds.setWidth("100%");
-        this.tfCardIds.addValidator(new Validator() {
-
-            @Override
-            public void validate(Object value) throws InvalidValueException {
-                if (!(value instanceof String)) {
-                    throw new InvalidValueException("Ungültiger Datentyp.");
-                }
-                final String str = (String) value;
-                final String[] values = str.split("\n");
-                for (final String v : values) {
-                    if (v.isEmpty()) {
-                        continue;
-                    }
-                    if (!v.matches("^\\d+$")) {
-                        throw new InvalidValueException(
-                                "Die Kartennummer '" + v + "' ist ungültig.");
-                    }
-                    User u;
-                    try {
-                        u = WashportalManager.instance.getDataManager().getUserByCardId(v);
-                    } catch (final SQLException e) {
-                        WashportalManager.instance.showDatabaseError(e);
-                        throw new InvalidValueException(
-                                "Konnte nicht auf doppelte Verwendung der Kartennummern prüfen.");
-                    }
-                    if (u != null && u != UserWindow.this.userToEdit) {
-                        throw new InvalidValueException(
-                                "Die Karte '" + v + "' ist bereits zu Benutzer " + u.getName()
-                                        + " (" + u.getUsername() + ") zugeordnet.");
-                    }
-                }
-            }
-        });
+        this.tfCardIds.addValidator(new CardIdValidator());
 
 
         // Auswahl: Standort
@@ -185,7 +155,7 @@ public class UserWindow extends Window {
         this.groupsContainer.addContainerProperty(VALUE_PROPERTY, UserGroup.class, null);
 
         try {
-            for (final UserGroup g : WashportalManager.instance.getDataManager().getUserGroups()) {
+            for (final UserGroup g : WashportalManager.instance.getEntityCache().getUserGroups()) {
                 final Item i = this.groupsContainer.addItem(g.getId());
                 i.getItemProperty(CAPTION_PROPERTY).setValue(g.getName());
                 i.getItemProperty(VALUE_PROPERTY).setValue(g);
@@ -203,7 +173,7 @@ public class UserWindow extends Window {
         form.addComponent(blockedWrapper);
 
         this.cbSendPassword = new CheckBox();
-        this.cbSendPassword.setCaption("Sende dem Benutzer per Email ein neues Passwort");
+        this.cbSendPassword.setCaption("Sende dem Benutzer per Email einen Link zum Setzen des Passworts");
         this.cbSendPassword.addStyleName("small-label");
         this.cbSendPassword.setValue(this.mode == Mode.CREATE_USER);
         final HorizontalLayout sendPwWrapper = new HorizontalLayout();
@@ -293,28 +263,30 @@ public class UserWindow extends Window {
                     "Dieses Fenster hat einen ungültigen Zustand.");
             return;
         }
+        WashportalManager.instance.getEntityCache().onUserUpdated(user);
         for (final IUserUpdatedEventListener l : this.listeners) {
             l.onUserUpdated(user);
         }
 
-        // Send new password
+        // Link zum Setzen des Passworts senden
         if (this.cbSendPassword.getValue()) {
             try {
-                final String newPw = Utilities.generatePassword();
-                user.changePassword(newPw);
                 String message = "Hallo " + user.getName() + ",\n\n";
-                message += "hier ist dein neues Passwort für das Waschportal: " + newPw + "\n";
+                message += "über die folgende Webseite kannst du ein neues Passwort für das Waschportal setzen:\n";
+                message += WashportalManager.instance.getUtilities()
+                        .getPasswordResetUrl(MailQueue.RESET_KEY_PLACEHOLDER) + "\n\n";
                 message += "Zusammen mit deinem Benutzernamen '" + user.getUsername()
-                        + "' kannst du dich jetzt unter http://waschportal.hilaren.de einloggen "
+                        + "' kannst du dich danach unter http://waschportal.hilaren.de einloggen "
                         + "und dort dein Guthaben und abgebuchte Waschvorgänge ansehen.\n\n";
                 message += "--\nWaschportal";
-                WashportalManager.instance.getUtilities().sendEmail("Waschportal - Neues Passwort",
-                        message, user);
-                WashportalManager.instance.showSuccessMessage("Erfolg", "Passwort wurde versandt");
-            } catch (final NoSuchAlgorithmException e) {
-                this.logger.error("Could not change the password of the user.", e);
+                WashportalManager.instance.getMailQueue().enqueuePasswordReset(user, "Waschportal - Neues Passwort",
+                        message);
+                WashportalManager.instance.showSuccessMessage("Erfolg",
+                        "Link zum Setzen des Passworts wird per Email versandt");
+            } catch (final SQLException e) {
+                this.logger.error("Could not queue the email to the user.", e);
                 WashportalManager.instance.showError("Interner Fehler",
-                        "Konnte das Passwort nicht ändern. " + e.getLocalizedMessage());
+                        "Konnte keine Email senden. " + e.getLocalizedMessage());
             } catch (final EmailException e) {
                 this.logger.error("Could not send the email to the user.", e);
                 WashportalManager.instance.showError("Interner Fehler",
@@ -345,4 +317,67 @@ public class UserWindow extends Window {
     public enum Mode {
         EDIT_USER, CREATE_USER,
     }
+
+    /**
+     * Prüft die Kartennummern auf gültiges Format und auf doppelte Vergabe.
+     * Alle Kartennummern werden in einer einzigen Abfrage geprüft. Da Vaadin
+     * Validatoren häufig erneut ausführt, wird das Ergebnis für den zuletzt
+     * geprüften Wert gemerkt.
+     */
+    private class CardIdValidator implements Validator {
+
+        private static final long serialVersionUID = 1L;
+
+        private String lastValue;
+
+        private String lastError;
+
+        @Override
+        public void validate(Object value) throws InvalidValueException {
+            if (!(value instanceof String)) {
+                throw new InvalidValueException("Ungültiger Datentyp.");
+            }
+            final String str = (String) value;
+            if (!str.equals(this.lastValue)) {
+                this.lastValue = str;
+                this.lastError = this.check(str);
+            }
+            if (this.lastError != null) {
+                throw new InvalidValueException(this.lastError);
+            }
+        }
+
+        private String check(String str) {
+            final Set<String> cardIds = new LinkedHashSet<>();
+            for (final String v : str.split("\n")) {
+                if (v.isEmpty()) {
+                    continue;
+                }
+                if (!v.matches("^\\d+$")) {
+                    return "Die Kartennummer '" + v + "' ist ungültig.";
+                }
+                cardIds.add(v);
+            }
+
+            final List<CardAssignment> assignments;
+            try {
+                assignments = WashportalManager.instance.getPortalDataManager().getCardAssignments(cardIds);
+            } catch (final SQLException e) {
+                UserWindow.this.logger.error("Could not check the card ids.", e);
+                WashportalManager.instance.showDatabaseError(e);
+                // Nicht merken, damit beim nächsten Mal erneut geprüft wird
+                this.lastValue = null;
+                return "Konnte nicht auf doppelte Verwendung der Kartennummern prüfen.";
+            }
+
+            final List<String> conflicts = new Vector<>();
+            for (final CardAssignment a : assignments) {
+                if (UserWindow.this.userToEdit == null || a.getUserId() != UserWindow.this.userToEdit.getId()) {
+                    conflicts.add("Die Karte '" + a.getCardId() + "' ist bereits zu Benutzer " + a.getUserName()
+                            + " (" + a.getUsername() + ") zugeordnet.");
+                }
+            }
+            return conflicts.isEmpty() ? null : StringUtils.join(conflicts, " ");
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Eine Buchung auf dem Guthabenkonto eines Benutzers, wie sie in den
+ * Umsatztabellen angezeigt wird.
+ *
+ * @author Oliver Kabierschke
+ */
+public class AccountingEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final LocalDateTime date;
+    private final BigDecimal amount;
+    private final String description;
+
+    public AccountingEntry(int id, LocalDateTime date, BigDecimal amount, String description) {
+        this.id = id;
+        this.date = date;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public LocalDateTime getDate() {
+        return this.date;
+    }
+
+    public BigDecimal getAmount() {
+        return this.amount;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+}
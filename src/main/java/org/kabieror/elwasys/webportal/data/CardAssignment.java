@@ -0,0 +1,47 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+
+/**
+ * Die Zuordnung einer Kartennummer zu einem Benutzer.
+ *
+ * @author Oliver Kabierschke
+ */
+public class CardAssignment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String cardId;
+    private final int userId;
+    private final String userName;
+    private final String username;
+
+    public CardAssignment(String cardId, int userId, String userName, String username) {
+        this.cardId = cardId;
+        this.userId = userId;
+        this.userName = userName;
+        this.username = username;
+    }
+
+    public String getCardId() {
+        return this.cardId;
+    }
+
+    public int getUserId() {
+        return this.userId;
+    }
+
+    /**
+     * @return Der Name des Benutzers.
+     */
+    public String getUserName() {
+        return this.userName;
+    }
+
+    /**
+     * @return Der Benutzername, mit dem sich der Benutzer anmeldet.
+     */
+    public String getUsername() {
+        return this.username;
+    }
+}
@@ -0,0 +1,122 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+
+/**
+ * Eine Änderung an einer Zeile der Datenbank, die über den Änderungsstrom
+ * gemeldet wurde.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ChangeEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Table table;
+    private final Operation operation;
+    private final int id;
+    private final Integer relatedId;
+
+    public ChangeEvent(Table table, Operation operation, int id, Integer relatedId) {
+        this.table = table;
+        this.operation = operation;
+        this.id = id;
+        this.relatedId = relatedId;
+    }
+
+    /**
+     * Liest eine Änderung aus der Nachricht des Datenbank-Triggers. Die
+     * Nachricht hat die Form {@code tabelle:operation:id:bezug}, wobei der
+     * Bezug leer sein kann.
+     *
+     * @param payload
+     *            Die Nachricht des Triggers
+     * @return Die Änderung oder null, falls die Nachricht nicht verstanden wird
+     */
+    public static ChangeEvent parse(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        final String[] parts = payload.split(":", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        final Table table = Table.fromName(parts[0]);
+        if (table == null) {
+            return null;
+        }
+        try {
+            final Operation operation = Operation.valueOf(parts[1]);
+            final int id = Integer.parseInt(parts[2]);
+            final Integer relatedId = parts[3].isEmpty() ? null : Integer.valueOf(parts[3]);
+            return new ChangeEvent(table, operation, id, relatedId);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public Table getTable() {
+        return this.table;
+    }
+
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * @return Die ID der geänderten Zeile
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return Die ID des Geräts einer Ausführung bzw. des Benutzers einer
+     *         Buchung, sonst null
+     */
+    public Integer getRelatedId() {
+        return this.relatedId;
+    }
+
+    @Override
+    public String toString() {
+        return this.table + " " + this.operation + " " + this.id
+                + (this.relatedId != null ? " (" + this.relatedId + ")" : "");
+    }
+
+    /**
+     * Die Tabellen, deren Änderungen gemeldet werden
+     */
+    public enum Table {
+        EXECUTION("executions"), ACCOUNTING("credit_accounting"), USER("users"), DEVICE("devices");
+
+        private final String tableName;
+
+        Table(String tableName) {
+            this.tableName = tableName;
+        }
+
+        /**
+         * @return Der Name der Tabelle in der Datenbank
+         */
+        public String getTableName() {
+            return this.tableName;
+        }
+
+        static Table fromName(String name) {
+            for (final Table t : values()) {
+                if (t.tableName.equals(name)) {
+                    return t;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Die Arten der Änderung
+     */
+    public enum Operation {
+        INSERT, UPDATE, DELETE,
+    }
+}
@@ -0,0 +1,222 @@
+package org.kabieror.elwasys.webportal.data;
+
+import org.kabieror.elwasys.webportal.events.IDatabaseChangedEventListener;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Empfängt die Änderungen an Ausführungen, Buchungen, Benutzern und Geräten
+ * über LISTEN/NOTIFY und verteilt sie an die angemeldeten Listener. Die
+ * Trigger, welche die Nachrichten erzeugen, legt die Migration
+ * sql/002_change_feed.sql an, sodass auch Änderungen der Clients an den
+ * Standorten gemeldet werden.
+ * <p>
+ * Der Strom nutzt eine eigene Verbindung außerhalb des Pools. Bricht sie ab,
+ * wird sie neu aufgebaut und die Listener erfahren, dass zwischenzeitlich
+ * Änderungen verloren gegangen sein können.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ChangeFeed {
+
+    /**
+     * Der Kanal, auf dem die Trigger ihre Nachrichten senden
+     */
+    private static final String CHANNEL = "elwaportal_changes";
+
+    private static final String TRIGGER_COUNT_SELECT = "SELECT COUNT(DISTINCT c.relname) FROM pg_trigger t "
+            + "JOIN pg_class c ON c.oid = t.tgrelid WHERE t.tgname = 'elwaportal_change' AND c.relname = ANY (?)";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final String url;
+
+    private final Properties properties;
+
+    private final long pollInterval;
+
+    private final List<IDatabaseChangedEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean connected;
+
+    private volatile boolean stopped;
+
+    private Thread thread;
+
+    /**
+     * Konstruktor
+     *
+     * @param url
+     *            Die JDBC-URL der Hauptdatenbank
+     * @param properties
+     *            Die Verbindungseigenschaften
+     * @param pollInterval
+     *            Der Abstand in Millisekunden, in dem neue Nachrichten abgeholt werden
+     */
+    public ChangeFeed(String url, Properties properties, int pollInterval) {
+        this.url = url;
+        this.properties = properties;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Prüft, ob die Trigger, welche die Änderungen melden, auf allen Tabellen
+     * angelegt sind.
+     *
+     * @param database
+     *            Die Datenbank, in der die Trigger gesucht werden
+     * @return True, falls alle Trigger vorhanden sind
+     * @throws SQLException
+     */
+    public boolean hasTriggers(PortalDatabase database) throws SQLException {
+        final ChangeEvent.Table[] tables = ChangeEvent.Table.values();
+        final String[] names = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            names[i] = tables[i].getTableName();
+        }
+        try (Connection c = database.getConnection();
+             PreparedStatement s = c.prepareStatement(TRIGGER_COUNT_SELECT)) {
+            s.setArray(1, c.createArrayOf("text", names));
+            try (ResultSet rs = s.executeQuery()) {
+                rs.next();
+                return rs.getInt(1) == tables.length;
+            }
+        }
+    }
+
+    /**
+     * Startet den Empfang der Änderungen in einem eigenen Thread.
+     */
+    public synchronized void start() {
+        this.thread = new Thread(this::run, "change-feed");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Beendet den Empfang der Änderungen und schließt die Verbindung.
+     */
+    public synchronized void shutdown() {
+        this.stopped = true;
+        if (this.thread != null) {
+            this.thread.interrupt();
+            try {
+                this.thread.join(this.pollInterval + 1000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Meldet einen Listener für alle Änderungen an.
+     *
+     * @param listener
+     *            Der Listener
+     */
+    public void addListener(IDatabaseChangedEventListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Meldet einen Listener ab.
+     *
+     * @param listener
+     *            Der Listener
+     */
+    public void removeListener(IDatabaseChangedEventListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * @return True, falls Änderungen derzeit empfangen werden.
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    private void run() {
+        long retryDelay = 1000;
+        while (!this.stopped && !Thread.currentThread().isInterrupted()) {
+            try (Connection c = DriverManager.getConnection(this.url, this.properties);
+                 Statement s = c.createStatement()) {
+                s.execute("LISTEN " + CHANNEL);
+                this.connected = true;
+                retryDelay = 1000;
+                this.logger.info("Listening for database changes.");
+                // Auch beim ersten Verbinden: Was zwischen dem Laden der
+                // Listener und dem LISTEN geändert wurde, wäre sonst verloren
+                this.fireChangesMissed();
+
+                final PGConnection pgConnection = c.unwrap(PGConnection.class);
+                while (!this.stopped && !Thread.currentThread().isInterrupted()) {
+                    // Der Treiber liest Nachrichten nur beim Verarbeiten einer Abfrage
+                    s.execute("SELECT 1");
+                    final PGNotification[] notifications = pgConnection.getNotifications();
+                    if (notifications != null) {
+                        for (final PGNotification n : notifications) {
+                            this.fireChanged(n.getParameter());
+                        }
+                    }
+                    Thread.sleep(this.pollInterval);
+                }
+            } catch (final SQLException e) {
+                if (this.connected) {
+                    this.logger.warn("Lost the connection of the change feed.", e);
+                } else {
+                    this.logger.debug("Could not connect the change feed.", e);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.connected = false;
+            if (this.stopped) {
+                break;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            retryDelay = Math.min(retryDelay * 2, 30000);
+        }
+    }
+
+    private void fireChanged(String payload) {
+        final ChangeEvent e = ChangeEvent.parse(payload);
+        if (e == null) {
+            this.logger.warn("Ignoring unknown change notification '" + payload + "'.");
+            return;
+        }
+        for (final IDatabaseChangedEventListener l : this.listeners) {
+            try {
+                l.onDatabaseChanged(e);
+            } catch (final RuntimeException ex) {
+                this.logger.warn("Could not deliver the change " + e + ".", ex);
+            }
+        }
+    }
+
+    private void fireChangesMissed() {
+        for (final IDatabaseChangedEventListener l : this.listeners) {
+            try {
+                l.onChangesMissed();
+            } catch (final RuntimeException ex) {
+                this.logger.warn("Could not deliver the loss of changes.", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package org.kabieror.elwasys.webportal.data;
+
+import org.kabieror.elwasys.webportal.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ein einfacher Pool von Datenbankverbindungen. Die Anzahl gleichzeitig
+ * ausgegebener Verbindungen ist beschränkt. Wer keine Verbindung bekommt,
+ * wartet bis zum Ablauf des Timeouts. Ungenutzte Verbindungen werden vor der
+ * Ausgabe geprüft und nach Ablauf ihrer maximalen Lebensdauer geschlossen.
+ * <p>
+ * Jede Verbindung hält die zuletzt verwendeten PreparedStatements vor, sodass
+ * wiederkehrende Abfragen nicht erneut vorbereitet werden müssen und der
+ * Treiber sie als serverseitige Prepared Statements wiederverwenden kann.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ConnectionPool {
+
+    private static final String VALIDATION_QUERY = "SELECT 1";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final String url;
+
+    private final Properties properties;
+
+    private final int maxSize;
+
+    private final long acquireTimeoutMillis;
+
+    private final long validationIntervalMillis;
+
+    private final long maxLifetimeMillis;
+
+    private final int statementCacheSize;
+
+    /**
+     * Ungenutzte Verbindungen, die zuletzt zurückgegebene zuerst
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    private final Semaphore permits;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+
+    private volatile boolean closed;
+
+    private final LongAdder statementHits = new LongAdder();
+
+    private final LongAdder statementMisses = new LongAdder();
+
+    private final LongAdder statementEvictions = new LongAdder();
+
+    /**
+     * Konstruktor
+     *
+     * @param url
+     *            Die JDBC-URL der Datenbank
+     * @param properties
+     *            Die Anmeldedaten
+     * @param minSize
+     *            Die Anzahl der Verbindungen, die beim Start geöffnet werden
+     * @param maxSize
+     *            Die maximale Anzahl gleichzeitig geöffneter Verbindungen
+     * @param acquireTimeoutMillis
+     *            Die maximale Wartezeit auf eine freie Verbindung
+     * @param validationIntervalMillis
+     *            Die Zeit, nach der eine ungenutzte Verbindung vor der Ausgabe geprüft wird
+     * @param maxLifetimeMillis
+     *            Die maximale Lebensdauer einer Verbindung
+     * @param statementCacheSize
+     *            Die Anzahl der PreparedStatements, die je Verbindung vorgehalten werden
+     */
+    public ConnectionPool(String url, Properties properties, int minSize, int maxSize, long acquireTimeoutMillis,
+                          long validationIntervalMillis, long maxLifetimeMillis, int statementCacheSize) {
+        this.url = url;
+        this.properties = properties;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < Math.min(minSize, maxSize); i++) {
+            try {
+                this.idle.offerLast(this.open());
+            } catch (final SQLException e) {
+                this.logger.warn("Could not open the initial database connections.", e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gibt eine Verbindung aus dem Pool aus. Der Aufrufer muss die Verbindung
+     * nach Gebrauch schließen, wodurch sie in den Pool zurückkehrt.
+     *
+     * @return Eine offene Verbindung zur Datenbank.
+     * @throws SQLException
+     *             Falls innerhalb des Timeouts keine Verbindung verfügbar war
+     */
+    public Connection getConnection() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("The connection pool has been closed.");
+        }
+        final long start = System.nanoTime();
+        this.waiting.incrementAndGet();
+        try {
+            if (!this.permits.tryAcquire(this.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timeout while waiting for a database connection. " + this.active.get()
+                        + " of " + this.maxSize + " connections are in use.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = this.idle.pollFirst()) != null) {
+                if (this.isUsable(pc)) {
+                    break;
+                }
+                this.discard(pc);
+            }
+            if (pc == null) {
+                pc = this.open();
+            }
+            this.active.incrementAndGet();
+            this.acquireLatency.recordSince(start);
+            return pc.lease();
+        } catch (final SQLException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Führt eine Aufgabe auf allen ungenutzten Verbindungen des Pools aus, z.B.
+     * um häufige Abfragen beim Start vorzubereiten.
+     *
+     * @param task
+     *            Die Aufgabe, die je Verbindung ausgeführt wird
+     * @throws SQLException
+     */
+    public void forEachIdleConnection(ConnectionTask task) throws SQLException {
+        final List<Connection> leased = new Vector<>();
+        try {
+            for (int i = this.idle.size(); i > 0 && this.permits.tryAcquire(); i--) {
+                final PooledConnection pc = this.idle.pollFirst();
+                if (pc == null) {
+                    this.permits.release();
+                    break;
+                }
+                this.active.incrementAndGet();
+                leased.add(pc.lease());
+            }
+            for (final Connection c : leased) {
+                task.run(c);
+            }
+        } finally {
+            for (final Connection c : leased) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Schließt alle ungenutzten Verbindungen. Ausgegebene Verbindungen werden
+     * bei ihrer Rückgabe geschlossen, neue werden nicht mehr ausgegeben.
+     */
+    public void close() {
+        this.closed = true;
+        PooledConnection pc;
+        while ((pc = this.idle.pollFirst()) != null) {
+            this.discard(pc);
+        }
+    }
+
+    /**
+     * @return Die Anzahl der ausgegebenen Verbindungen
+     */
+    public int getActiveCount() {
+        return this.active.get();
+    }
+
+    /**
+     * @return Die Anzahl der ungenutzten Verbindungen im Pool
+     */
+    public int getIdleCount() {
+        return this.idle.size();
+    }
+
+    /**
+     * @return Die Anzahl der Threads, die auf eine Verbindung warten
+     */
+    public int getWaitingCount() {
+        return this.waiting.get();
+    }
+
+    /**
+     * @return Die Anzahl der geöffneten Verbindungen
+     */
+    public int getTotalCount() {
+        return this.total.get();
+    }
+
+    /**
+     * @return Die maximale Anzahl gleichzeitig geöffneter Verbindungen
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return Die Wartezeiten auf eine Verbindung
+     */
+    public LatencyHistogram getAcquireLatency() {
+        return this.acquireLatency;
+    }
+
+    /**
+     * @return Die Anzahl der PreparedStatements, die aus dem Zwischenspeicher bedient wurden
+     */
+    public long getStatementCacheHits() {
+        return this.statementHits.sum();
+    }
+
+    /**
+     * @return Die Anzahl der PreparedStatements, die neu vorbereitet werden mussten
+     */
+    public long getStatementCacheMisses() {
+        return this.statementMisses.sum();
+    }
+
+    /**
+     * @return Die Anzahl der PreparedStatements, die aus dem Zwischenspeicher verdrängt wurden
+     */
+    public long getStatementCacheEvictions() {
+        return this.statementEvictions.sum();
+    }
+
+    /**
+     * @return Der Anteil der aus dem Zwischenspeicher bedienten PreparedStatements
+     */
+    public double getStatementCacheHitRate() {
+        final long hits = this.statementHits.sum();
+        final long total = hits + this.statementMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private PooledConnection open() throws SQLException {
+        final PooledConnection pc = new PooledConnection(DriverManager.getConnection(this.url, this.properties));
+        this.total.incrementAndGet();
+        return pc;
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        final long now = System.currentTimeMillis();
+        if (now - pc.created > this.maxLifetimeMillis) {
+            return false;
+        }
+        if (now - pc.lastUsed < this.validationIntervalMillis) {
+            return true;
+        }
+        try (Statement s = pc.connection.createStatement()) {
+            s.execute(VALIDATION_QUERY);
+            return true;
+        } catch (final SQLException e) {
+            this.logger.debug("Discarding broken database connection.", e);
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        this.active.decrementAndGet();
+        try {
+            if (!pc.connection.getAutoCommit()) {
+                pc.connection.rollback();
+                pc.connection.setAutoCommit(true);
+            }
+            if (this.closed || System.currentTimeMillis() - pc.created > this.maxLifetimeMillis) {
+                this.discard(pc);
+            } else {
+                pc.lastUsed = System.currentTimeMillis();
+                this.idle.offerFirst(pc);
+            }
+        } catch (final SQLException e) {
+            this.logger.debug("Discarding database connection that could not be reset.", e);
+            this.discard(pc);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        this.total.decrementAndGet();
+        try {
+            pc.connection.close();
+        } catch (final SQLException e) {
+            this.logger.debug("Could not close database connection.", e);
+        }
+    }
+
+    /**
+     * Eine Aufgabe, die auf einer Verbindung ausgeführt wird
+     */
+    @FunctionalInterface
+    public interface ConnectionTask {
+        void run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Eine physische Verbindung des Pools
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private final long created = System.currentTimeMillis();
+        private long lastUsed = this.created;
+
+        /**
+         * Die vorbereiteten Statements dieser Verbindung, das zuletzt verwendete
+         * zuletzt
+         */
+        private final LinkedHashMap<String, CachedStatement> statements =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (this.size() <= ConnectionPool.this.statementCacheSize) {
+                            return false;
+                        }
+                        ConnectionPool.this.statementEvictions.increment();
+                        eldest.getValue().evict();
+                        return true;
+                    }
+                };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Erstellt eine Hülle um die Verbindung, deren close() die Verbindung
+         * an den Pool zurückgibt.
+         */
+        Connection lease() {
+            final boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    ConnectionPool.this.release(this);
+                                }
+                                return null;
+                            case "isClosed":
+                                return closed[0] || this.connection.isClosed();
+                            case "prepareStatement":
+                                if (!closed[0] && args.length == 1 && ConnectionPool.this.statementCacheSize > 0) {
+                                    return this.prepareCached((String) args[0]);
+                                }
+                                // Varianten mit weiteren Parametern werden nicht zwischengespeichert
+                                return this.invoke(method, args);
+                            default:
+                                if (closed[0]) {
+                                    throw new SQLException("Connection has already been returned to the pool.");
+                                }
+                                return this.invoke(method, args);
+                        }
+                    });
+        }
+
+        /**
+         * Gibt ein vorbereitetes Statement aus dem Zwischenspeicher aus. Wird
+         * dasselbe Statement gerade noch verwendet, wird ein neues vorbereitet,
+         * das nicht zwischengespeichert wird.
+         */
+        private PreparedStatement prepareCached(String sql) throws SQLException {
+            CachedStatement cached = this.statements.get(sql);
+            if (cached != null && cached.inUse) {
+                ConnectionPool.this.statementMisses.increment();
+                return this.connection.prepareStatement(sql);
+            }
+            if (cached == null) {
+                ConnectionPool.this.statementMisses.increment();
+                cached = new CachedStatement(this.connection.prepareStatement(sql));
+                this.statements.put(sql, cached);
+            } else {
+                ConnectionPool.this.statementHits.increment();
+            }
+            return cached.lease();
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            return ConnectionPool.invoke(this.connection, method, args);
+        }
+    }
+
+    /**
+     * Ein zwischengespeichertes PreparedStatement. Das Schließen der
+     * ausgegebenen Hülle setzt nur die Parameter zurück.
+     */
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement lease() {
+            this.inUse = true;
+            final boolean[] closed = {false};
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    this.release();
+                                }
+                                return null;
+                            case "isClosed":
+                                return closed[0] || this.statement.isClosed();
+                            default:
+                                if (closed[0]) {
+                                    throw new SQLException("Statement has already been closed.");
+                                }
+                                return ConnectionPool.invoke(this.statement, method, args);
+                        }
+                    });
+        }
+
+        void release() throws SQLException {
+            this.inUse = false;
+            if (this.evicted) {
+                this.statement.close();
+            } else {
+                this.statement.clearParameters();
+            }
+        }
+
+        void evict() {
+            this.evicted = true;
+            if (!this.inUse) {
+                try {
+                    this.statement.close();
+                } catch (final SQLException e) {
+                    // Die Verbindung ist vermutlich bereits unbrauchbar
+                }
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
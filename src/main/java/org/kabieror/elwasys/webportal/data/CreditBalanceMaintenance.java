@@ -0,0 +1,93 @@
+package org.kabieror.elwasys.webportal.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pflegt die Guthabenabschlüsse der Benutzer. In regelmäßigen Abständen
+ * werden die Abschlüsse fortgeschrieben, sodass für das Guthaben nur noch die
+ * seit dem letzten Abschluss angefallenen Buchungen summiert werden müssen.
+ * Seltener werden alle Abschlüsse gegen die vollständigen Buchungen geprüft.
+ *
+ * @author Oliver Kabierschke
+ */
+public class CreditBalanceMaintenance {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PortalDataManager dataManager;
+
+    private final int minEntries;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Konstruktor
+     *
+     * @param dataManager
+     *            Der Manager, über den die Abschlüsse geschrieben werden
+     * @param minEntries
+     *            Die Mindestanzahl neuer Buchungen eines Benutzers für einen neuen Abschluss
+     * @param checkpointMinutes
+     *            Das Intervall zwischen zwei Abschlüssen in Minuten
+     * @param verifyHours
+     *            Das Intervall zwischen zwei Prüfungen in Stunden
+     */
+    public CreditBalanceMaintenance(PortalDataManager dataManager, int minEntries, int checkpointMinutes,
+                                    int verifyHours) {
+        this.dataManager = dataManager;
+        this.minEntries = minEntries;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "credit-balance-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::checkpoint, 1, checkpointMinutes, TimeUnit.MINUTES);
+        this.executor.scheduleWithFixedDelay(this::verify, verifyHours, verifyHours, TimeUnit.HOURS);
+    }
+
+    /**
+     * Schreibt die Guthabenabschlüsse fort.
+     */
+    public void checkpoint() {
+        try {
+            final long start = System.currentTimeMillis();
+            final int count = this.dataManager.checkpointCreditBalances(this.minEntries);
+            this.logger.debug("Updated " + count + " credit balances in " + (System.currentTimeMillis() - start)
+                    + " ms.");
+        } catch (final SQLException e) {
+            this.logger.error("Could not update the credit balances.", e);
+        }
+    }
+
+    /**
+     * Prüft alle Guthabenabschlüsse gegen die vollständigen Buchungen.
+     * Abweichende Abschlüsse werden verworfen.
+     */
+    public void verify() {
+        try {
+            final List<Integer> mismatches = this.dataManager.verifyCreditBalances();
+            if (mismatches.isEmpty()) {
+                this.logger.info("All credit balances match the accounting entries.");
+            } else {
+                this.logger.error("Discarded credit balances that did not match the accounting entries of the users "
+                        + mismatches + ".");
+            }
+        } catch (final SQLException e) {
+            this.logger.error("Could not verify the credit balances.", e);
+        }
+    }
+
+    /**
+     * Beendet die regelmäßige Pflege der Abschlüsse.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,326 @@
+package org.kabieror.elwasys.webportal.data;
+
+import org.kabieror.elwasys.common.*;
+import org.kabieror.elwasys.webportal.events.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dieser Zwischenspeicher liegt vor dem DataManager und beantwortet häufige
+ * Lesezugriffe (Listen und Abfragen nach ID) aus dem Speicher.
+ * <p>
+ * Die Einträge werden über die Update-Listener der Fenster und über den
+ * Änderungsstrom der Datenbank invalidiert, der auch die Änderungen der
+ * Clients an den Standorten meldet. Zur Sicherheit verfällt jeder Eintrag
+ * zusätzlich nach einer konfigurierbaren Zeit.
+ * <p>
+ * Die zurückgegebenen Objekte werden von allen Sitzungen geteilt und dürfen
+ * nur gelesen werden. Soll eine Entität bearbeitet werden, ist sie über den
+ * DataManager neu zu laden.
+ *
+ * @author Oliver Kabierschke
+ */
+public class EntityCache implements IUserUpdatedEventListener, IUserGroupUpdatedEventListener,
+        IDeviceUpdatedEventListener, IProgramUpdatedEventListener, ILocationUpdatedEventListener,
+        IDatabaseChangedEventListener {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataManager dataManager;
+
+    /**
+     * Die maximale Anzahl an Einträgen im Zwischenspeicher
+     */
+    private final int maxSize;
+
+    /**
+     * Die Zeit in Millisekunden, nach der ein Eintrag neu geladen wird
+     */
+    private final long maxAge;
+
+    /**
+     * Die Einträge in der Reihenfolge ihrer letzten Verwendung
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * Die Anzahl der Invalidierungen je Art. Ein Ergebnis wird nur gespeichert,
+     * wenn seit dem Beginn des Ladens keine Invalidierung seiner Art erfolgt ist.
+     */
+    private final long[] generations = new long[Kind.values().length];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Konstruktor
+     *
+     * @param dataManager Der DataManager, aus dem fehlende Einträge geladen werden.
+     * @param maxSize     Die maximale Anzahl an Einträgen.
+     * @param maxAge      Die Zeit in Sekunden, nach der ein Eintrag verfällt.
+     */
+    public EntityCache(DataManager dataManager, int maxSize, int maxAge) {
+        this.dataManager = dataManager;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge * 1000L;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (this.size() > EntityCache.this.maxSize) {
+                    EntityCache.this.evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public List<User> getUsers() throws SQLException {
+        return this.getList(Kind.USER, this.dataManager::getUsers);
+    }
+
+    public List<UserGroup> getUserGroups() throws SQLException {
+        return this.getList(Kind.USER_GROUP, this.dataManager::getUserGroups);
+    }
+
+    public List<Device> getDevices() throws SQLException {
+        return this.getList(Kind.DEVICE, this.dataManager::getDevices);
+    }
+
+    public List<Program> getPrograms() throws SQLException {
+        return this.getList(Kind.PROGRAM, this.dataManager::getPrograms);
+    }
+
+    public List<Location> getLocations() throws SQLException {
+        return this.getList(Kind.LOCATION, this.dataManager::getLocations);
+    }
+
+    public User getUserById(int id) throws SQLException {
+        return this.get(new Key(Kind.USER, id), () -> this.dataManager.getUserById(id));
+    }
+
+    public UserGroup getUserGroupById(int id) throws SQLException {
+        return this.get(new Key(Kind.USER_GROUP, id), () -> this.dataManager.getUserGroupById(id));
+    }
+
+    public Device getDevice(int id) throws SQLException {
+        return this.get(new Key(Kind.DEVICE, id), () -> this.dataManager.getDevice(id));
+    }
+
+    public Program getProgramById(int id) throws SQLException {
+        return this.get(new Key(Kind.PROGRAM, id), () -> this.dataManager.getProgramById(id));
+    }
+
+    /**
+     * Entfernt alle Einträge einer Art aus dem Zwischenspeicher.
+     *
+     * @param kinds Die Arten der zu entfernenden Einträge.
+     */
+    public void invalidate(Kind... kinds) {
+        final Set<Kind> set = EnumSet.noneOf(Kind.class);
+        set.addAll(Arrays.asList(kinds));
+        synchronized (this.entries) {
+            for (final Kind k : set) {
+                this.generations[k.ordinal()]++;
+            }
+            this.entries.keySet().removeIf(k -> set.contains(k.kind));
+        }
+    }
+
+    /**
+     * Leert den Zwischenspeicher vollständig.
+     */
+    public void invalidateAll() {
+        synchronized (this.entries) {
+            for (int i = 0; i < this.generations.length; i++) {
+                this.generations[i]++;
+            }
+            this.entries.clear();
+        }
+    }
+
+    @Override
+    public void onUserUpdated(User u) {
+        this.remove(Kind.USER, u.getId());
+    }
+
+    @Override
+    public void onUserGroupUpdated(UserGroup g) {
+        // Benutzer verweisen auf ihre Gruppe und werden beim Löschen einer
+        // Gruppe der Standardgruppe zugewiesen.
+        this.invalidate(Kind.USER_GROUP, Kind.USER);
+    }
+
+    @Override
+    public void onDeviceUpdated(Device d) {
+        // Beim Speichern eines Geräts können Standorte angelegt oder entfernt werden.
+        this.remove(Kind.DEVICE, d.getId());
+        this.invalidate(Kind.LOCATION);
+    }
+
+    @Override
+    public void onProgramUpdated(Program p) {
+        this.remove(Kind.PROGRAM, p.getId());
+        this.invalidate(Kind.DEVICE);
+    }
+
+    @Override
+    public void onLocationUpdated(Location l) {
+        this.invalidate(Kind.LOCATION, Kind.DEVICE);
+    }
+
+    @Override
+    public void onDatabaseChanged(ChangeEvent e) {
+        switch (e.getTable()) {
+            case USER:
+                this.remove(Kind.USER, e.getId());
+                break;
+            case DEVICE:
+                this.remove(Kind.DEVICE, e.getId());
+                this.invalidate(Kind.LOCATION);
+                break;
+            default:
+                // Ausführungen und Buchungen werden nicht zwischengespeichert
+                break;
+        }
+    }
+
+    @Override
+    public void onChangesMissed() {
+        this.invalidateAll();
+    }
+
+    /**
+     * @return Die Anzahl der aus dem Speicher beantworteten Abfragen.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return Die Anzahl der Abfragen, die an die Datenbank weitergereicht wurden.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return Die Anzahl der wegen Platzmangels verdrängten Einträge.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return Der Anteil der aus dem Speicher beantworteten Abfragen zwischen 0 und 1.
+     */
+    public double getHitRate() {
+        final long h = this.hits.get();
+        final long total = h + this.misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return Die aktuelle Anzahl an Einträgen.
+     */
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    private void remove(Kind kind, int id) {
+        synchronized (this.entries) {
+            this.generations[kind.ordinal()]++;
+            this.entries.remove(new Key(kind, id));
+            this.entries.remove(new Key(kind, null));
+        }
+    }
+
+    private <T> List<T> getList(Kind kind, Loader<List<T>> loader) throws SQLException {
+        return this.get(new Key(kind, null), () -> Collections.unmodifiableList(new ArrayList<>(loader.load())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, Loader<T> loader) throws SQLException {
+        final long generation;
+        synchronized (this.entries) {
+            final Entry e = this.entries.get(key);
+            if (e != null && System.currentTimeMillis() - e.loaded < this.maxAge) {
+                this.hits.incrementAndGet();
+                return (T) e.value;
+            }
+            generation = this.generations[key.kind.ordinal()];
+        }
+        this.misses.incrementAndGet();
+        // Außerhalb der Sperre laden, damit langsame Abfragen andere Sitzungen nicht blockieren.
+        final T value = loader.load();
+        if (value != null) {
+            synchronized (this.entries) {
+                // Wurde während des Ladens invalidiert, ist das Ergebnis möglicherweise veraltet.
+                if (this.generations[key.kind.ordinal()] == generation) {
+                    this.entries.put(key, new Entry(value));
+                }
+            }
+        } else {
+            this.logger.debug("Not caching empty result for " + key.kind + " " + key.id);
+        }
+        return value;
+    }
+
+    /**
+     * Die Arten der zwischengespeicherten Entitäten
+     */
+    public enum Kind {
+        USER, USER_GROUP, DEVICE, PROGRAM, LOCATION,
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    /**
+     * Schlüssel eines Eintrags. Eine ID von null steht für die Liste aller
+     * Entitäten dieser Art.
+     */
+    private static class Key {
+        private final Kind kind;
+        private final Integer id;
+
+        Key(Kind kind, Integer id) {
+            this.kind = kind;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return this.kind == other.kind && Objects.equals(this.id, other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.kind, this.id);
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long loaded = System.currentTimeMillis();
+
+        Entry(Object value) {
+            this.value = value;
+        }
+    }
+}
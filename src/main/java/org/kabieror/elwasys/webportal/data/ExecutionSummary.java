@@ -0,0 +1,106 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Die Daten einer Programmausführung, die auf dem Dashboard angezeigt werden.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ExecutionSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final int deviceId;
+    private final LocalDateTime startDate;
+    private final LocalDateTime stopDate;
+    private final String userName;
+    private final BigDecimal price;
+    private final boolean running;
+    private final boolean expired;
+
+    public ExecutionSummary(int id, int deviceId, LocalDateTime startDate, LocalDateTime stopDate, String userName,
+                            BigDecimal price, boolean running, boolean expired) {
+        this.id = id;
+        this.deviceId = deviceId;
+        this.startDate = startDate;
+        this.stopDate = stopDate;
+        this.userName = userName;
+        this.price = price != null ? price : BigDecimal.ZERO;
+        this.running = running;
+        this.expired = expired;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public int getDeviceId() {
+        return this.deviceId;
+    }
+
+    public LocalDateTime getStartDate() {
+        return this.startDate;
+    }
+
+    public LocalDateTime getStopDate() {
+        return this.stopDate;
+    }
+
+    /**
+     * @return Der Name des Benutzers oder null, falls die Ausführung keinem Benutzer zugeordnet ist.
+     */
+    public String getUserName() {
+        return this.userName;
+    }
+
+    public BigDecimal getPrice() {
+        return this.price;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    public boolean isExpired() {
+        return this.expired;
+    }
+
+    /**
+     * @return Die bisherige bzw. gesamte Laufzeit der Ausführung.
+     */
+    public Duration getElapsedTime() {
+        if (this.startDate == null) {
+            return Duration.ZERO;
+        }
+        final LocalDateTime now = LocalDateTime.now();
+        final LocalDateTime end = this.stopDate != null && this.stopDate.isBefore(now) ? this.stopDate : now;
+        return end.isAfter(this.startDate) ? Duration.between(this.startDate, end) : Duration.ZERO;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExecutionSummary)) {
+            return false;
+        }
+        final ExecutionSummary other = (ExecutionSummary) o;
+        return this.id == other.id && this.deviceId == other.deviceId && this.running == other.running
+                && this.expired == other.expired && Objects.equals(this.startDate, other.startDate)
+                && Objects.equals(this.stopDate, other.stopDate) && Objects.equals(this.userName, other.userName)
+                && this.price.compareTo(other.price) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.id, this.deviceId, this.startDate, this.stopDate, this.userName, this.running,
+                this.expired);
+    }
+}
@@ -0,0 +1,418 @@
+package org.kabieror.elwasys.webportal.data;
+
+import com.vaadin.data.Container;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+import com.vaadin.data.util.AbstractContainer;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.data.util.PropertysetItem;
+import org.kabieror.elwasys.webportal.WashportalManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Container für die Benutzertabelle, der die Benutzer seitenweise aus der
+ * Datenbank lädt, während die Tabelle gescrollt wird. Filterung, Sortierung
+ * und die Summenzeile werden in der Datenbank berechnet. Im Speicher werden
+ * nur die zuletzt verwendeten Seiten gehalten.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LazyUserSummaryContainer extends AbstractContainer
+        implements Container.Indexed, Container.Sortable, Container.ItemSetChangeNotifier {
+
+    public static final String INDEX_PROPERTY = "ID";
+    public static final String NAME_PROPERTY = "Name";
+    public static final String GROUP_PROPERTY = "Gruppe";
+    public static final String CARD_ID_PROPERTY = "Kartennummer";
+    public static final String CREDIT_PROPERTY = "Guthaben";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Die Anzahl an Benutzern, die mit einer Abfrage geladen werden.
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * Die Anzahl an Seiten, die im Speicher gehalten werden.
+     */
+    private static final int MAX_PAGES = 5;
+
+    /**
+     * Die maximale Anzahl an gemerkten Seitengrenzen für das Keyset-Paging.
+     */
+    private static final int MAX_PAGE_BOUNDARIES = 1000;
+
+    private static final Map<String, UserSummaryQuery.SortProperty> SORTABLE_PROPERTIES = new LinkedHashMap<>();
+    private static final Map<String, Class<?>> PROPERTY_TYPES = new LinkedHashMap<>();
+
+    static {
+        PROPERTY_TYPES.put(INDEX_PROPERTY, Integer.class);
+        PROPERTY_TYPES.put(NAME_PROPERTY, String.class);
+        PROPERTY_TYPES.put(GROUP_PROPERTY, String.class);
+        PROPERTY_TYPES.put(CARD_ID_PROPERTY, String.class);
+        PROPERTY_TYPES.put(CREDIT_PROPERTY, BigDecimal.class);
+
+        SORTABLE_PROPERTIES.put(INDEX_PROPERTY, UserSummaryQuery.SortProperty.ID);
+        SORTABLE_PROPERTIES.put(NAME_PROPERTY, UserSummaryQuery.SortProperty.NAME);
+        SORTABLE_PROPERTIES.put(GROUP_PROPERTY, UserSummaryQuery.SortProperty.GROUP);
+        SORTABLE_PROPERTIES.put(CARD_ID_PROPERTY, UserSummaryQuery.SortProperty.CARD_ID);
+        SORTABLE_PROPERTIES.put(CREDIT_PROPERTY, UserSummaryQuery.SortProperty.CREDIT);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final UserSummaryQuery query = new UserSummaryQuery();
+
+    /**
+     * Die geladenen Seiten, indiziert nach dem Index ihres ersten Eintrags
+     */
+    private final LinkedHashMap<Integer, List<UserSummary>> pages =
+            new LinkedHashMap<Integer, List<UserSummary>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<UserSummary>> eldest) {
+                    return this.size() > MAX_PAGES;
+                }
+            };
+
+    /**
+     * Der jeweils letzte Eintrag vor einer Seite, nach dem Index des ersten
+     * Eintrags der Seite
+     */
+    private final Map<Integer, UserSummary> pageBoundaries = new HashMap<>();
+
+    private UserSummaryTotals totals;
+
+    /**
+     * Setzt den Suchbegriff, nach dem Name, Gruppe und Kartennummern gefiltert werden.
+     *
+     * @param filter Der Suchbegriff oder null.
+     */
+    public void setFilter(String filter) {
+        this.query.setFilter(filter);
+        this.refresh();
+    }
+
+    /**
+     * Verwirft alle geladenen Seiten und benachrichtigt die Tabelle.
+     */
+    public void refresh() {
+        this.pages.clear();
+        this.pageBoundaries.clear();
+        this.totals = null;
+        this.fireItemSetChange();
+    }
+
+    /**
+     * @return Anzahl und Gesamtguthaben der aktuell angezeigten Benutzer.
+     */
+    public UserSummaryTotals getTotals() {
+        if (this.totals == null) {
+            try {
+                this.totals = WashportalManager.instance.getPortalDataManager().getUserSummaryTotals(this.query);
+            } catch (final SQLException e) {
+                this.logger.error("Could not count the users.", e);
+                WashportalManager.instance.showDatabaseError(e);
+                this.totals = new UserSummaryTotals(0, BigDecimal.ZERO);
+            }
+        }
+        return this.totals;
+    }
+
+    /**
+     * Gibt die Übersichtsdaten eines geladenen Benutzers zurück.
+     *
+     * @param itemId Die ID des Benutzers.
+     * @return Die Übersichtsdaten oder null, falls der Benutzer nicht auf einer geladenen Seite liegt.
+     */
+    public UserSummary getSummary(Object itemId) {
+        for (final List<UserSummary> page : this.pages.values()) {
+            for (final UserSummary u : page) {
+                if (itemId != null && itemId.equals(u.getId())) {
+                    return u;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.getTotals().getCount();
+    }
+
+    @Override
+    public Object getIdByIndex(int index) {
+        final List<UserSummary> page = this.getPage(index);
+        final int offset = index % PAGE_SIZE;
+        return offset < page.size() ? page.get(offset).getId() : null;
+    }
+
+    @Override
+    public List<?> getItemIds(int startIndex, int numberOfItems) {
+        final List<Integer> res = new Vector<>();
+        final int end = Math.min(startIndex + numberOfItems, this.size());
+        for (int i = startIndex; i < end; i++) {
+            final Object id = this.getIdByIndex(i);
+            if (id == null) {
+                break;
+            }
+            res.add((Integer) id);
+        }
+        return res;
+    }
+
+    @Override
+    public int indexOfId(Object itemId) {
+        if (!(itemId instanceof Integer)) {
+            return -1;
+        }
+        for (final Map.Entry<Integer, List<UserSummary>> e : this.pages.entrySet()) {
+            final List<UserSummary> page = e.getValue();
+            for (int i = 0; i < page.size(); i++) {
+                if (page.get(i).getId() == (Integer) itemId) {
+                    return e.getKey() + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Collection<?> getItemIds() {
+        // Wird von der Tabelle nicht verwendet, solange der Container indiziert ist.
+        try {
+            return WashportalManager.instance.getPortalDataManager().getUserIds(this.query);
+        } catch (final SQLException e) {
+            this.logger.error("Could not load the user ids.", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean containsId(Object itemId) {
+        if (!(itemId instanceof Integer)) {
+            return false;
+        }
+        if (this.getSummary(itemId) != null) {
+            return true;
+        }
+        try {
+            return WashportalManager.instance.getPortalDataManager().getUserSummary((Integer) itemId) != null;
+        } catch (final SQLException e) {
+            this.logger.error("Could not look up the user " + itemId + ".", e);
+            return false;
+        }
+    }
+
+    @Override
+    public Item getItem(Object itemId) {
+        final UserSummary u = this.getSummary(itemId);
+        if (u == null) {
+            return null;
+        }
+        final PropertysetItem item = new PropertysetItem();
+        for (final Object propertyId : PROPERTY_TYPES.keySet()) {
+            item.addItemProperty(propertyId, this.getProperty(u, propertyId));
+        }
+        return item;
+    }
+
+    @Override
+    public Property<?> getContainerProperty(Object itemId, Object propertyId) {
+        final UserSummary u = this.getSummary(itemId);
+        return u != null ? this.getProperty(u, propertyId) : null;
+    }
+
+    @Override
+    public Collection<?> getContainerPropertyIds() {
+        return Collections.unmodifiableSet(PROPERTY_TYPES.keySet());
+    }
+
+    @Override
+    public Class<?> getType(Object propertyId) {
+        return PROPERTY_TYPES.get(propertyId);
+    }
+
+    @Override
+    public void sort(Object[] propertyId, boolean[] ascending) {
+        final List<UserSummaryQuery.SortOrder> orders = new Vector<>();
+        for (int i = 0; i < propertyId.length; i++) {
+            final UserSummaryQuery.SortProperty p = SORTABLE_PROPERTIES.get(propertyId[i]);
+            if (p != null) {
+                orders.add(new UserSummaryQuery.SortOrder(p, i < ascending.length ? ascending[i] : true));
+            }
+        }
+        this.query.setSortOrders(orders);
+        this.refresh();
+    }
+
+    @Override
+    public Collection<?> getSortableContainerPropertyIds() {
+        return Collections.unmodifiableSet(SORTABLE_PROPERTIES.keySet());
+    }
+
+    @Override
+    public Object nextItemId(Object itemId) {
+        final int i = this.indexOfId(itemId);
+        return i < 0 || i + 1 >= this.size() ? null : this.getIdByIndex(i + 1);
+    }
+
+    @Override
+    public Object prevItemId(Object itemId) {
+        final int i = this.indexOfId(itemId);
+        return i <= 0 ? null : this.getIdByIndex(i - 1);
+    }
+
+    @Override
+    public Object firstItemId() {
+        return this.size() > 0 ? this.getIdByIndex(0) : null;
+    }
+
+    @Override
+    public Object lastItemId() {
+        return this.size() > 0 ? this.getIdByIndex(this.size() - 1) : null;
+    }
+
+    @Override
+    public boolean isFirstId(Object itemId) {
+        return itemId != null && itemId.equals(this.firstItemId());
+    }
+
+    @Override
+    public boolean isLastId(Object itemId) {
+        return itemId != null && itemId.equals(this.lastItemId());
+    }
+
+    @Override
+    public void addItemSetChangeListener(ItemSetChangeListener listener) {
+        super.addItemSetChangeListener(listener);
+    }
+
+    @Override
+    @Deprecated
+    public void addListener(ItemSetChangeListener listener) {
+        super.addItemSetChangeListener(listener);
+    }
+
+    @Override
+    public void removeItemSetChangeListener(ItemSetChangeListener listener) {
+        super.removeItemSetChangeListener(listener);
+    }
+
+    @Override
+    @Deprecated
+    public void removeListener(ItemSetChangeListener listener) {
+        super.removeItemSetChangeListener(listener);
+    }
+
+    /**
+     * Lädt die Seite, auf welcher der gegebene Index liegt. Ist das Ende der
+     * vorherigen Seite bekannt, wird die Seite direkt dahinter fortgesetzt,
+     * ansonsten über den Offset geladen.
+     */
+    private List<UserSummary> getPage(int index) {
+        final int pageStart = index - index % PAGE_SIZE;
+        List<UserSummary> page = this.pages.get(pageStart);
+        if (page != null) {
+            return page;
+        }
+        try {
+            page = WashportalManager.instance.getPortalDataManager()
+                    .getUserSummaries(this.query, this.pageBoundaries.get(pageStart), pageStart, PAGE_SIZE);
+        } catch (final SQLException e) {
+            this.logger.error("Could not load users " + pageStart + " to " + (pageStart + PAGE_SIZE) + ".", e);
+            WashportalManager.instance.showDatabaseError(e);
+            return Collections.emptyList();
+        }
+        this.pages.put(pageStart, page);
+        if (page.size() == PAGE_SIZE) {
+            if (this.pageBoundaries.size() >= MAX_PAGE_BOUNDARIES) {
+                this.pageBoundaries.clear();
+            }
+            this.pageBoundaries.put(pageStart + PAGE_SIZE, page.get(PAGE_SIZE - 1));
+        }
+        return page;
+    }
+
+    private Property<?> getProperty(UserSummary u, Object propertyId) {
+        final Object value;
+        if (INDEX_PROPERTY.equals(propertyId)) {
+            value = u.getId();
+        } else if (NAME_PROPERTY.equals(propertyId)) {
+            value = u.getName();
+        } else if (GROUP_PROPERTY.equals(propertyId)) {
+            value = u.getGroupName();
+        } else if (CARD_ID_PROPERTY.equals(propertyId)) {
+            final String[] cardIds = u.getCardIds();
+            value = cardIds.length > 0 ? cardIds.length == 1 ? cardIds[0] : cardIds.length + " Karten" : "";
+        } else if (CREDIT_PROPERTY.equals(propertyId)) {
+            value = u.getCredit();
+        } else {
+            return null;
+        }
+        return this.createProperty(value, PROPERTY_TYPES.get(propertyId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Property<T> createProperty(Object value, Class<T> type) {
+        return new ObjectProperty<>((T) value, type, true);
+    }
+
+    @Override
+    public Item addItem(Object itemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItem() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeItem(Object itemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addContainerProperty(Object propertyId, Class<?> type, Object defaultValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeContainerProperty(Object propertyId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAllItems() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAfter(Object previousItemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAfter(Object previousItemId, Object newItemId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAt(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAt(int index, Object newItemId) {
+        throw new UnsupportedOperationException();
+    }
+}
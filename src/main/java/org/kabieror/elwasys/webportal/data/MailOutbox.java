@@ -0,0 +1,202 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Die Tabelle der ausgehenden Emails. Emails werden hier abgelegt, bevor sie
+ * versandt werden, sodass sie einen Ausfall des Mailservers oder einen
+ * Neustart des Portals überstehen. Die Tabelle legt die Migration
+ * sql/003_mail_outbox.sql an.
+ *
+ * @author Oliver Kabierschke
+ */
+public class MailOutbox {
+
+    private static final String OUTBOX_EXISTS = "SELECT to_regclass('mail_outbox') IS NOT NULL";
+
+    private static final String OUTBOX_INSERT =
+            "INSERT INTO mail_outbox (recipient, subject, body, user_id) VALUES (?, ?, ?, ?) RETURNING id";
+
+    private static final String OUTBOX_DUE_SELECT =
+            "SELECT id, recipient, subject, body, user_id, created, attempts FROM mail_outbox "
+                    + "WHERE sent IS NULL AND attempts < ? AND next_attempt <= now() ORDER BY id LIMIT ?";
+
+    private static final String OUTBOX_SENT_UPDATE = "UPDATE mail_outbox SET sent = now(), body = '' WHERE id = ?";
+
+    private static final String OUTBOX_FAILED_UPDATE = "UPDATE mail_outbox SET attempts = attempts + 1, "
+            + "last_error = ?, next_attempt = now() + ? * interval '1 second' WHERE id = ?";
+
+    private static final String OUTBOX_GIVEN_UP_UPDATE = "UPDATE mail_outbox SET attempts = attempts + 1, "
+            + "last_error = ?, next_attempt = now(), body = '' WHERE id = ?";
+
+    private static final String OUTBOX_COUNT_SELECT = "SELECT COUNT(*) FILTER (WHERE attempts < ?) AS pending, "
+            + "COUNT(*) FILTER (WHERE attempts >= ?) AS failed FROM mail_outbox WHERE sent IS NULL";
+
+    private static final String OUTBOX_CLEANUP = "DELETE FROM mail_outbox WHERE (sent IS NOT NULL OR attempts >= ?) "
+            + "AND COALESCE(sent, next_attempt) < now() - ? * interval '1 day'";
+
+    private final PortalDatabase database;
+
+    public MailOutbox(PortalDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Prüft, ob die Tabelle der ausgehenden Emails angelegt ist.
+     *
+     * @return True, falls die Tabelle existiert.
+     * @throws SQLException
+     */
+    public boolean exists() throws SQLException {
+        try (Connection c = this.database.getConnection();
+             Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(OUTBOX_EXISTS)) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * Legt eine Email zum Versand ab.
+     *
+     * @param recipient Die Adresse des Empfängers.
+     * @param subject   Der Betreff.
+     * @param body      Der Text.
+     * @param userId    Der Benutzer, für den beim Versand ein Schlüssel zum
+     *                  Zurücksetzen des Passworts erzeugt wird, oder null.
+     * @return Die ID der Email.
+     * @throws SQLException
+     */
+    public int add(String recipient, String subject, String body, Integer userId) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_INSERT)) {
+            s.setString(1, recipient);
+            s.setString(2, subject);
+            s.setString(3, body);
+            if (userId != null) {
+                s.setInt(4, userId);
+            } else {
+                s.setNull(4, Types.INTEGER);
+            }
+            try (ResultSet rs = s.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Lädt die Emails, deren Versand fällig ist, in der Reihenfolge ihrer
+     * Ablage.
+     *
+     * @param maxAttempts Die Anzahl an Versuchen, nach der eine Email aufgegeben wird.
+     * @param limit       Die maximale Anzahl an Emails.
+     * @return Die fälligen Emails.
+     * @throws SQLException
+     */
+    public List<OutboxMail> getDue(int maxAttempts, int limit) throws SQLException {
+        final List<OutboxMail> res = new ArrayList<>();
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_DUE_SELECT)) {
+            s.setInt(1, maxAttempts);
+            s.setInt(2, limit);
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    final int userId = rs.getInt("user_id");
+                    res.add(new OutboxMail(rs.getInt("id"), rs.getString("recipient"), rs.getString("subject"),
+                            rs.getString("body"), rs.wasNull() ? null : userId,
+                            rs.getTimestamp("created").toLocalDateTime(), rs.getInt("attempts")));
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Vermerkt den erfolgreichen Versand einer Email und verwirft ihren Text.
+     *
+     * @param id Die ID der Email.
+     * @throws SQLException
+     */
+    public void markSent(int id) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_SENT_UPDATE)) {
+            s.setInt(1, id);
+            s.executeUpdate();
+        }
+    }
+
+    /**
+     * Vermerkt einen fehlgeschlagenen Versuch und verschiebt den nächsten
+     * Versuch.
+     *
+     * @param id           Die ID der Email.
+     * @param error        Die Fehlermeldung.
+     * @param delaySeconds Die Wartezeit bis zum nächsten Versuch in Sekunden.
+     * @throws SQLException
+     */
+    public void markFailed(int id, String error, long delaySeconds) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_FAILED_UPDATE)) {
+            s.setString(1, error);
+            s.setLong(2, delaySeconds);
+            s.setInt(3, id);
+            s.executeUpdate();
+        }
+    }
+
+    /**
+     * Vermerkt den letzten erlaubten Versuch als fehlgeschlagen und verwirft
+     * den Text der Email.
+     *
+     * @param id    Die ID der Email.
+     * @param error Die Fehlermeldung.
+     * @throws SQLException
+     */
+    public void markGivenUp(int id, String error) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_GIVEN_UP_UPDATE)) {
+            s.setString(1, error);
+            s.setInt(2, id);
+            s.executeUpdate();
+        }
+    }
+
+    /**
+     * Zählt die noch nicht versandten Emails.
+     *
+     * @param maxAttempts Die Anzahl an Versuchen, nach der eine Email aufgegeben wird.
+     * @return Die Anzahl der wartenden und die Anzahl der aufgegebenen Emails.
+     * @throws SQLException
+     */
+    public int[] count(int maxAttempts) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_COUNT_SELECT)) {
+            s.setInt(1, maxAttempts);
+            s.setInt(2, maxAttempts);
+            try (ResultSet rs = s.executeQuery()) {
+                rs.next();
+                return new int[]{rs.getInt("pending"), rs.getInt("failed")};
+            }
+        }
+    }
+
+    /**
+     * Löscht versandte und aufgegebene Emails.
+     *
+     * @param maxAttempts Die Anzahl an Versuchen, nach der eine Email aufgegeben wird.
+     * @param days        Die Anzahl an Tagen, die versandte und aufgegebene Emails aufbewahrt werden.
+     * @return Die Anzahl der gelöschten Emails.
+     * @throws SQLException
+     */
+    public int deleteFinished(int maxAttempts, int days) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(OUTBOX_CLEANUP)) {
+            s.setInt(1, maxAttempts);
+            s.setInt(2, days);
+            return s.executeUpdate();
+        }
+    }
+}
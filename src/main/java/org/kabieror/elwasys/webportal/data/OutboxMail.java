@@ -0,0 +1,65 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Eine Email in der Warteschlange für ausgehende Emails.
+ *
+ * @author Oliver Kabierschke
+ */
+public class OutboxMail {
+
+    private final int id;
+    private final String recipient;
+    private final String subject;
+    private final String body;
+    private final Integer userId;
+    private final LocalDateTime created;
+    private final int attempts;
+
+    public OutboxMail(int id, String recipient, String subject, String body, Integer userId, LocalDateTime created,
+                      int attempts) {
+        this.id = id;
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.userId = userId;
+        this.created = created;
+        this.attempts = attempts;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public String getRecipient() {
+        return this.recipient;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public String getBody() {
+        return this.body;
+    }
+
+    /**
+     * @return Der Benutzer, für den beim Versand ein Schlüssel zum Zurücksetzen
+     *         des Passworts erzeugt wird, oder null
+     */
+    public Integer getUserId() {
+        return this.userId;
+    }
+
+    public LocalDateTime getCreated() {
+        return this.created;
+    }
+
+    /**
+     * @return Die Anzahl der bisher fehlgeschlagenen Versuche
+     */
+    public int getAttempts() {
+        return this.attempts;
+    }
+}
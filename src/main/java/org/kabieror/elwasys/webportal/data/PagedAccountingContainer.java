@@ -0,0 +1,102 @@
+package org.kabieror.elwasys.webportal.data;
+
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import org.kabieror.elwasys.webportal.WashportalManager;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Container für die Buchungen eines Benutzers. Es wird zunächst nur die
+ * neueste Seite geladen, ältere Buchungen werden auf Anforderung angehängt.
+ *
+ * @author Oliver Kabierschke
+ */
+public class PagedAccountingContainer extends IndexedContainer {
+
+    public static final String DATE_PROPERTY = "date";
+    public static final String AMOUNT_PROPERTY = "amount";
+    public static final String TEXT_PROPERTY = "text";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Die Anzahl an Buchungen, die auf einmal geladen werden.
+     */
+    private static final int PAGE_SIZE = 50;
+
+    private final int userId;
+
+    /**
+     * Die älteste geladene Buchung
+     */
+    private AccountingEntry oldest;
+
+    private boolean hasOlder;
+
+    public PagedAccountingContainer(int userId) {
+        this.userId = userId;
+        this.addContainerProperty(DATE_PROPERTY, LocalDateTime.class, null);
+        this.addContainerProperty(AMOUNT_PROPERTY, BigDecimal.class, null);
+        this.addContainerProperty(TEXT_PROPERTY, String.class, null);
+    }
+
+    /**
+     * Verwirft die geladenen Buchungen und lädt die neueste Seite.
+     *
+     * @throws SQLException
+     */
+    public void loadFirstPage() throws SQLException {
+        this.loadFirstPage(false);
+    }
+
+    /**
+     * Verwirft die geladenen Buchungen und lädt die neueste Seite.
+     *
+     * @param primary
+     *            True, um die primäre Datenbank abzufragen, etwa nach einer
+     *            Änderungsmeldung
+     * @throws SQLException
+     */
+    public void loadFirstPage(boolean primary) throws SQLException {
+        this.removeAllItems();
+        this.oldest = null;
+        this.load(primary);
+    }
+
+    /**
+     * Hängt die nächste Seite älterer Buchungen an.
+     *
+     * @throws SQLException
+     */
+    public void loadOlder() throws SQLException {
+        this.load(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(boolean primary) throws SQLException {
+        final List<AccountingEntry> entries = WashportalManager.instance.getPortalDataManager()
+                .getAccountingEntries(this.userId, this.oldest, PAGE_SIZE + 1, primary);
+        this.hasOlder = entries.size() > PAGE_SIZE;
+        for (final AccountingEntry e : entries.subList(0, Math.min(entries.size(), PAGE_SIZE))) {
+            final Item i = this.addItem(e.getId());
+            if (i == null) {
+                continue;
+            }
+            i.getItemProperty(DATE_PROPERTY).setValue(e.getDate());
+            i.getItemProperty(AMOUNT_PROPERTY).setValue(e.getAmount());
+            i.getItemProperty(TEXT_PROPERTY).setValue(e.getDescription());
+            this.oldest = e;
+        }
+    }
+
+    /**
+     * @return True, falls es ältere Buchungen gibt, die noch nicht geladen wurden.
+     */
+    public boolean hasOlder() {
+        return this.hasOlder;
+    }
+}
@@ -0,0 +1,593 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Mengenbasierte Abfragen für die Ansichten des Waschportals. Im Gegensatz zum
+ * DataManager werden hier keine vollständigen Entitäten geladen, sondern nur
+ * die für die Anzeige benötigten Daten in möglichst wenigen Abfragen.
+ * <p>
+ * Listen und Verläufe werden über {@link PortalDatabase#getReadConnection()}
+ * gelesen und können daher von einem Replikat stammen. Abfragen, die einer
+ * Änderung vorausgehen (Anmeldung, Prüfung von Kartennummern, Nachladen eines
+ * einzelnen Benutzers), lesen stets von der Hauptdatenbank.
+ *
+ * @author Oliver Kabierschke
+ */
+public class PortalDataManager {
+
+    /**
+     * Bedingung für eine abgelaufene, nicht abgerechnete Programmausführung
+     * mit dem Alias e.
+     */
+    static final String EXPIRED_EXECUTION_CONDITION =
+            "e.finished = FALSE AND e.stop IS NOT NULL AND e.stop < now()";
+
+    /**
+     * Summe der Preise der noch nicht abgerechneten Programmausführungen eines
+     * Benutzers mit dem Alias u. User.getCredit() zieht diese vom Guthaben ab.
+     */
+    private static final String OPEN_EXECUTIONS_PRICE = "COALESCE((SELECT SUM(e.price) FROM executions e "
+            + "WHERE e.user_id = u.id AND e.finished = FALSE), 0)";
+
+    /**
+     * Guthaben der Benutzer mit dem Alias c: Stand des letzten Abschlusses
+     * zuzüglich der seither angefallenen Buchungen, abzüglich der noch nicht
+     * abgerechneten Programmausführungen.
+     */
+    private static final String CREDIT_BALANCE_JOIN =
+            "LEFT JOIN credit_balances cb ON cb.user_id = u.id "
+                    + "LEFT JOIN LATERAL (SELECT COALESCE(cb.balance, 0) + COALESCE(SUM(a.amount), 0) - "
+                    + OPEN_EXECUTIONS_PRICE + " AS credit "
+                    + "FROM credit_accounting a WHERE a.user_id = u.id AND a.id > COALESCE(cb.accounting_id, 0)) c "
+                    + "ON TRUE ";
+
+    /**
+     * Guthaben der Benutzer mit dem Alias c aus allen Buchungen, falls die
+     * Tabelle der Abschlüsse nicht angelegt ist.
+     */
+    private static final String CREDIT_LEDGER_JOIN =
+            "LEFT JOIN LATERAL (SELECT COALESCE(SUM(a.amount), 0) - " + OPEN_EXECUTIONS_PRICE + " AS credit "
+                    + "FROM credit_accounting a WHERE a.user_id = u.id) c ON TRUE ";
+
+    private static final String CREDIT_BALANCES_EXISTS = "SELECT to_regclass('credit_balances') IS NOT NULL";
+
+    /**
+     * Schreibt die Abschlüsse aller Benutzer fort, bei denen seit dem letzten
+     * Abschluss genügend Buchungen angefallen sind. Der neue Abschluss endet
+     * bei der höchsten ID unter den Buchungen, die älter als einige Minuten
+     * sind, damit noch nicht abgeschlossene Transaktionen mit kleinerer ID
+     * nicht übersprungen werden. Bis zu dieser ID wird jede Buchung summiert,
+     * unabhängig von ihrem Datum, da dieses von der Uhr des Clients stammt.
+     */
+    private static final String CREDIT_BALANCES_CHECKPOINT =
+            "INSERT INTO credit_balances (user_id, accounting_id, balance, updated) "
+                    + "SELECT b.user_id, b.boundary, COALESCE(cb.balance, 0) + SUM(a.amount), now() "
+                    + "FROM (SELECT a.user_id, MAX(a.id) AS boundary "
+                    + "FROM credit_accounting a LEFT JOIN credit_balances cb ON cb.user_id = a.user_id "
+                    + "WHERE a.id > COALESCE(cb.accounting_id, 0) AND a.date < now() - interval '10 minutes' "
+                    + "GROUP BY a.user_id) b "
+                    + "LEFT JOIN credit_balances cb ON cb.user_id = b.user_id "
+                    + "JOIN credit_accounting a ON a.user_id = b.user_id "
+                    + "AND a.id > COALESCE(cb.accounting_id, 0) AND a.id <= b.boundary "
+                    + "GROUP BY b.user_id, b.boundary, cb.balance HAVING COUNT(*) >= ? "
+                    + "ON CONFLICT (user_id) DO UPDATE SET accounting_id = EXCLUDED.accounting_id, "
+                    + "balance = EXCLUDED.balance, updated = EXCLUDED.updated";
+
+    private static final String CREDIT_BALANCES_VERIFY =
+            "SELECT cb.user_id, cb.balance, COALESCE(SUM(a.amount), 0) AS ledger FROM credit_balances cb "
+                    + "LEFT JOIN credit_accounting a ON a.user_id = cb.user_id AND a.id <= cb.accounting_id "
+                    + "GROUP BY cb.user_id, cb.balance HAVING cb.balance <> COALESCE(SUM(a.amount), 0)";
+
+    private static final String USER_SUMMARY_COLUMNS =
+            "SELECT u.id, u.name, u.username, u.card_ids, u.blocked, g.name AS group_name, "
+                    + "COALESCE(c.credit, 0) AS credit, "
+                    + "EXISTS (SELECT 1 FROM executions e WHERE e.user_id = u.id AND "
+                    + EXPIRED_EXECUTION_CONDITION + ") AS expired_executions "
+                    + "FROM users u "
+                    + "LEFT JOIN user_groups g ON g.id = u.group_id ";
+
+    private static final String USER_ID_BY_USERNAME_SELECT =
+            "SELECT id FROM users WHERE lower(username) = lower(?) AND deleted = FALSE";
+
+    private static final String CARD_ASSIGNMENTS_SELECT =
+            "SELECT card.id AS card_id, u.id, u.name, u.username FROM users u, unnest(u.card_ids) AS card(id) "
+                    + "WHERE u.deleted = FALSE AND u.card_ids && ? AND card.id = ANY (?)";
+
+    private static final String ACCOUNTING_ENTRIES_SELECT =
+            "SELECT id, date, amount, description FROM credit_accounting WHERE user_id = ? ";
+
+    private static final String ACCOUNTING_ENTRIES_ORDER = "ORDER BY date DESC, id DESC LIMIT ?";
+
+    private static final String LAST_EXECUTIONS_SELECT = "SELECT * FROM ("
+            + "SELECT e.id, e.device_id, e.start, e.stop, e.price, u.name AS user_name, "
+            + "(" + EXPIRED_EXECUTION_CONDITION + ") AS expired, "
+            + "(e.finished = FALSE AND NOT (" + EXPIRED_EXECUTION_CONDITION + ")) AS running, "
+            + "ROW_NUMBER() OVER (PARTITION BY e.device_id ORDER BY e.start DESC NULLS LAST, e.id DESC) AS rn "
+            + "FROM executions e LEFT JOIN users u ON u.id = e.user_id "
+            + "WHERE e.device_id = ANY (?)) x "
+            + "WHERE rn <= ? ORDER BY device_id, rn";
+
+    private final PortalDatabase database;
+
+    /**
+     * Die Berechnung des Guthabens, abhängig davon, ob die Tabelle der
+     * Abschlüsse angelegt ist
+     */
+    private volatile String creditJoin = CREDIT_LEDGER_JOIN;
+
+    public PortalDataManager(PortalDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Prüft, ob die Tabelle der Guthabenabschlüsse angelegt ist. Nur dann wird
+     * das Guthaben aus den Abschlüssen berechnet, andernfalls aus allen
+     * Buchungen.
+     *
+     * @return True, falls die Abschlüsse verwendet werden.
+     * @throws SQLException
+     */
+    public boolean detectCreditBalances() throws SQLException {
+        try (Connection c = this.database.getConnection();
+             Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(CREDIT_BALANCES_EXISTS)) {
+            rs.next();
+            final boolean exists = rs.getBoolean(1);
+            this.creditJoin = exists ? CREDIT_BALANCE_JOIN : CREDIT_LEDGER_JOIN;
+            return exists;
+        }
+    }
+
+    /**
+     * Vermerkt, dass die aktuelle Sitzung Daten geändert hat, damit sie ihre
+     * Änderungen bei den folgenden Abfragen sieht.
+     */
+    public void markWritten() {
+        this.database.markWritten();
+    }
+
+    private Connection connect(boolean primary) throws SQLException {
+        return primary ? this.database.getConnection() : this.database.getReadConnection();
+    }
+
+    /**
+     * @return Die Datenbank, auf der die Abfragen ausgeführt werden.
+     */
+    public PortalDatabase getDatabase() {
+        return this.database;
+    }
+
+    /**
+     * Lädt eine Seite der Benutzerübersicht. Ist ein Vorgänger angegeben, wird
+     * die Seite direkt hinter diesem fortgesetzt (Keyset-Paging), andernfalls
+     * wird der Offset verwendet.
+     *
+     * @param query  Filter und Sortierung.
+     * @param after  Der letzte Eintrag der vorherigen Seite oder null.
+     * @param offset Die Anzahl zu überspringender Einträge, falls kein Vorgänger bekannt ist.
+     * @param limit  Die maximale Anzahl an Einträgen der Seite.
+     * @return Die Einträge der Seite.
+     * @throws SQLException
+     */
+    public List<UserSummary> getUserSummaries(UserSummaryQuery query, UserSummary after, int offset, int limit)
+            throws SQLException {
+        final List<Object> params = new Vector<>();
+        final String sql = this.buildUserSummariesSql(query, after, offset, limit, params);
+        try (Connection c = this.database.getReadConnection();
+             PreparedStatement s = c.prepareStatement(sql)) {
+            this.setParameters(s, params);
+            final List<UserSummary> res = new Vector<>();
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    res.add(this.readUserSummary(rs));
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Lädt die IDs aller Benutzer, die einer Abfrage entsprechen, in der
+     * Reihenfolge der Abfrage.
+     *
+     * @param query Filter und Sortierung.
+     * @return Die IDs der Benutzer.
+     * @throws SQLException
+     */
+    public List<Integer> getUserIds(UserSummaryQuery query) throws SQLException {
+        final List<Object> params = new Vector<>();
+        final StringBuilder sql = new StringBuilder(this.getUserSummarySelect());
+        this.appendFilter(sql, params, query);
+        this.appendOrderBy(sql, query.getEffectiveSortOrders());
+        try (Connection c = this.database.getReadConnection();
+             PreparedStatement s = c.prepareStatement(sql.toString())) {
+            this.setParameters(s, params);
+            final List<Integer> res = new Vector<>();
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    res.add(rs.getInt("id"));
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Ermittelt Anzahl und Gesamtguthaben der Benutzer einer Abfrage in einer
+     * einzigen Aggregat-Abfrage.
+     *
+     * @param query Der Filter der Abfrage. Die Sortierung wird ignoriert.
+     * @return Anzahl und Gesamtguthaben.
+     * @throws SQLException
+     */
+    public UserSummaryTotals getUserSummaryTotals(UserSummaryQuery query) throws SQLException {
+        final List<Object> params = new Vector<>();
+        final StringBuilder sql = new StringBuilder(
+                "SELECT COUNT(*) AS count, SUM(COALESCE(c.credit, 0)) AS credit FROM users u "
+                        + "LEFT JOIN user_groups g ON g.id = u.group_id " + this.creditJoin + "WHERE u.deleted = FALSE ");
+        this.appendFilter(sql, params, query);
+        try (Connection c = this.database.getReadConnection();
+             PreparedStatement s = c.prepareStatement(sql.toString())) {
+            this.setParameters(s, params);
+            try (ResultSet rs = s.executeQuery()) {
+                rs.next();
+                return new UserSummaryTotals(rs.getInt("count"), rs.getBigDecimal("credit"));
+            }
+        }
+    }
+
+    /**
+     * Lädt die Übersichtsdaten eines einzelnen Benutzers.
+     *
+     * @param userId Die ID des Benutzers.
+     * @return Die Übersichtsdaten oder null, falls der Benutzer nicht existiert oder gelöscht wurde.
+     * @throws SQLException
+     */
+    public UserSummary getUserSummary(int userId) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(this.getUserSummarySelect() + "AND u.id = ?")) {
+            s.setInt(1, userId);
+            try (ResultSet rs = s.executeQuery()) {
+                return rs.next() ? this.readUserSummary(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Ermittelt das Guthaben eines Benutzers aus dem letzten Abschluss, den
+     * seither angefallenen Buchungen und den noch nicht abgerechneten
+     * Programmausführungen.
+     *
+     * @param userId Die ID des Benutzers.
+     * @return Das Guthaben des Benutzers.
+     * @throws SQLException
+     */
+    public BigDecimal getCredit(int userId) throws SQLException {
+        return this.getCredit(userId, false);
+    }
+
+    /**
+     * Ermittelt das Guthaben eines Benutzers.
+     *
+     * @param userId  Die ID des Benutzers.
+     * @param primary True, um die primäre Datenbank abzufragen. Nötig, wenn
+     *                auf eine Änderungsmeldung der primären Datenbank hin
+     *                geladen wird, die das Replikat noch nicht kennt.
+     * @return Das Guthaben des Benutzers.
+     * @throws SQLException
+     */
+    public BigDecimal getCredit(int userId, boolean primary) throws SQLException {
+        try (Connection c = this.connect(primary);
+             PreparedStatement s = c.prepareStatement("SELECT c.credit FROM users u " + this.creditJoin
+                     + "WHERE u.id = ?")) {
+            s.setInt(1, userId);
+            try (ResultSet rs = s.executeQuery()) {
+                return rs.next() ? rs.getBigDecimal("credit") : BigDecimal.ZERO;
+            }
+        }
+    }
+
+    /**
+     * Schreibt die Guthabenabschlüsse der Benutzer fort, bei denen seit dem
+     * letzten Abschluss mindestens die gegebene Anzahl an Buchungen angefallen
+     * ist.
+     *
+     * @param minEntries Die Mindestanzahl neuer Buchungen für einen neuen Abschluss.
+     * @return Die Anzahl der fortgeschriebenen Abschlüsse.
+     * @throws SQLException
+     */
+    public int checkpointCreditBalances(int minEntries) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(CREDIT_BALANCES_CHECKPOINT)) {
+            s.setInt(1, minEntries);
+            return s.executeUpdate();
+        }
+    }
+
+    /**
+     * Vergleicht alle Guthabenabschlüsse mit der Summe der zugrunde liegenden
+     * Buchungen. Abweichende Abschlüsse werden gelöscht, sodass das Guthaben
+     * dieser Benutzer wieder aus allen Buchungen berechnet wird.
+     *
+     * @return Die IDs der Benutzer mit abweichendem Abschluss.
+     * @throws SQLException
+     */
+    public List<Integer> verifyCreditBalances() throws SQLException {
+        final List<Integer> res = new Vector<>();
+        try (Connection c = this.database.getConnection()) {
+            try (Statement s = c.createStatement();
+                 ResultSet rs = s.executeQuery(CREDIT_BALANCES_VERIFY)) {
+                while (rs.next()) {
+                    res.add(rs.getInt("user_id"));
+                }
+            }
+            if (!res.isEmpty()) {
+                try (PreparedStatement s = c.prepareStatement("DELETE FROM credit_balances WHERE user_id = ANY (?)")) {
+                    s.setArray(1, c.createArrayOf("integer", res.toArray()));
+                    s.executeUpdate();
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Ermittelt die ID eines Benutzers anhand seines Benutzernamens, ohne
+     * Beachtung der Groß- und Kleinschreibung. Die Abfrage kann den Index auf
+     * lower(username) verwenden.
+     *
+     * @param username Der Benutzername.
+     * @return Die ID des Benutzers oder null, falls kein Benutzer mit diesem Namen existiert.
+     * @throws SQLException
+     */
+    public Integer getUserIdByUsername(String username) throws SQLException {
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(USER_ID_BY_USERNAME_SELECT)) {
+            s.setString(1, username);
+            try (ResultSet rs = s.executeQuery()) {
+                return rs.next() ? rs.getInt("id") : null;
+            }
+        }
+    }
+
+    /**
+     * Ermittelt in einer einzigen Abfrage, welchen Benutzern die gegebenen
+     * Kartennummern zugeordnet sind.
+     *
+     * @param cardIds Die Kartennummern.
+     * @return Die Zuordnungen der Kartennummern, die bereits vergeben sind.
+     * @throws SQLException
+     */
+    public List<CardAssignment> getCardAssignments(Collection<String> cardIds) throws SQLException {
+        final List<CardAssignment> res = new Vector<>();
+        if (cardIds.isEmpty()) {
+            return res;
+        }
+        try (Connection c = this.database.getConnection();
+             PreparedStatement s = c.prepareStatement(CARD_ASSIGNMENTS_SELECT)) {
+            final Array array = c.createArrayOf("text", cardIds.toArray());
+            s.setArray(1, array);
+            s.setArray(2, array);
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    res.add(new CardAssignment(rs.getString("card_id"), rs.getInt("id"), rs.getString("name"),
+                            rs.getString("username")));
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Lädt eine Seite von Buchungen eines Benutzers, die neueste zuerst. Die
+     * Seite wird direkt hinter der gegebenen Buchung fortgesetzt, sodass der
+     * Aufwand nicht von der Länge des Kontoverlaufs abhängt.
+     *
+     * @param userId Die ID des Benutzers.
+     * @param before Die älteste bereits geladene Buchung oder null für die erste Seite.
+     * @param limit  Die maximale Anzahl an Buchungen.
+     * @return Die Buchungen, absteigend nach Datum sortiert.
+     * @throws SQLException
+     */
+    public List<AccountingEntry> getAccountingEntries(int userId, AccountingEntry before, int limit)
+            throws SQLException {
+        return this.getAccountingEntries(userId, before, limit, false);
+    }
+
+    /**
+     * Lädt eine Seite von Buchungen eines Benutzers, die neueste zuerst.
+     *
+     * @param userId  Die ID des Benutzers.
+     * @param before  Die älteste bereits geladene Buchung oder null für die erste Seite.
+     * @param limit   Die maximale Anzahl an Buchungen.
+     * @param primary True, um die primäre Datenbank abzufragen.
+     * @return Die Buchungen, absteigend nach Datum sortiert.
+     * @throws SQLException
+     */
+    public List<AccountingEntry> getAccountingEntries(int userId, AccountingEntry before, int limit,
+                                                      boolean primary) throws SQLException {
+        final String sql = ACCOUNTING_ENTRIES_SELECT + (before != null ? "AND (date, id) < (?, ?) " : "")
+                + ACCOUNTING_ENTRIES_ORDER;
+        try (Connection c = this.connect(primary);
+             PreparedStatement s = c.prepareStatement(sql)) {
+            int i = 1;
+            s.setInt(i++, userId);
+            if (before != null) {
+                s.setTimestamp(i++, Timestamp.valueOf(before.getDate()));
+                s.setInt(i++, before.getId());
+            }
+            s.setInt(i, limit);
+            final List<AccountingEntry> res = new Vector<>();
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    res.add(new AccountingEntry(rs.getInt("id"), rs.getTimestamp("date").toLocalDateTime(),
+                            rs.getBigDecimal("amount"), rs.getString("description")));
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Lädt die letzten Programmausführungen mehrerer Geräte in einer einzigen
+     * Abfrage. Die laufende Ausführung eines Geräts ist stets die neueste und
+     * damit enthalten.
+     *
+     * @param deviceIds Die IDs der Geräte.
+     * @param depth     Die maximale Anzahl an Ausführungen pro Gerät.
+     * @return Die Ausführungen je Geräte-ID, die neueste zuerst.
+     * @throws SQLException
+     */
+    public Map<Integer, List<ExecutionSummary>> getLastExecutions(Collection<Integer> deviceIds, int depth)
+            throws SQLException {
+        return this.getLastExecutions(deviceIds, depth, false);
+    }
+
+    /**
+     * Lädt die letzten Programmausführungen mehrerer Geräte in einer einzigen
+     * Abfrage.
+     *
+     * @param deviceIds Die IDs der Geräte.
+     * @param depth     Die maximale Anzahl an Ausführungen pro Gerät.
+     * @param primary   True, um die primäre Datenbank abzufragen.
+     * @return Die Ausführungen je Geräte-ID, die neueste zuerst.
+     * @throws SQLException
+     */
+    public Map<Integer, List<ExecutionSummary>> getLastExecutions(Collection<Integer> deviceIds, int depth,
+                                                                  boolean primary) throws SQLException {
+        final Map<Integer, List<ExecutionSummary>> res = new HashMap<>();
+        if (deviceIds.isEmpty()) {
+            return res;
+        }
+        try (Connection c = this.connect(primary);
+             PreparedStatement s = c.prepareStatement(LAST_EXECUTIONS_SELECT)) {
+            s.setArray(1, c.createArrayOf("integer", deviceIds.toArray()));
+            s.setInt(2, depth);
+            try (ResultSet rs = s.executeQuery()) {
+                while (rs.next()) {
+                    final Timestamp start = rs.getTimestamp("start");
+                    final Timestamp stop = rs.getTimestamp("stop");
+                    final ExecutionSummary e = new ExecutionSummary(rs.getInt("id"), rs.getInt("device_id"),
+                            start != null ? start.toLocalDateTime() : null,
+                            stop != null ? stop.toLocalDateTime() : null, rs.getString("user_name"),
+                            rs.getBigDecimal("price"), rs.getBoolean("running"), rs.getBoolean("expired"));
+                    res.computeIfAbsent(e.getDeviceId(), k -> new Vector<>()).add(e);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Bereitet die häufigsten Abfragen auf allen ungenutzten Verbindungen vor,
+     * indem sie einmal ohne Ergebnis ausgeführt werden. So ist die erste
+     * Anzeige nach dem Start nicht die langsamste.
+     *
+     * @throws SQLException
+     */
+    public void warmUp() throws SQLException {
+        this.warmUp(this.database.getPool());
+        if (this.database.getReplicaPool() != null) {
+            this.warmUp(this.database.getReplicaPool());
+        }
+    }
+
+    private void warmUp(ConnectionPool pool) throws SQLException {
+        pool.forEachIdleConnection(c -> {
+            final List<Object> params = new Vector<>();
+            this.warmUp(c, this.buildUserSummariesSql(new UserSummaryQuery(), null, 0,
+                    LazyUserSummaryContainer.PAGE_SIZE, params),
+                    params.toArray());
+            this.warmUp(c, this.getUserSummarySelect() + "AND u.id = ?", -1);
+            this.warmUp(c, USER_ID_BY_USERNAME_SELECT, "");
+            this.warmUp(c, ACCOUNTING_ENTRIES_SELECT + ACCOUNTING_ENTRIES_ORDER, -1, 1);
+            this.warmUp(c, LAST_EXECUTIONS_SELECT, c.createArrayOf("integer", new Object[]{-1}), 1);
+            final Array cards = c.createArrayOf("text", new Object[]{""});
+            this.warmUp(c, CARD_ASSIGNMENTS_SELECT, cards, cards);
+        });
+    }
+
+    private void warmUp(Connection c, String sql, Object... params) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement(sql)) {
+            this.setParameters(s, Arrays.asList(params));
+            s.executeQuery().close();
+        }
+    }
+
+    private String getUserSummarySelect() {
+        return USER_SUMMARY_COLUMNS + this.creditJoin + "WHERE u.deleted = FALSE ";
+    }
+
+    private String buildUserSummariesSql(UserSummaryQuery query, UserSummary after, int offset, int limit,
+                                         List<Object> params) {
+        final StringBuilder sql = new StringBuilder(this.getUserSummarySelect());
+        this.appendFilter(sql, params, query);
+        final List<UserSummaryQuery.SortOrder> orders = query.getEffectiveSortOrders();
+        if (after != null) {
+            // (a > ?) OR (a = ? AND b > ?) OR ..., mit der jeweiligen Sortierrichtung
+            sql.append("AND (");
+            for (int i = 0; i < orders.size(); i++) {
+                if (i > 0) {
+                    sql.append(" OR ");
+                }
+                sql.append("(");
+                for (int j = 0; j < i; j++) {
+                    sql.append(orders.get(j).getProperty().getExpression()).append(" = ? AND ");
+                    params.add(orders.get(j).getProperty().getKey(after));
+                }
+                final UserSummaryQuery.SortOrder o = orders.get(i);
+                sql.append(o.getProperty().getExpression()).append(o.isAscending() ? " > ?" : " < ?");
+                params.add(o.getProperty().getKey(after));
+                sql.append(")");
+            }
+            sql.append(") ");
+        }
+        this.appendOrderBy(sql, orders);
+        sql.append(" LIMIT ?");
+        params.add(limit);
+        if (after == null && offset > 0) {
+            sql.append(" OFFSET ?");
+            params.add(offset);
+        }
+        return sql.toString();
+    }
+
+    private void appendFilter(StringBuilder sql, List<Object> params, UserSummaryQuery query) {
+        if (query.getFilter() == null) {
+            return;
+        }
+        final String pattern = "%" + query.getFilter().replace("\\", "\\\\").replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        sql.append("AND (u.name ILIKE ? OR g.name ILIKE ? OR array_to_string(u.card_ids, ' ') ILIKE ?) ");
+        params.add(pattern);
+        params.add(pattern);
+        params.add(pattern);
+    }
+
+    private void appendOrderBy(StringBuilder sql, List<UserSummaryQuery.SortOrder> orders) {
+        sql.append("ORDER BY ");
+        for (int i = 0; i < orders.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(orders.get(i).getProperty().getExpression())
+                    .append(orders.get(i).isAscending() ? " ASC" : " DESC");
+        }
+    }
+
+    private void setParameters(PreparedStatement s, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            s.setObject(i + 1, params.get(i));
+        }
+    }
+
+    private UserSummary readUserSummary(ResultSet rs) throws SQLException {
+        final Array cardIds = rs.getArray("card_ids");
+        return new UserSummary(rs.getInt("id"), rs.getString("name"), rs.getString("username"),
+                rs.getString("group_name"), cardIds != null ? (String[]) cardIds.getArray() : null,
+                rs.getBoolean("blocked"), rs.getBigDecimal("credit"), rs.getBoolean("expired_executions"));
+    }
+}
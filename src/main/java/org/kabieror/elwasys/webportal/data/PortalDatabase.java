@@ -0,0 +1,219 @@
+package org.kabieror.elwasys.webportal.data;
+
+import com.vaadin.server.VaadinSession;
+import org.kabieror.elwasys.webportal.WashportalConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stellt Datenbankverbindungen für die Abfragen des Waschportals bereit, die
+ * nicht über den DataManager laufen. Die Verbindungen stammen aus einem Pool,
+ * dessen Größe in der Konfiguration festgelegt wird.
+ * <p>
+ * Ist ein Replikat konfiguriert, werden lesende Abfragen, die einen leicht
+ * veralteten Stand vertragen, an dieses gerichtet. Der Rückstand des Replikats
+ * wird regelmäßig gemessen. Ist er zu groß oder das Replikat nicht erreichbar,
+ * wird auf die Hauptdatenbank ausgewichen. Nach einer Änderung liest die
+ * Sitzung für eine gewisse Zeit ebenfalls von der Hauptdatenbank, damit sie
+ * ihre eigenen Änderungen sieht.
+ *
+ * @author Oliver Kabierschke
+ */
+public class PortalDatabase {
+
+    /**
+     * Sitzungsattribut mit dem Zeitpunkt der letzten Änderung der Sitzung
+     */
+    private static final String LAST_WRITE_ATTRIBUTE = PortalDatabase.class.getName() + ".lastWrite";
+
+    /**
+     * Ermittelt den Rückstand des Replikats in Sekunden. Ist alles empfangene
+     * WAL eingespielt, gibt es keinen Rückstand, auch wenn die letzte
+     * eingespielte Transaktion bei einer ruhenden Hauptdatenbank lange
+     * zurückliegt.
+     */
+    private static final String LAG_QUERY = lagQuery("pg_last_wal_receive_lsn()", "pg_last_wal_replay_lsn()");
+
+    /**
+     * Wie {@link #LAG_QUERY} für PostgreSQL vor Version 10
+     */
+    private static final String LAG_QUERY_PRE_10 = lagQuery("pg_last_xlog_receive_location()",
+            "pg_last_xlog_replay_location()");
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ConnectionPool pool;
+
+    private final ConnectionPool replicaPool;
+
+    private final long maxReplicaLagMillis;
+
+    private final ScheduledExecutorService lagMonitor;
+
+    private volatile boolean replicaAvailable;
+
+    private volatile long replicaLagMillis = -1;
+
+    public PortalDatabase(WashportalConfiguration config) throws ClassNotFoundException {
+        Class.forName("org.postgresql.Driver");
+        this.pool = this.createPool(config, config.getJdbcUrl(), config.getJdbcProperties());
+        this.maxReplicaLagMillis = config.getReplicaMaxLag() * 1000L;
+
+        if (config.getReplicaJdbcUrl() != null) {
+            this.replicaPool = this.createPool(config, config.getReplicaJdbcUrl(), config.getReplicaJdbcProperties());
+            this.checkReplicaLag();
+            this.lagMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "replica-lag-monitor");
+                t.setDaemon(true);
+                return t;
+            });
+            final int interval = config.getReplicaCheckInterval();
+            this.lagMonitor.scheduleWithFixedDelay(this::checkReplicaLag, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.replicaPool = null;
+            this.lagMonitor = null;
+        }
+    }
+
+    private ConnectionPool createPool(WashportalConfiguration config, String url, Properties properties) {
+        // Zwischengespeicherte Statements sofort serverseitig vorbereiten
+        properties.setProperty("prepareThreshold", Integer.toString(config.getPrepareThreshold()));
+        return new ConnectionPool(url, properties, config.getPoolMinSize(), config.getPoolMaxSize(),
+                config.getPoolAcquireTimeout() * 1000L, config.getPoolValidationInterval() * 1000L,
+                config.getPoolMaxLifetime() * 1000L, config.getStatementCacheSize());
+    }
+
+    /**
+     * Gibt eine Verbindung zur Hauptdatenbank aus dem Pool aus. Der Aufrufer
+     * muss die Verbindung nach Gebrauch schließen, wodurch sie in den Pool
+     * zurückkehrt.
+     *
+     * @return Eine offene Verbindung zur Datenbank.
+     * @throws SQLException Falls keine Verbindung hergestellt werden konnte.
+     */
+    public Connection getConnection() throws SQLException {
+        return this.pool.getConnection();
+    }
+
+    /**
+     * Gibt eine Verbindung für lesende Abfragen aus, die einen um einige
+     * Sekunden veralteten Stand vertragen. Die Verbindung führt zum Replikat,
+     * sofern dieses aktuell genug ist und die Sitzung nicht gerade selbst
+     * Daten geändert hat, andernfalls zur Hauptdatenbank.
+     *
+     * @return Eine offene Verbindung zur Datenbank.
+     * @throws SQLException Falls keine Verbindung hergestellt werden konnte.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (this.replicaPool == null || !this.replicaAvailable || this.hasRecentWrite()) {
+            return this.pool.getConnection();
+        }
+        try {
+            return this.replicaPool.getConnection();
+        } catch (final SQLException e) {
+            this.logger.warn("Could not connect to the replica, falling back to the primary database.", e);
+            this.replicaAvailable = false;
+            return this.pool.getConnection();
+        }
+    }
+
+    /**
+     * Vermerkt, dass die aktuelle Sitzung Daten geändert hat. Ihre folgenden
+     * Abfragen werden für die maximale Verzögerung des Replikats an die
+     * Hauptdatenbank gerichtet.
+     */
+    public void markWritten() {
+        final VaadinSession session = VaadinSession.getCurrent();
+        if (this.replicaPool != null && session != null) {
+            session.setAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Beendet die Messung des Rückstands und schließt die Verbindungen zur
+     * Hauptdatenbank und zum Replikat.
+     */
+    public void close() {
+        if (this.lagMonitor != null) {
+            this.lagMonitor.shutdownNow();
+        }
+        this.pool.close();
+        if (this.replicaPool != null) {
+            this.replicaPool.close();
+        }
+    }
+
+    /**
+     * @return Der Pool der Verbindungen zur Hauptdatenbank.
+     */
+    public ConnectionPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * @return Der Pool der Verbindungen zum Replikat oder null, falls kein Replikat konfiguriert ist.
+     */
+    public ConnectionPool getReplicaPool() {
+        return this.replicaPool;
+    }
+
+    /**
+     * @return True, falls lesende Abfragen derzeit an das Replikat gerichtet werden.
+     */
+    public boolean isReplicaAvailable() {
+        return this.replicaAvailable;
+    }
+
+    /**
+     * @return Der zuletzt gemessene Rückstand des Replikats in Millisekunden oder -1, falls unbekannt.
+     */
+    public long getReplicaLagMillis() {
+        return this.replicaLagMillis;
+    }
+
+    private boolean hasRecentWrite() {
+        final VaadinSession session = VaadinSession.getCurrent();
+        if (session == null) {
+            return false;
+        }
+        final Object lastWrite = session.getAttribute(LAST_WRITE_ATTRIBUTE);
+        return lastWrite instanceof Long
+                && System.currentTimeMillis() - (Long) lastWrite < this.maxReplicaLagMillis;
+    }
+
+    private void checkReplicaLag() {
+        try (Connection c = this.replicaPool.getConnection();
+             Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(
+                     c.getMetaData().getDatabaseMajorVersion() >= 10 ? LAG_QUERY : LAG_QUERY_PRE_10)) {
+            rs.next();
+            this.replicaLagMillis = (long) (rs.getDouble(1) * 1000);
+        } catch (final SQLException e) {
+            this.replicaLagMillis = -1;
+            if (this.replicaAvailable) {
+                this.logger.warn("Could not determine the replica lag.", e);
+            }
+        }
+        final boolean available = this.replicaLagMillis >= 0 && this.replicaLagMillis <= this.maxReplicaLagMillis;
+        if (available != this.replicaAvailable) {
+            this.logger.info(available ? "Reading from the replica database."
+                    : "Replica lag too high (" + this.replicaLagMillis + " ms), reading from the primary database.");
+        }
+        this.replicaAvailable = available;
+    }
+
+    private static String lagQuery(String receiveLsn, String replayLsn) {
+        return "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+                + "WHEN " + receiveLsn + " = " + replayLsn + " THEN 0 "
+                + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+    }
+}
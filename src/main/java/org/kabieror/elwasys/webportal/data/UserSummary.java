@@ -0,0 +1,70 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Die Daten eines Benutzers, die in der Benutzertabelle angezeigt werden.
+ *
+ * @author Oliver Kabierschke
+ */
+public class UserSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final String name;
+    private final String username;
+    private final String groupName;
+    private final String[] cardIds;
+    private final boolean blocked;
+    private final BigDecimal credit;
+    private final boolean expiredExecutions;
+
+    public UserSummary(int id, String name, String username, String groupName, String[] cardIds,
+                       boolean blocked, BigDecimal credit, boolean expiredExecutions) {
+        this.id = id;
+        this.name = name;
+        this.username = username;
+        this.groupName = groupName;
+        this.cardIds = cardIds != null ? cardIds : new String[0];
+        this.blocked = blocked;
+        this.credit = credit != null ? credit : BigDecimal.ZERO;
+        this.expiredExecutions = expiredExecutions;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    public String getGroupName() {
+        return this.groupName;
+    }
+
+    public String[] getCardIds() {
+        return this.cardIds;
+    }
+
+    public boolean isBlocked() {
+        return this.blocked;
+    }
+
+    public BigDecimal getCredit() {
+        return this.credit;
+    }
+
+    /**
+     * @return True, falls der Benutzer nicht abgerechnete, abgelaufene Programmausführungen hat.
+     */
+    public boolean hasExpiredExecutions() {
+        return this.expiredExecutions;
+    }
+}
@@ -0,0 +1,124 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.function.Function;
+
+/**
+ * Beschreibt Filter und Sortierung einer Abfrage auf die Benutzerübersicht.
+ * Die Sortierung wird immer um die Benutzer-ID ergänzt, damit die Reihenfolge
+ * eindeutig ist und seitenweise fortgesetzt werden kann.
+ *
+ * @author Oliver Kabierschke
+ */
+public class UserSummaryQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<SortOrder> sortOrders = new Vector<>();
+
+    private String filter;
+
+    public UserSummaryQuery() {
+        this.sortOrders.add(new SortOrder(SortProperty.GROUP, true));
+        this.sortOrders.add(new SortOrder(SortProperty.NAME, true));
+    }
+
+    /**
+     * Setzt den Suchbegriff, der in Name, Gruppe oder Kartennummern vorkommen muss.
+     *
+     * @param filter Der Suchbegriff oder null, falls nicht gefiltert werden soll.
+     */
+    public void setFilter(String filter) {
+        this.filter = filter == null || filter.trim().isEmpty() ? null : filter.trim();
+    }
+
+    public String getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * Setzt die Sortierung. Ist die Benutzer-ID nicht enthalten, wird sie
+     * automatisch als letztes Kriterium angehängt.
+     *
+     * @param orders Die Sortierkriterien in absteigender Priorität.
+     */
+    public void setSortOrders(List<SortOrder> orders) {
+        this.sortOrders.clear();
+        for (final SortOrder o : orders) {
+            this.sortOrders.add(o);
+            if (o.getProperty() == SortProperty.ID) {
+                // Die ID ist eindeutig, weitere Kriterien sind wirkungslos
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return Die Sortierkriterien, die mit der Benutzer-ID enden.
+     */
+    public List<SortOrder> getEffectiveSortOrders() {
+        final List<SortOrder> res = new Vector<>(this.sortOrders);
+        if (res.isEmpty() || res.get(res.size() - 1).getProperty() != SortProperty.ID) {
+            final boolean lastAscending = res.isEmpty() || res.get(res.size() - 1).isAscending();
+            res.add(new SortOrder(SortProperty.ID, lastAscending));
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Die Eigenschaften, nach denen in der Datenbank sortiert werden kann.
+     * Der SQL-Ausdruck und der Wert aus der Übersicht müssen einander
+     * entsprechen, damit eine Seite hinter dem letzten Eintrag der vorherigen
+     * fortgesetzt werden kann.
+     */
+    public enum SortProperty {
+        ID("u.id", UserSummary::getId),
+        NAME("COALESCE(u.name, '')", u -> u.getName() != null ? u.getName() : ""),
+        GROUP("COALESCE(g.name, '')", u -> u.getGroupName() != null ? u.getGroupName() : ""),
+        CARD_ID("COALESCE(u.card_ids[1], '')", u -> u.getCardIds().length > 0 ? u.getCardIds()[0] : ""),
+        CREDIT("COALESCE(c.credit, 0)", u -> u.getCredit() != null ? u.getCredit() : BigDecimal.ZERO);
+
+        private final String expression;
+        private final Function<UserSummary, Object> keyExtractor;
+
+        SortProperty(String expression, Function<UserSummary, Object> keyExtractor) {
+            this.expression = expression;
+            this.keyExtractor = keyExtractor;
+        }
+
+        String getExpression() {
+            return this.expression;
+        }
+
+        Object getKey(UserSummary u) {
+            return this.keyExtractor.apply(u);
+        }
+    }
+
+    /**
+     * Ein Sortierkriterium
+     */
+    public static class SortOrder implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final SortProperty property;
+        private final boolean ascending;
+
+        public SortOrder(SortProperty property, boolean ascending) {
+            this.property = property;
+            this.ascending = ascending;
+        }
+
+        public SortProperty getProperty() {
+            return this.property;
+        }
+
+        public boolean isAscending() {
+            return this.ascending;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.kabieror.elwasys.webportal.data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Anzahl und Gesamtguthaben der Benutzer, die einer Abfrage entsprechen.
+ *
+ * @author Oliver Kabierschke
+ */
+public class UserSummaryTotals implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int count;
+    private final BigDecimal creditSum;
+
+    public UserSummaryTotals(int count, BigDecimal creditSum) {
+        this.count = count;
+        this.creditSum = creditSum != null ? creditSum : BigDecimal.ZERO;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public BigDecimal getCreditSum() {
+        return this.creditSum;
+    }
+}
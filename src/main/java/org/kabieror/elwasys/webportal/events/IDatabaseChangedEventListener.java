@@ -0,0 +1,28 @@
+package org.kabieror.elwasys.webportal.events;
+
+import org.kabieror.elwasys.webportal.data.ChangeEvent;
+
+/**
+ * Dieses Interface erlaubt es, über Änderungen in der Datenbank benachrichtigt
+ * zu werden, unabhängig davon, ob sie vom Portal oder von einem Client
+ * vorgenommen wurden.
+ *
+ * @author Oliver Kabierschke
+ *
+ */
+public interface IDatabaseChangedEventListener {
+    /**
+     * Wird aufgerufen, sobald eine Zeile in der Datenbank geändert wurde. Der
+     * Aufruf erfolgt auf dem Thread des Änderungsstroms.
+     *
+     * @param e
+     *            Die Änderung.
+     */
+    void onDatabaseChanged(ChangeEvent e);
+
+    /**
+     * Wird aufgerufen, nachdem die Verbindung des Änderungsstroms unterbrochen
+     * war. Änderungen aus dieser Zeit sind nicht gemeldet worden.
+     */
+    void onChangesMissed();
+}
@@ -0,0 +1,58 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.common.maintenance.RestartAppRequest;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Die Befehle, die gemeinsam an die Clients mehrerer Standorte gesendet
+ * werden können.
+ *
+ * @author Oliver Kabierschke
+ */
+public enum BulkCommand {
+
+    RESTART("Anwendung neu starten") {
+        @Override
+        public CompletableFuture<String> execute(MaintenanceConnectionManager manager, Location location) {
+            return manager.callAsync(location, c -> {
+                c.sendCommand(new RestartAppRequest());
+                return "Neustart in Auftrag gegeben";
+            });
+        }
+    },
+
+    FETCH_LOG("Log abrufen") {
+        @Override
+        public CompletableFuture<String> execute(MaintenanceConnectionManager manager, Location location) {
+            return manager.getLogAsync(location, log -> log.size() + " Zeilen");
+        }
+    };
+
+    private final String caption;
+
+    BulkCommand(String caption) {
+        this.caption = caption;
+    }
+
+    /**
+     * @return Die Bezeichnung des Befehls für die Oberfläche
+     */
+    public String getCaption() {
+        return this.caption;
+    }
+
+    /**
+     * Sendet den Befehl an den Client eines Standorts, ohne auf die Antwort
+     * zu warten.
+     *
+     * @param manager
+     *            Der Manager der Wartungsverbindungen
+     * @param location
+     *            Der Standort
+     * @return Eine kurze Beschreibung des Ergebnisses
+     */
+    public abstract CompletableFuture<String> execute(MaintenanceConnectionManager manager, Location location);
+}
@@ -0,0 +1,209 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager.ClientNotConnectedException;
+import org.kabieror.elwasys.webportal.maintenance.BulkResult.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Sendet einen Befehl an die Clients mehrerer Standorte. Es laufen höchstens
+ * so viele Befehle gleichzeitig wie angegeben. Auf Wunsch werden die
+ * Standorte in Wellen bearbeitet: Die nächste Welle beginnt erst, wenn die
+ * vorherige abgeschlossen ist, und wird bei Fehlern nicht mehr gestartet.
+ * <p>
+ * Die Befehle laufen auf dem Thread-Pool der Wartungsanfragen, es wird kein
+ * eigener Thread belegt.
+ *
+ * @author Oliver Kabierschke
+ */
+public class BulkOperation {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MaintenanceConnectionManager manager;
+    private final BulkCommand command;
+    private final List<Location> locations;
+    private final int parallelism;
+    private final int waveSize;
+    private final long wavePauseMillis;
+    private final boolean stopOnFailure;
+    private final IProgressListener listener;
+
+    private final Set<CompletableFuture<String>> running = ConcurrentHashMap.newKeySet();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    /**
+     * Der Index des nächsten Standorts, geschützt durch this
+     */
+    private int next;
+    private int waveEnd;
+    private int pendingInWave;
+    private boolean waveFailed;
+    private volatile boolean cancelled;
+
+    /**
+     * Konstruktor
+     *
+     * @param manager
+     *            Der Manager der Wartungsverbindungen
+     * @param command
+     *            Der Befehl
+     * @param locations
+     *            Die Standorte in der Reihenfolge der Bearbeitung
+     * @param parallelism
+     *            Die maximale Anzahl gleichzeitig laufender Befehle
+     * @param waveSize
+     *            Die Anzahl der Standorte je Welle oder 0 für eine einzige Welle
+     * @param wavePauseMillis
+     *            Die Pause zwischen zwei Wellen in Millisekunden
+     * @param stopOnFailure
+     *            True, falls nach einer Welle mit Fehlern abgebrochen wird
+     * @param listener
+     *            Wird über den Fortschritt jedes Standorts benachrichtigt.
+     *            Der Aufruf erfolgt auf wechselnden Threads.
+     */
+    public BulkOperation(MaintenanceConnectionManager manager, BulkCommand command, List<Location> locations,
+                         int parallelism, int waveSize, long wavePauseMillis, boolean stopOnFailure,
+                         IProgressListener listener) {
+        this.manager = manager;
+        this.command = command;
+        this.locations = new ArrayList<>(locations);
+        this.parallelism = Math.max(1, parallelism);
+        this.waveSize = waveSize;
+        this.wavePauseMillis = wavePauseMillis;
+        this.stopOnFailure = stopOnFailure;
+        this.listener = listener;
+    }
+
+    /**
+     * Startet die Bearbeitung.
+     *
+     * @return Wird abgeschlossen, sobald alle Standorte bearbeitet oder
+     *         übersprungen wurden.
+     */
+    public CompletableFuture<Void> start() {
+        this.logger.info("Sending " + this.command + " to " + this.locations.size() + " locations.");
+        this.startWave();
+        return this.finished;
+    }
+
+    /**
+     * Bricht die Bearbeitung ab. Laufende Befehle werden abgebrochen, noch
+     * nicht gestartete übersprungen.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        for (final CompletableFuture<String> f : new ArrayList<>(this.running)) {
+            f.cancel(true);
+        }
+        synchronized (this) {
+            if (this.running.isEmpty()) {
+                this.skipRemaining();
+                this.finish();
+            }
+        }
+    }
+
+    private synchronized void startWave() {
+        if (this.finished.isDone()) {
+            return;
+        }
+        if (this.cancelled) {
+            this.skipRemaining();
+        }
+        if (this.next >= this.locations.size()) {
+            this.finish();
+            return;
+        }
+        this.waveEnd = this.waveSize > 0 ? Math.min(this.next + this.waveSize, this.locations.size())
+                : this.locations.size();
+        this.waveFailed = false;
+        while (this.pendingInWave < this.parallelism && this.next < this.waveEnd && !this.cancelled) {
+            this.startNext();
+        }
+    }
+
+    private void startNext() {
+        final Location location = this.locations.get(this.next++);
+        this.pendingInWave++;
+        this.listener.onProgress(new BulkResult(location.getName(), State.RUNNING, null, -1));
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<String> f = this.command.execute(this.manager, location);
+        this.running.add(f);
+        f.whenComplete((msg, e) -> this.onCompleted(location, f, System.currentTimeMillis() - start, msg, e));
+    }
+
+    private synchronized void onCompleted(Location location, CompletableFuture<String> f, long duration,
+                                          String message, Throwable e) {
+        this.running.remove(f);
+        this.pendingInWave--;
+        if (e == null) {
+            this.listener.onProgress(new BulkResult(location.getName(), State.DONE, message, duration));
+        } else if (e instanceof CancellationException) {
+            this.listener.onProgress(new BulkResult(location.getName(), State.SKIPPED, "Abgebrochen", duration));
+        } else {
+            this.waveFailed = true;
+            this.listener.onProgress(new BulkResult(location.getName(), State.FAILED, this.describe(e), duration));
+        }
+
+        if (!this.cancelled && this.next < this.waveEnd) {
+            this.startNext();
+        } else if (this.pendingInWave == 0) {
+            this.endWave();
+        }
+    }
+
+    private void endWave() {
+        if (this.cancelled || (this.stopOnFailure && this.waveFailed)) {
+            this.skipRemaining();
+            this.finish();
+        } else if (this.next >= this.locations.size()) {
+            this.finish();
+        } else if (this.wavePauseMillis > 0) {
+            this.manager.runLater(this::startWave, this.wavePauseMillis);
+        } else {
+            this.startWave();
+        }
+    }
+
+    private void skipRemaining() {
+        while (this.next < this.locations.size()) {
+            this.listener.onProgress(new BulkResult(this.locations.get(this.next++).getName(), State.SKIPPED,
+                    null, -1));
+        }
+    }
+
+    private void finish() {
+        if (this.finished.complete(null)) {
+            this.logger.info("Finished sending " + this.command + (this.cancelled ? " (cancelled)." : "."));
+        }
+    }
+
+    private String describe(Throwable e) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ClientNotConnectedException) {
+            return "Keine Verbindung zum Client";
+        } else if (cause instanceof TimeoutException) {
+            return "Zeitüberschreitung";
+        } else if (cause instanceof RejectedExecutionException) {
+            return "Zu viele laufende Anfragen";
+        }
+        this.logger.warn("Command " + this.command + " failed.", cause);
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    /**
+     * Wird über den Fortschritt der einzelnen Standorte benachrichtigt.
+     */
+    @FunctionalInterface
+    public interface IProgressListener {
+        void onProgress(BulkResult result);
+    }
+}
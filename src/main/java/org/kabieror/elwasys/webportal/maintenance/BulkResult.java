@@ -0,0 +1,66 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import java.io.Serializable;
+
+/**
+ * Der Zustand eines Befehls an einen einzelnen Standort innerhalb einer
+ * {@link BulkOperation}.
+ *
+ * @author Oliver Kabierschke
+ */
+public class BulkResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String locationName;
+    private final State state;
+    private final String message;
+    private final long durationMillis;
+
+    public BulkResult(String locationName, State state, String message, long durationMillis) {
+        this.locationName = locationName;
+        this.state = state;
+        this.message = message;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getLocationName() {
+        return this.locationName;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return Das Ergebnis oder die Fehlermeldung, sonst null
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * @return Die Dauer des Befehls in Millisekunden oder -1, solange er nicht
+     *         abgeschlossen ist
+     */
+    public long getDurationMillis() {
+        return this.durationMillis;
+    }
+
+    /**
+     * Die Zustände eines Befehls
+     */
+    public enum State {
+        WAITING("Wartet"), RUNNING("Läuft"), DONE("Erledigt"), FAILED("Fehler"), SKIPPED("Übersprungen");
+
+        private final String caption;
+
+        State(String caption) {
+            this.caption = caption;
+        }
+
+        public String getCaption() {
+            return this.caption;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Der zuletzt festgestellte Zustand des Clients eines Standorts.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ClientHealth implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String locationName;
+    private final boolean connected;
+    private final boolean reachable;
+    private final String hostAddress;
+    private final long reachabilityMillis;
+    private final LocalDateTime lastSeen;
+    private final LocalDateTime checked;
+
+    public ClientHealth(String locationName, boolean connected, boolean reachable, String hostAddress,
+                        long reachabilityMillis, LocalDateTime lastSeen, LocalDateTime checked) {
+        this.locationName = locationName;
+        this.connected = connected;
+        this.reachable = reachable;
+        this.hostAddress = hostAddress;
+        this.reachabilityMillis = reachabilityMillis;
+        this.lastSeen = lastSeen;
+        this.checked = checked;
+    }
+
+    public String getLocationName() {
+        return this.locationName;
+    }
+
+    /**
+     * @return True, falls der Client beim Wartungsserver angemeldet ist
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * @return True, falls der Client verbunden ist und die Prüfung seiner
+     *         Erreichbarkeit erfolgreich war
+     */
+    public boolean isHealthy() {
+        return this.connected && this.reachable;
+    }
+
+    /**
+     * @return Die Adresse des Clients oder null, falls er nicht verbunden ist
+     */
+    public String getHostAddress() {
+        return this.hostAddress;
+    }
+
+    /**
+     * Gibt die Dauer der Erreichbarkeitsprüfung zurück. Gemessen wird mit
+     * {@link java.net.InetAddress#isReachable(int)}, also per ICMP oder über
+     * den TCP-Port 7 der Adresse, unter der der Client verbunden ist. Hinter
+     * einem NAT-Router ist das der Router, nicht der Client. Der Wert sagt
+     * daher nichts über die Antwortzeit von Wartungsanfragen aus.
+     *
+     * @return Die Dauer in Millisekunden oder -1, falls die Prüfung
+     *         fehlgeschlagen ist
+     */
+    public long getReachabilityMillis() {
+        return this.reachabilityMillis;
+    }
+
+    /**
+     * @return Der Zeitpunkt der letzten erfolgreichen Prüfung oder null
+     */
+    public LocalDateTime getLastSeen() {
+        return this.lastSeen;
+    }
+
+    /**
+     * @return Der Zeitpunkt der Prüfung
+     */
+    public LocalDateTime getChecked() {
+        return this.checked;
+    }
+}
@@ -0,0 +1,96 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import org.kabieror.elwasys.webportal.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Die Messwerte der Wartungsverbindung zum Client eines Standorts.
+ *
+ * @author Oliver Kabierschke
+ */
+public class ClientMetrics {
+
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder heartbeatMisses = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+
+    void recordCall(long nanos) {
+        this.roundTrip.record(nanos);
+    }
+
+    void recordFailure(boolean timeout) {
+        this.failures.increment();
+        if (timeout) {
+            this.timeouts.increment();
+        }
+    }
+
+    void recordHeartbeat(boolean missed) {
+        this.heartbeats.increment();
+        if (missed) {
+            this.heartbeatMisses.increment();
+        }
+    }
+
+    void recordReconnect() {
+        this.reconnects.increment();
+    }
+
+    void recordBytesIn(long bytes) {
+        this.bytesIn.add(bytes);
+    }
+
+    /**
+     * @return Die Antwortzeiten der erfolgreichen Anfragen
+     */
+    public LatencyHistogram getRoundTrip() {
+        return this.roundTrip;
+    }
+
+    /**
+     * @return Die Anzahl der fehlgeschlagenen Anfragen einschließlich der Fristüberschreitungen
+     */
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    /**
+     * @return Die Anzahl der Anfragen, die wegen Fristüberschreitung abgebrochen wurden
+     */
+    public long getTimeouts() {
+        return this.timeouts.sum();
+    }
+
+    /**
+     * @return Die Anzahl der Zustandsprüfungen eines verbundenen Clients
+     */
+    public long getHeartbeats() {
+        return this.heartbeats.sum();
+    }
+
+    /**
+     * @return Die Anzahl der Zustandsprüfungen, auf die ein verbundener Client nicht geantwortet hat
+     */
+    public long getHeartbeatMisses() {
+        return this.heartbeatMisses.sum();
+    }
+
+    /**
+     * @return Die Anzahl der erneuten Verbindungen nach einer Unterbrechung
+     */
+    public long getReconnects() {
+        return this.reconnects.sum();
+    }
+
+    /**
+     * @return Die Summe der empfangenen Nutzdaten in Bytes
+     */
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+}
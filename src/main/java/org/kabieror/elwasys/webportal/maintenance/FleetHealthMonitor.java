@@ -0,0 +1,173 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.common.maintenance.IClientConnection;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager.ClientNotConnectedException;
+import org.kabieror.elwasys.webportal.data.EntityCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * Prüft in regelmäßigen Abständen die Clients aller Standorte und hält das
+ * Ergebnis vor, sodass Ansichten den Zustand ohne eigene Anfragen anzeigen
+ * können. Die Prüfungen laufen parallel über den Thread-Pool der
+ * Wartungsanfragen, wobei nur eine begrenzte Anzahl gleichzeitig läuft, damit
+ * Anfragen der Administratoren nicht verdrängt werden.
+ *
+ * @author Oliver Kabierschke
+ */
+public class FleetHealthMonitor {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MaintenanceConnectionManager connectionManager;
+
+    private final EntityCache entityCache;
+
+    private final int timeoutMillis;
+
+    private final Semaphore concurrency;
+
+    private final Map<String, ClientHealth> health = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Konstruktor
+     *
+     * @param connectionManager
+     *            Der Manager der Wartungsverbindungen
+     * @param entityCache
+     *            Der Zwischenspeicher, aus dem die Standorte gelesen werden
+     * @param intervalSeconds
+     *            Der Abstand zwischen zwei Prüfungen in Sekunden
+     * @param timeoutMillis
+     *            Die Frist für die Prüfung eines Clients in Millisekunden
+     * @param maxConcurrent
+     *            Die maximale Anzahl gleichzeitiger Prüfungen
+     */
+    public FleetHealthMonitor(MaintenanceConnectionManager connectionManager, EntityCache entityCache,
+                              int intervalSeconds, int timeoutMillis, int maxConcurrent) {
+        this.connectionManager = connectionManager;
+        this.entityCache = entityCache;
+        this.timeoutMillis = timeoutMillis;
+        this.concurrency = new Semaphore(maxConcurrent);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "fleet-health");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::sweep, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Beendet die regelmäßige Prüfung der Clients.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Gibt den zuletzt festgestellten Zustand des Clients eines Standorts zurück.
+     *
+     * @param location
+     *            Der Standort
+     * @return Der Zustand oder null, falls der Client noch nicht geprüft wurde
+     */
+    public ClientHealth getHealth(Location location) {
+        return this.health.get(location.getName());
+    }
+
+    /**
+     * Prüft die Clients aller Standorte und wartet, bis alle Prüfungen
+     * abgeschlossen sind.
+     */
+    public void sweep() {
+        final List<Location> locations;
+        try {
+            locations = this.entityCache.getLocations();
+        } catch (final SQLException e) {
+            this.logger.error("Could not load the locations for the health check.", e);
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<?>[] checks = new CompletableFuture<?>[locations.size()];
+        for (int i = 0; i < locations.size(); i++) {
+            final Location location = locations.get(i);
+            try {
+                this.concurrency.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            checks[i] = this.connectionManager
+                    .callAsync(location, this::probe, this.timeoutMillis)
+                    .handle((rtt, e) -> {
+                        this.concurrency.release();
+                        this.record(location, rtt, e);
+                        return null;
+                    });
+        }
+        CompletableFuture.allOf(checks).join();
+        this.logger.debug("Checked " + locations.size() + " clients in " + (System.currentTimeMillis() - start)
+                + " ms.");
+    }
+
+    /**
+     * Prüft die Erreichbarkeit der Adresse, unter der ein Client verbunden
+     * ist. Hinter einem NAT-Router antwortet der Router.
+     *
+     * @return Die Dauer der Prüfung in Millisekunden oder -1
+     */
+    private long probe(IClientConnection client) throws Exception {
+        final InetAddress address = InetAddress.getByName(client.getHostAddress());
+        final long start = System.nanoTime();
+        if (address.isReachable(this.timeoutMillis)) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        return -1L;
+    }
+
+    private void record(Location location, Long rtt, Throwable e) {
+        final LocalDateTime now = LocalDateTime.now();
+        final ClientHealth previous = this.health.get(location.getName());
+        final LocalDateTime lastSeen = previous != null ? previous.getLastSeen() : null;
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        final IClientConnection client = this.connectionManager.getClient(location);
+
+        final MaintenanceMetrics metrics = this.connectionManager.getMetrics();
+
+        final ClientHealth h;
+        if (cause instanceof ClientNotConnectedException || client == null) {
+            h = new ClientHealth(location.getName(), false, false, null, -1, lastSeen, now);
+        } else if (cause instanceof RejectedExecutionException) {
+            // Keine freie Kapazität, den bisherigen Zustand beibehalten
+            return;
+        } else {
+            // Eine fehlgeschlagene oder abgelaufene Prüfung gilt als
+            // Ausfall, nur eine erfolgreiche zählt als zuletzt gesehen
+            final boolean reachable = cause == null && rtt != null && rtt >= 0;
+            if (cause != null) {
+                this.logger.debug("Could not probe the client at '" + location.getName() + "'.", cause);
+            }
+            h = new ClientHealth(location.getName(), true, reachable, client.getHostAddress(),
+                    reachable ? rtt : -1, reachable ? now : lastSeen, now);
+            metrics.recordHeartbeat(location.getName(), !reachable);
+            if (previous != null && (!previous.isConnected()
+                    || !Objects.equals(previous.getHostAddress(), h.getHostAddress()))) {
+                metrics.recordReconnect(location.getName());
+            }
+        }
+        this.health.put(location.getName(), h);
+    }
+}
@@ -0,0 +1,137 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ein Filter für die Zeilen der Log-Datei eines Clients. Eine Zeile ist ein
+ * Treffer, wenn sie dem regulären Ausdruck entspricht und ihr Eintrag im
+ * Zeitraum liegt und mindestens die geforderte Stufe hat. Zeilen ohne
+ * Zeitstempel, z.B. aus Stacktraces, gehören zum vorangehenden Eintrag.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LogFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Pattern TIMESTAMP = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})[ T](\\d{2}:\\d{2}:\\d{2})");
+
+    private static final Pattern LEVEL = Pattern.compile("\\b(TRACE|DEBUG|INFO|WARN|ERROR)\\b");
+
+    private final Pattern pattern;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final Level minLevel;
+    private final int contextLines;
+    private final int maxMatches;
+
+    /**
+     * Konstruktor
+     *
+     * @param pattern
+     *            Der gesuchte reguläre Ausdruck oder null für alle Zeilen
+     * @param from
+     *            Der Beginn des Zeitraums oder null
+     * @param to
+     *            Das Ende des Zeitraums oder null
+     * @param minLevel
+     *            Die Mindeststufe oder null für alle Stufen
+     * @param contextLines
+     *            Die Anzahl der Zeilen vor und nach jedem Treffer, die mit
+     *            zurückgegeben werden
+     * @param maxMatches
+     *            Die maximale Anzahl an Treffern
+     */
+    public LogFilter(Pattern pattern, LocalDateTime from, LocalDateTime to, Level minLevel, int contextLines,
+                     int maxMatches) {
+        this.pattern = pattern;
+        this.from = from;
+        this.to = to;
+        this.minLevel = minLevel;
+        this.contextLines = contextLines;
+        this.maxMatches = maxMatches;
+    }
+
+    /**
+     * Wendet den Filter auf eine Log-Datei an.
+     *
+     * @param locationName
+     *            Der Name des Standorts, von dem die Log-Datei stammt
+     * @param lines
+     *            Die Zeilen der Log-Datei
+     * @return Die Treffer mit ihren Kontextzeilen in der Reihenfolge der Datei
+     */
+    public List<LogMatch> apply(String locationName, List<String> lines) {
+        final List<LogMatch> res = new ArrayList<>();
+        final ArrayDeque<LogMatch> before = new ArrayDeque<>();
+        int afterRemaining = 0;
+        int matches = 0;
+        LocalDateTime timestamp = null;
+        String level = null;
+
+        for (int i = 0; i < lines.size() && (matches < this.maxMatches || afterRemaining > 0); i++) {
+            final String line = lines.get(i);
+            final Matcher tm = TIMESTAMP.matcher(line);
+            if (tm.lookingAt()) {
+                try {
+                    timestamp = LocalDateTime.parse(tm.group(1) + "T" + tm.group(2));
+                } catch (final DateTimeParseException e) {
+                    timestamp = null;
+                }
+                final Matcher lm = LEVEL.matcher(line);
+                level = lm.find() ? lm.group(1) : null;
+            }
+
+            if (matches < this.maxMatches && this.matches(line, timestamp, level)) {
+                res.addAll(before);
+                before.clear();
+                res.add(new LogMatch(locationName, i + 1, timestamp, level, line, false));
+                matches++;
+                afterRemaining = this.contextLines;
+            } else if (afterRemaining > 0) {
+                res.add(new LogMatch(locationName, i + 1, timestamp, level, line, true));
+                afterRemaining--;
+            } else if (this.contextLines > 0) {
+                if (before.size() == this.contextLines) {
+                    before.removeFirst();
+                }
+                before.addLast(new LogMatch(locationName, i + 1, timestamp, level, line, true));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return Die maximale Anzahl an Treffern je Log-Datei
+     */
+    public int getMaxMatches() {
+        return this.maxMatches;
+    }
+
+    private boolean matches(String line, LocalDateTime timestamp, String level) {
+        if (this.from != null || this.to != null) {
+            if (timestamp == null || (this.from != null && timestamp.isBefore(this.from))
+                    || (this.to != null && timestamp.isAfter(this.to))) {
+                return false;
+            }
+        }
+        if (this.minLevel != null && (level == null || Level.valueOf(level).compareTo(this.minLevel) < 0)) {
+            return false;
+        }
+        return this.pattern == null || this.pattern.matcher(line).find();
+    }
+
+    /**
+     * Die Stufen der Log-Einträge in aufsteigender Wichtigkeit
+     */
+    public enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR,
+    }
+}
@@ -0,0 +1,69 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Eine Zeile aus der Log-Datei eines Clients, die bei einer Suche gefunden
+ * wurde oder als Kontext zu einem Treffer gehört.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LogMatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String locationName;
+    private final int lineNumber;
+    private final LocalDateTime timestamp;
+    private final String level;
+    private final String text;
+    private final boolean context;
+
+    public LogMatch(String locationName, int lineNumber, LocalDateTime timestamp, String level, String text,
+                    boolean context) {
+        this.locationName = locationName;
+        this.lineNumber = lineNumber;
+        this.timestamp = timestamp;
+        this.level = level;
+        this.text = text;
+        this.context = context;
+    }
+
+    public String getLocationName() {
+        return this.locationName;
+    }
+
+    /**
+     * @return Die Nummer der Zeile in der Log-Datei, beginnend bei 1
+     */
+    public int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * @return Der Zeitstempel der Zeile bzw. des vorangehenden Eintrags oder
+     *         null, falls keiner bekannt ist
+     */
+    public LocalDateTime getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @return Die Stufe des Eintrags, z.B. WARN, oder null
+     */
+    public String getLevel() {
+        return this.level;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * @return True, falls die Zeile nur als Kontext eines Treffers angezeigt wird
+     */
+    public boolean isContext() {
+        return this.context;
+    }
+}
@@ -0,0 +1,156 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Eine Suche in den Log-Dateien mehrerer Standorte. Es werden höchstens so
+ * viele Standorte gleichzeitig abgefragt, wie erlaubt sind. Sobald die
+ * empfangenen Log-Dateien zusammen die erlaubte Größe erreichen, werden keine
+ * weiteren Standorte mehr abgefragt. Bereits laufende Abrufe werden noch
+ * abgeschlossen, da der Client die Log-Datei immer vollständig sendet.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LogSearch {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MaintenanceConnectionManager manager;
+
+    private final LogFilter filter;
+
+    private final Deque<Location> pending;
+
+    private final int maxConcurrent;
+
+    private final long maxBytes;
+
+    private final AtomicLong transferred = new AtomicLong();
+
+    private final CompletableFuture<LogSearch> result = new CompletableFuture<>();
+
+    private final List<LogMatch> matches = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+    private final List<String> truncated = new ArrayList<>();
+    private final List<String> skipped = new ArrayList<>();
+
+    private int running;
+
+    /**
+     * Konstruktor
+     *
+     * @param manager
+     *            Der Manager der Wartungsverbindungen
+     * @param filter
+     *            Der Filter für die Zeilen
+     * @param locations
+     *            Die zu durchsuchenden Standorte
+     * @param maxConcurrent
+     *            Die maximale Anzahl gleichzeitig abgefragter Standorte
+     * @param maxBytes
+     *            Die Größe der Log-Dateien in Bytes, ab der keine weiteren
+     *            Standorte mehr abgefragt werden
+     */
+    public LogSearch(MaintenanceConnectionManager manager, LogFilter filter, Collection<Location> locations,
+                     int maxConcurrent, long maxBytes) {
+        this.manager = manager;
+        this.filter = filter;
+        this.pending = new ArrayDeque<>(locations);
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Startet die Suche.
+     *
+     * @return Die Suche, sobald alle Standorte abgearbeitet sind
+     */
+    public CompletableFuture<LogSearch> start() {
+        this.startNext();
+        return this.result;
+    }
+
+    private void startNext() {
+        final List<Location> next = new ArrayList<>();
+        synchronized (this) {
+            while (this.running < this.maxConcurrent && !this.pending.isEmpty()) {
+                if (this.transferred.get() >= this.maxBytes) {
+                    for (final Location l : this.pending) {
+                        this.skipped.add(l.getName());
+                    }
+                    this.pending.clear();
+                    break;
+                }
+                next.add(this.pending.poll());
+                this.running++;
+            }
+            if (this.running == 0 && this.pending.isEmpty()) {
+                this.result.complete(this);
+                return;
+            }
+        }
+        for (final Location l : next) {
+            this.manager.searchLogAsync(l, this.filter, this.transferred)
+                    .whenComplete((res, e) -> this.onLocationDone(l, res, e));
+        }
+    }
+
+    private void onLocationDone(Location location, List<LogMatch> res, Throwable e) {
+        synchronized (this) {
+            this.running--;
+            if (e != null) {
+                this.logger.warn("Could not search the log of '" + location.getName() + "'.", e);
+                this.failed.add(location.getName());
+            } else {
+                this.matches.addAll(res);
+                if (res.stream().filter(m -> !m.isContext()).count() >= this.filter.getMaxMatches()) {
+                    this.truncated.add(location.getName());
+                }
+            }
+        }
+        this.startNext();
+    }
+
+    /**
+     * @return Die Treffer aller Standorte mit ihren Kontextzeilen
+     */
+    public synchronized List<LogMatch> getMatches() {
+        return this.matches;
+    }
+
+    /**
+     * @return Die Namen der Standorte, die nicht durchsucht werden konnten
+     */
+    public synchronized List<String> getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * @return Die Namen der Standorte, deren Treffer gekürzt wurden
+     */
+    public synchronized List<String> getTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * @return Die Namen der Standorte, die wegen der erreichten Größe nicht
+     *         mehr abgefragt wurden
+     */
+    public synchronized List<String> getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * @return Die Größe der empfangenen Log-Dateien in Bytes
+     */
+    public long getTransferredBytes() {
+        return this.transferred.get();
+    }
+}
@@ -0,0 +1,85 @@
+package org.kabieror.elwasys.webportal.maintenance;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sammelt die Messwerte der Wartungsverbindungen je Standort.
+ *
+ * @author Oliver Kabierschke
+ */
+public class MaintenanceMetrics {
+
+    private final Map<String, ClientMetrics> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Erfasst die Antwortzeit einer erfolgreichen Anfrage.
+     *
+     * @param locationName
+     *            Der Name des Standorts
+     * @param nanos
+     *            Die Antwortzeit in Nanosekunden
+     */
+    public void recordCall(String locationName, long nanos) {
+        this.get(locationName).recordCall(nanos);
+    }
+
+    /**
+     * Erfasst eine fehlgeschlagene Anfrage.
+     *
+     * @param locationName
+     *            Der Name des Standorts
+     * @param timeout
+     *            True, falls die Frist überschritten wurde
+     */
+    public void recordFailure(String locationName, boolean timeout) {
+        this.get(locationName).recordFailure(timeout);
+    }
+
+    /**
+     * Erfasst eine Zustandsprüfung eines verbundenen Clients.
+     *
+     * @param locationName
+     *            Der Name des Standorts
+     * @param missed
+     *            True, falls der Client nicht geantwortet hat
+     */
+    public void recordHeartbeat(String locationName, boolean missed) {
+        this.get(locationName).recordHeartbeat(missed);
+    }
+
+    /**
+     * Erfasst, dass sich ein Client nach einer Unterbrechung erneut verbunden hat.
+     *
+     * @param locationName
+     *            Der Name des Standorts
+     */
+    public void recordReconnect(String locationName) {
+        this.get(locationName).recordReconnect();
+    }
+
+    /**
+     * Erfasst empfangene Nutzdaten.
+     *
+     * @param locationName
+     *            Der Name des Standorts
+     * @param bytes
+     *            Die Größe in Bytes
+     */
+    public void recordBytesIn(String locationName, long bytes) {
+        this.get(locationName).recordBytesIn(bytes);
+    }
+
+    /**
+     * @return Die Messwerte je Standort, nach Namen sortiert
+     */
+    public Map<String, ClientMetrics> getClients() {
+        return Collections.unmodifiableMap(new TreeMap<>(this.clients));
+    }
+
+    private ClientMetrics get(String locationName) {
+        return this.clients.computeIfAbsent(locationName, n -> new ClientMetrics());
+    }
+}
@@ -0,0 +1,132 @@
+package org.kabieror.elwasys.webportal.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ein Histogramm für Latenzen mit festen Klassen in Millisekunden. Messwerte
+ * können von beliebig vielen Threads gleichzeitig und ohne Sperren erfasst
+ * werden.
+ *
+ * @author Oliver Kabierschke
+ */
+public class LatencyHistogram {
+
+    /**
+     * Die oberen Grenzen der Klassen in Millisekunden. Werte darüber fallen in
+     * eine zusätzliche, unbeschränkte Klasse.
+     */
+    private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Erfasst einen Messwert.
+     *
+     * @param nanos
+     *            Die gemessene Dauer in Nanosekunden
+     */
+    public void record(long nanos) {
+        final long millis = nanos / 1000000;
+        int i = 0;
+        while (i < BOUNDS_MILLIS.length && millis >= BOUNDS_MILLIS[i]) {
+            i++;
+        }
+        this.buckets[i].increment();
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Erfasst die Dauer seit einem Startzeitpunkt.
+     *
+     * @param startNanos
+     *            Der mit {@link System#nanoTime()} ermittelte Startzeitpunkt
+     */
+    public void recordSince(long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return Die Anzahl der erfassten Messwerte
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return Der Mittelwert der Messwerte in Millisekunden
+     */
+    public double getMeanMillis() {
+        final long c = this.count.sum();
+        return c == 0 ? 0 : this.totalNanos.sum() / 1e6 / c;
+    }
+
+    /**
+     * @return Der größte Messwert in Millisekunden
+     */
+    public double getMaxMillis() {
+        return this.maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Schätzt ein Quantil anhand der Klassengrenzen ab.
+     *
+     * @param quantile
+     *            Das Quantil zwischen 0 und 1, z.B. 0.99
+     * @return Die obere Grenze der Klasse, in die das Quantil fällt, in
+     *         Millisekunden. Für die unbeschränkte Klasse wird der größte
+     *         Messwert zurückgegeben.
+     */
+    public double getQuantileMillis(double quantile) {
+        final long[] counts = this.getBucketCounts();
+        long total = 0;
+        for (final long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS_MILLIS[i];
+            }
+        }
+        return this.getMaxMillis();
+    }
+
+    /**
+     * @return Die oberen Grenzen der Klassen in Millisekunden
+     */
+    public static long[] getBoundsMillis() {
+        return BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * @return Die Anzahl der Messwerte je Klasse. Der letzte Eintrag enthält die
+     *         Messwerte oberhalb der größten Grenze.
+     */
+    public long[] getBucketCounts() {
+        final long[] res = new long[this.buckets.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = this.buckets[i].sum();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,229 @@
+package org.kabieror.elwasys.webportal.metrics;
+
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.PasswordVerifier;
+import org.kabieror.elwasys.webportal.WashportalConfiguration;
+import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.data.ConnectionPool;
+import org.kabieror.elwasys.webportal.data.EntityCache;
+import org.kabieror.elwasys.webportal.data.PortalDataManager;
+import org.kabieror.elwasys.webportal.data.PortalDatabase;
+import org.kabieror.elwasys.webportal.maintenance.ClientMetrics;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stellt die Messwerte der Wartungsverbindungen und der Datenbank im
+ * Textformat von Prometheus bereit. Der Abruf ist nur mit dem konfigurierten
+ * Schlüssel möglich und ohne Schlüssel abgeschaltet.
+ *
+ * @author Oliver Kabierschke
+ */
+@WebServlet(value = "/metrics/maintenance")
+public class MaintenanceMetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        final WashportalConfiguration config = WashportalManager.instance.getConfigurationManager();
+        if (config == null || config.getMetricsToken().isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!this.isAuthorized(req, config.getMetricsToken())) {
+            resp.setHeader("WWW-Authenticate", "Bearer");
+            resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (manager == null) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The maintenance server is not running.");
+            return;
+        }
+
+        resp.setContentType("text/plain; version=0.0.4");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        final PrintWriter out = resp.getWriter();
+
+        final PortalDataManager dataManager = WashportalManager.instance.getPortalDataManager();
+        if (dataManager != null) {
+            this.writeDatabase(out, dataManager.getDatabase());
+        }
+        final PasswordVerifier verifier = WashportalManager.instance.getPasswordVerifier();
+        if (verifier != null) {
+            this.type(out, "elwaportal_login_verifications_queued", "gauge");
+            this.sample(out, "elwaportal_login_verifications_queued", null, verifier.getQueueDepth());
+            this.type(out, "elwaportal_login_verifications_active", "gauge");
+            this.sample(out, "elwaportal_login_verifications_active", null, verifier.getActiveCount());
+            this.type(out, "elwaportal_login_verifications_total", "counter");
+            this.sample(out, "elwaportal_login_verifications_total", null, verifier.getVerificationCount());
+            this.type(out, "elwaportal_login_throttled_total", "counter");
+            this.sample(out, "elwaportal_login_throttled_total", null, verifier.getThrottledCount());
+            this.type(out, "elwaportal_login_rejected_total", "counter");
+            this.sample(out, "elwaportal_login_rejected_total", null, verifier.getRejectedCount());
+            this.type(out, "elwaportal_login_hash_seconds_avg", "gauge");
+            this.sample(out, "elwaportal_login_hash_seconds_avg", null, verifier.getAverageHashMillis() / 1000);
+            this.type(out, "elwaportal_login_hash_seconds_max", "gauge");
+            this.sample(out, "elwaportal_login_hash_seconds_max", null, verifier.getMaxHashMillis() / 1000);
+        }
+        final EntityCache cache = WashportalManager.instance.getEntityCache();
+        if (cache != null) {
+            this.type(out, "elwaportal_entity_cache_hits_total", "counter");
+            this.sample(out, "elwaportal_entity_cache_hits_total", null, cache.getHits());
+            this.type(out, "elwaportal_entity_cache_misses_total", "counter");
+            this.sample(out, "elwaportal_entity_cache_misses_total", null, cache.getMisses());
+            this.type(out, "elwaportal_entity_cache_evictions_total", "counter");
+            this.sample(out, "elwaportal_entity_cache_evictions_total", null, cache.getEvictions());
+            this.type(out, "elwaportal_entity_cache_hit_ratio", "gauge");
+            this.sample(out, "elwaportal_entity_cache_hit_ratio", null, cache.getHitRate());
+            this.type(out, "elwaportal_entity_cache_entries", "gauge");
+            this.sample(out, "elwaportal_entity_cache_entries", null, cache.getSize());
+        }
+
+        this.type(out, "elwaportal_maintenance_call_timeout_seconds", "gauge");
+        this.sample(out, "elwaportal_maintenance_call_timeout_seconds", null, manager.getCallTimeout() / 1000.0);
+        this.type(out, "elwaportal_maintenance_calls_active", "gauge");
+        this.sample(out, "elwaportal_maintenance_calls_active", null, manager.getActiveCalls());
+        this.type(out, "elwaportal_maintenance_calls_queued", "gauge");
+        this.sample(out, "elwaportal_maintenance_calls_queued", null, manager.getQueuedCalls());
+
+        final Map<String, ClientMetrics> clients = manager.getMetrics().getClients();
+        this.type(out, "elwaportal_maintenance_round_trip_seconds", "histogram");
+        for (final Map.Entry<String, ClientMetrics> e : clients.entrySet()) {
+            this.histogram(out, "elwaportal_maintenance_round_trip_seconds",
+                    "location=\"" + this.escape(e.getKey()) + "\"", e.getValue().getRoundTrip());
+        }
+
+        this.counters(out, clients, "elwaportal_maintenance_failures_total", ClientMetrics::getFailures);
+        this.counters(out, clients, "elwaportal_maintenance_timeouts_total", ClientMetrics::getTimeouts);
+        this.counters(out, clients, "elwaportal_maintenance_heartbeats_total", ClientMetrics::getHeartbeats);
+        this.counters(out, clients, "elwaportal_maintenance_heartbeat_misses_total",
+                ClientMetrics::getHeartbeatMisses);
+        this.counters(out, clients, "elwaportal_maintenance_reconnects_total", ClientMetrics::getReconnects);
+        this.counters(out, clients, "elwaportal_maintenance_received_bytes_total", ClientMetrics::getBytesIn);
+        out.flush();
+    }
+
+    private void writeDatabase(PrintWriter out, PortalDatabase database) {
+        final Map<String, ConnectionPool> pools = new LinkedHashMap<>();
+        pools.put("primary", database.getPool());
+        if (database.getReplicaPool() != null) {
+            pools.put("replica", database.getReplicaPool());
+        }
+        this.gauges(out, pools, "elwaportal_db_connections_active", ConnectionPool::getActiveCount);
+        this.gauges(out, pools, "elwaportal_db_connections_idle", ConnectionPool::getIdleCount);
+        this.gauges(out, pools, "elwaportal_db_connections_waiting", ConnectionPool::getWaitingCount);
+        this.gauges(out, pools, "elwaportal_db_connections_max", ConnectionPool::getMaxSize);
+        this.poolCounters(out, pools, "elwaportal_db_statement_cache_hits_total",
+                ConnectionPool::getStatementCacheHits);
+        this.poolCounters(out, pools, "elwaportal_db_statement_cache_misses_total",
+                ConnectionPool::getStatementCacheMisses);
+        this.poolCounters(out, pools, "elwaportal_db_statement_cache_evictions_total",
+                ConnectionPool::getStatementCacheEvictions);
+        this.gauges(out, pools, "elwaportal_db_statement_cache_hit_ratio", ConnectionPool::getStatementCacheHitRate);
+        if (database.getReplicaPool() != null) {
+            this.type(out, "elwaportal_db_replica_in_use", "gauge");
+            this.sample(out, "elwaportal_db_replica_in_use", null, database.isReplicaAvailable() ? 1 : 0);
+            // Ein unbekannter Rückstand wird ausgelassen statt als -1 gemeldet
+            if (database.getReplicaLagMillis() >= 0) {
+                this.type(out, "elwaportal_db_replica_lag_seconds", "gauge");
+                this.sample(out, "elwaportal_db_replica_lag_seconds", null, database.getReplicaLagMillis() / 1000.0);
+            }
+        }
+        this.type(out, "elwaportal_db_acquire_seconds", "histogram");
+        for (final Map.Entry<String, ConnectionPool> e : pools.entrySet()) {
+            this.histogram(out, "elwaportal_db_acquire_seconds", "pool=\"" + e.getKey() + "\"",
+                    e.getValue().getAcquireLatency());
+        }
+    }
+
+    private void gauges(PrintWriter out, Map<String, ConnectionPool> pools, String name, PoolGauge gauge) {
+        this.type(out, name, "gauge");
+        for (final Map.Entry<String, ConnectionPool> e : pools.entrySet()) {
+            this.sample(out, name, "pool=\"" + e.getKey() + "\"", gauge.get(e.getValue()));
+        }
+    }
+
+    private void poolCounters(PrintWriter out, Map<String, ConnectionPool> pools, String name, PoolGauge counter) {
+        this.type(out, name, "counter");
+        for (final Map.Entry<String, ConnectionPool> e : pools.entrySet()) {
+            this.sample(out, name, "pool=\"" + e.getKey() + "\"", counter.get(e.getValue()));
+        }
+    }
+
+    private void histogram(PrintWriter out, String name, String labels, LatencyHistogram h) {
+        final long[] bounds = LatencyHistogram.getBoundsMillis();
+        final long[] counts = h.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            this.sample(out, name + "_bucket", labels + ",le=\"" + bounds[i] / 1000.0 + "\"", cumulative);
+        }
+        this.sample(out, name + "_bucket", labels + ",le=\"+Inf\"", h.getCount());
+        this.sample(out, name + "_sum", labels, h.getMeanMillis() * h.getCount() / 1000.0);
+        this.sample(out, name + "_count", labels, h.getCount());
+    }
+
+    private boolean isAuthorized(HttpServletRequest req, String token) {
+        final String header = req.getHeader("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return false;
+        }
+        // Vergleich in konstanter Zeit
+        return MessageDigest.isEqual(header.substring(7).trim().getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void counters(PrintWriter out, Map<String, ClientMetrics> clients, String name, Counter counter) {
+        this.type(out, name, "counter");
+        for (final Map.Entry<String, ClientMetrics> e : clients.entrySet()) {
+            this.sample(out, name, "location=\"" + this.escape(e.getKey()) + "\"", counter.get(e.getValue()));
+        }
+    }
+
+    private void type(PrintWriter out, String name, String type) {
+        out.print("# TYPE ");
+        out.print(name);
+        out.print(' ');
+        out.print(type);
+        out.print('\n');
+    }
+
+    private void sample(PrintWriter out, String name, String labels, double value) {
+        out.print(name);
+        if (labels != null) {
+            out.print('{');
+            out.print(labels);
+            out.print('}');
+        }
+        out.print(' ');
+        out.print(value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%f", value));
+        out.print('\n');
+    }
+
+    private String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @FunctionalInterface
+    private interface Counter {
+        long get(ClientMetrics m);
+    }
+
+    @FunctionalInterface
+    private interface PoolGauge {
+        double get(ConnectionPool p);
+    }
+}
@@ -13,24 +13,26 @@ import com.vaadin.ui.themes.ValoTheme;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.kabieror.elwasys.common.Device;
-import org.kabieror.elwasys.common.Execution;
 import org.kabieror.elwasys.common.Location;
-import org.kabieror.elwasys.common.maintenance.*;
-import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.DashboardBroadcaster.IExecutionsChangedListener;
 import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.components.BulkCommandWindow;
 import org.kabieror.elwasys.webportal.components.LocationWindow;
+import org.kabieror.elwasys.webportal.components.LogSearchWindow;
 import org.kabieror.elwasys.webportal.components.LogViewerWindow;
+import org.kabieror.elwasys.webportal.data.ExecutionSummary;
 import org.kabieror.elwasys.webportal.events.ILocationUpdatedEventListener;
+import org.kabieror.elwasys.webportal.maintenance.BulkCommand;
+import org.kabieror.elwasys.webportal.maintenance.ClientHealth;
+import org.kabieror.elwasys.webportal.maintenance.FleetHealthMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.util.List;
-import java.util.Vector;
+import java.util.*;
 
 /**
  * Seite Administrator-Dashboard
@@ -50,6 +52,7 @@ public class AdminDashboardView extends VerticalLayout implements View {
     private static final String DATE_PROPERTY = "date";
     private static final String DURATION_PROPERTY = "duration";
     private static final String PRICE_PROPERTY = "price";
+    private static final String STYLE_PROPERTY = "style";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final VerticalLayout locationsContainer;
 
@@ -67,6 +70,18 @@ public class AdminDashboardView extends VerticalLayout implements View {
         caption.addStyleName("h1");
         body.addComponent(caption);
 
+        final Button btnSearchLogs = new Button("Logs durchsuchen", FontAwesome.SEARCH);
+        btnSearchLogs.addStyleName(ValoTheme.BUTTON_SMALL);
+        btnSearchLogs.addClickListener(e -> this.getUI().addWindow(new LogSearchWindow()));
+
+        final Button btnBulkCommand = new Button("Befehl an mehrere Standorte", FontAwesome.SEND);
+        btnBulkCommand.addStyleName(ValoTheme.BUTTON_SMALL);
+        btnBulkCommand.addClickListener(e -> this.getUI().addWindow(new BulkCommandWindow()));
+
+        final HorizontalLayout actions = new HorizontalLayout(btnSearchLogs, btnBulkCommand);
+        actions.setSpacing(true);
+        body.addComponent(actions);
+
         this.locationsContainer = new VerticalLayout();
         body.addComponent(this.locationsContainer);
     }
@@ -87,7 +102,7 @@ public class AdminDashboardView extends VerticalLayout implements View {
 
         List<Location> locations;
         try {
-            locations = WashportalManager.instance.getDataManager().getLocations();
+            locations = WashportalManager.instance.getEntityCache().getLocations();
         } catch (final SQLException e) {
             WashportalManager.instance.showDatabaseError(e);
             return;
@@ -103,7 +118,8 @@ public class AdminDashboardView extends VerticalLayout implements View {
      *
      * @author Oliver Kabierschke
      */
-    private class AdminDashboardLocationPanel extends VerticalLayout implements ILocationUpdatedEventListener {
+    private class AdminDashboardLocationPanel extends VerticalLayout
+            implements ILocationUpdatedEventListener, IExecutionsChangedListener {
         /**
          *
          */
@@ -111,7 +127,17 @@ public class AdminDashboardView extends VerticalLayout implements View {
 
         private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-        private final Location location;
+        private Location location;
+
+        /**
+         * Die Statusanzeigen der Geräte
+         */
+        private final Map<Integer, Label> statusLabels = new HashMap<>();
+
+        /**
+         * Die Container der letzten Ausführungen der Geräte
+         */
+        private final Map<Integer, IndexedContainer> executionContainers = new HashMap<>();
 
         public AdminDashboardLocationPanel(Location location) {
             this.location = location;
@@ -122,6 +148,8 @@ public class AdminDashboardView extends VerticalLayout implements View {
         private void refresh() {
             try {
                 this.removeAllComponents();
+                this.statusLabels.clear();
+                this.executionContainers.clear();
                 this.buildToolbar();
                 this.buildStatusInfo();
                 this.buildDeviceInfo();
@@ -154,26 +182,7 @@ public class AdminDashboardView extends VerticalLayout implements View {
             {
                 // Log button
                 final MenuItem logItem = toolbar.addItem("", FontAwesome.BOOK, (e) -> {
-                    IClientConnection connection =
-                            WashportalManager.instance.getMaintenanceConnectionManager().getClient(this.location);
-                    if (connection != null) {
-                        MaintenanceResponse res;
-                        try {
-                            res = connection.sendQuery(new GetLogRequest());
-                            if (!(res instanceof GetLogResponse)) {
-                                this.logger.warn("Expected GetLogResponse but got " + res.getClass().getName());
-                                WashportalManager.instance
-                                        .showError("Kommunikationsfehler", "Unerwartete Antwort vom Server.");
-                            } else {
-                                this.getUI().addWindow(new LogViewerWindow(((GetLogResponse) res).getLogContent()));
-                            }
-                        } catch (final IOException e1) {
-                            this.logger.error("Kommunikationsfehler", e1);
-                            WashportalManager.instance.showError(e1);
-                        }
-                    } else {
-                        WashportalManager.instance.showError("Fehler", "Keine Verbindung zum Client");
-                    }
+                    this.getUI().addWindow(new LogViewerWindow(this.location));
                 });
                 logItem.setDescription("Log-Datei anzeigen");
             }
@@ -182,20 +191,17 @@ public class AdminDashboardView extends VerticalLayout implements View {
                 // Power menu
                 final MenuItem powerItem = toolbar.addItem("", FontAwesome.POWER_OFF, null);
                 final MenuItem restartItem = powerItem.addItem("Anwendung neu starten", (i) -> {
-                    try {
-                        final IClientConnection connection =
-                                WashportalManager.instance.getMaintenanceConnectionManager().getClient(this.location);
-                        if (connection != null) {
-                            connection.sendCommand(new RestartAppRequest());
-                            WashportalManager.instance
-                                    .showSuccessMessage("Neustart", "Der Neustart wurde in Auftrag gegeben.");
-                        } else {
-                            WashportalManager.instance.showError("Fehler", "Keine Verbindung zum Standort.");
-                        }
-                    } catch (final Exception e) {
-                        this.logger.warn("Could not restart the server.", e);
-                        WashportalManager.instance.showError(e);
-                    }
+                    final UI ui = this.getUI();
+                    BulkCommand.RESTART
+                            .execute(WashportalManager.instance.getMaintenanceConnectionManager(), this.location)
+                            .whenComplete((res, e) -> ui.access(() -> {
+                                if (e != null) {
+                                    WashportalManager.instance.showMaintenanceError(e);
+                                } else {
+                                    WashportalManager.instance
+                                            .showSuccessMessage("Neustart", "Der Neustart wurde in Auftrag gegeben.");
+                                }
+                            }));
                 });
                 restartItem.setDescription("Starte den Client neu.");
             }
@@ -204,8 +210,19 @@ public class AdminDashboardView extends VerticalLayout implements View {
                 // Edit menu
                 final MenuItem editItem = toolbar.addItem("", FontAwesome.GEAR, null);
                 editItem.addItem("Bearbeiten", FontAwesome.PENCIL, (i) -> {
-                    final Window win = new LocationWindow(this.location, this);
-                    this.getUI().addWindow(win);
+                    // Der zwischengespeicherte Standort wird von allen Sitzungen geteilt, daher neu laden
+                    try {
+                        for (final Location l : WashportalManager.instance.getDataManager().getLocations()) {
+                            if (l.getId() == this.location.getId()) {
+                                final Window win = new LocationWindow(l, this);
+                                this.getUI().addWindow(win);
+                                return;
+                            }
+                        }
+                    } catch (final SQLException e) {
+                        this.logger.error("Could not load location to edit.", e);
+                        WashportalManager.instance.showDatabaseError(e);
+                    }
                 });
             }
 
@@ -220,28 +237,52 @@ public class AdminDashboardView extends VerticalLayout implements View {
             final HorizontalLayout container = new HorizontalLayout();
             container.setSpacing(true);
 
-            Label connectionLabel = new Label("OK");
-
-            MaintenanceConnectionManager connManager = WashportalManager.instance.getMaintenanceConnectionManager();
-            IClientConnection client;
-            if (connManager == null) {
+            // Zustand aus der letzten Prüfung aller Clients lesen, statt die
+            // Clients beim Aufbau der Seite anzufragen
+            final FleetHealthMonitor monitor = WashportalManager.instance.getFleetHealthMonitor();
+            final ClientHealth health;
+            if (monitor == null) {
                 this.logger.error("No maintenance connection manager is available.");
-                client = null;
+                health = null;
             } else {
-                client = connManager.getClient(this.location);
+                health = monitor.getHealth(this.location);
             }
 
-            if (client == null) {
+            final Label connectionLabel;
+            if (health == null) {
+                connectionLabel = new Label("Unbekannt");
+                connectionLabel.setDescription("Der Client wurde noch nicht geprüft.");
+            } else if (health.isHealthy()) {
+                connectionLabel = new Label("OK");
+                connectionLabel.addStyleName("connection-success");
+            } else if (health.isConnected()) {
+                connectionLabel = new Label("Nicht erreichbar");
+                connectionLabel.setDescription("Client ist verbunden, die Prüfung seiner Erreichbarkeit ist "
+                        + "aber fehlgeschlagen.");
+                connectionLabel.addStyleName("connection-error");
+            } else {
                 connectionLabel = new Label("Fehler");
                 connectionLabel.setDescription("Client ist nicht zum Server verbunden.");
+                connectionLabel.addStyleName("connection-error");
             }
-
-            connectionLabel.addStyleName(client != null ? "connection-success" : "connection-error");
             container.addComponent(this.buildKeyValue("Verbindung", connectionLabel));
 
-            final Label ipLabel = new Label(client != null ? client.getHostAddress() : " - ");
+            final Label ipLabel = new Label(health != null && health.getHostAddress() != null
+                    ? health.getHostAddress() : " - ");
             container.addComponent(this.buildKeyValue("IP-Adresse", ipLabel));
 
+            final Label rttLabel = new Label(health != null && health.getReachabilityMillis() >= 0
+                    ? health.getReachabilityMillis() + " ms" : " - ");
+            rttLabel.setDescription("Dauer der Erreichbarkeitsprüfung der Adresse, bei NAT die des Routers. "
+                    + "Keine Antwortzeit der Wartungsverbindung.");
+            container.addComponent(this.buildKeyValue("Erreichbarkeit", rttLabel));
+
+            if (health != null && !health.isHealthy()) {
+                final Label lastSeenLabel = new Label(health.getLastSeen() != null ? health.getLastSeen()
+                        .format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)) : "nie");
+                container.addComponent(this.buildKeyValue("Zuletzt gesehen", lastSeenLabel));
+            }
+
             this.addComponent(container);
         }
 
@@ -270,6 +311,16 @@ public class AdminDashboardView extends VerticalLayout implements View {
 
             final List<Device> devices = WashportalManager.instance.getDataManager().getDevicesToDisplay(this.location);
 
+            // Ausführungen aller Geräte des Standorts in einer Abfrage laden
+            final List<Integer> deviceIds = new Vector<>();
+            for (final Device device : devices) {
+                if (device != null) {
+                    deviceIds.add(device.getId());
+                }
+            }
+            final Map<Integer, List<ExecutionSummary>> executions =
+                    WashportalManager.instance.getDashboardBroadcaster().getExecutions(deviceIds);
+
             for (final Device device : devices) {
                 if (device == null) {
                     continue;
@@ -291,11 +342,10 @@ public class AdminDashboardView extends VerticalLayout implements View {
                 final HorizontalLayout deviceKeyValue = new HorizontalLayout();
                 deviceKeyValue.addStyleName("key-value");
 
-                final Execution runningExecution =
-                        WashportalManager.instance.getDataManager().getRunningExecution(device);
-                final Label statusLabel = new Label(runningExecution == null ? "Frei" : "Besetzt");
-                statusLabel.addStyleName("value " + (runningExecution == null ? "device-free" : "device-occupied"));
+                final Label statusLabel = new Label();
+                statusLabel.addStyleName("value");
                 deviceKeyValue.addComponent(statusLabel);
+                this.statusLabels.put(device.getId(), statusLabel);
                 titleCont.addComponent(deviceKeyValue);
 
                 devCont.addComponent(titleCont);
@@ -312,6 +362,7 @@ public class AdminDashboardView extends VerticalLayout implements View {
                 lastExeCont.addContainerProperty(USER_PROPERTY, String.class, "?");
                 lastExeCont.addContainerProperty(DURATION_PROPERTY, String.class, "");
                 lastExeCont.addContainerProperty(PRICE_PROPERTY, String.class, "");
+                lastExeCont.addContainerProperty(STYLE_PROPERTY, String.class, null);
                 tblLastExecutions.setContainerDataSource(lastExeCont);
 
                 tblLastExecutions.setColumnHeader(DATE_PROPERTY, "Datum");
@@ -319,59 +370,23 @@ public class AdminDashboardView extends VerticalLayout implements View {
                 tblLastExecutions.setColumnHeader(DURATION_PROPERTY, "Dauer");
                 tblLastExecutions.setColumnHeader(PRICE_PROPERTY, "Preis");
 
-                // Laufende Ausführung hervorheben.
-                tblLastExecutions.setCellStyleGenerator(new Table.CellStyleGenerator() {
-
-                    @Override
-                    public String getStyle(Table source, Object itemId, Object propertyId) {
-                        if (propertyId == null) {
-                            // Aussehen der Zeile
-                            final List<String> res = new Vector<>();
-                            try {
-                                final Execution execution =
-                                        WashportalManager.instance.getDataManager().getExecution((int) itemId);
-                                if (execution.isRunning()) {
-                                    res.add("running-execution");
-                                }
-                                if (execution.isExpired()) {
-                                    res.add("expired-execution");
-                                }
-                            } catch (final SQLException e) {
-                                AdminDashboardView.this.logger.error("Could not load the execution", e);
-                                WashportalManager.instance.showDatabaseError(e);
-                                return null;
-                            }
-                            return StringUtils.join(res, " ");
-                        } else {
-                            // Aussehen einer Zelle
-                            return null;
-                        }
-                    }
-                });
+                tblLastExecutions.setVisibleColumns(DATE_PROPERTY, USER_PROPERTY, DURATION_PROPERTY, PRICE_PROPERTY);
 
-                final DateTimeFormatter dateTimeFormat = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT);
-                final NumberFormat currencyFormat =
-                        NumberFormat.getCurrencyInstance(VaadinSession.getCurrent().getLocale());
-
-                for (final Execution e : WashportalManager.instance.getDataManager().getExecutions(device)) {
-                    final Item item = lastExeCont.addItem(e.getId());
-
-                    if (e.getStartDate() != null) {
-                        item.getItemProperty(DATE_PROPERTY).setValue(e.getStartDate().format(dateTimeFormat));
+                // Laufende Ausführung hervorheben. Der Stil wird beim Befüllen
+                // des Containers festgelegt.
+                tblLastExecutions.setCellStyleGenerator((source, itemId, propertyId) -> {
+                    if (propertyId == null) {
+                        // Aussehen der Zeile
+                        return (String) source.getContainerProperty(itemId, STYLE_PROPERTY).getValue();
                     } else {
-                        item.getItemProperty(DATE_PROPERTY).setValue("-");
+                        // Aussehen einer Zelle
+                        return null;
                     }
+                });
 
-                    if (e.getUser() != null) {
-                        item.getItemProperty(USER_PROPERTY).setValue(e.getUser().getName());
-                    } else {
-                        item.getItemProperty(USER_PROPERTY).setValue("-");
-                    }
-                    item.getItemProperty(DURATION_PROPERTY).setValue(
-                            DurationFormatUtils.formatDuration(e.getElapsedTime().getSeconds() * 1000, "HH:mm:ss") +
-                                    "h");
-                    item.getItemProperty(PRICE_PROPERTY).setValue(currencyFormat.format(e.getPrice()));
-                }
+                this.executionContainers.put(device.getId(), lastExeCont);
+                this.showExecutions(device.getId(),
+                        executions.getOrDefault(device.getId(), Collections.emptyList()));
 
                 devCont.addComponent(tblLastExecutions);
 
@@ -381,10 +396,96 @@ public class AdminDashboardView extends VerticalLayout implements View {
             }
 
             this.addComponent(container);
+            if (this.isAttached()) {
+                // Geänderte Geräteliste abonnieren
+                WashportalManager.instance.getDashboardBroadcaster().subscribe(this, deviceIds);
+            }
+        }
+
+        /**
+         * Zeigt den Status und die letzten Ausführungen eines Geräts an.
+         *
+         * @param deviceId
+         *            Die ID des Geräts
+         * @param deviceExecutions
+         *            Die letzten Ausführungen des Geräts, die neueste zuerst
+         */
+        private void showExecutions(int deviceId, List<ExecutionSummary> deviceExecutions) {
+            final Label statusLabel = this.statusLabels.get(deviceId);
+            final IndexedContainer lastExeCont = this.executionContainers.get(deviceId);
+            if (statusLabel == null || lastExeCont == null) {
+                return;
+            }
+
+            final boolean occupied = deviceExecutions.stream().anyMatch(ExecutionSummary::isRunning);
+            statusLabel.setValue(occupied ? "Besetzt" : "Frei");
+            statusLabel.removeStyleName(occupied ? "device-free" : "device-occupied");
+            statusLabel.addStyleName(occupied ? "device-occupied" : "device-free");
+
+            lastExeCont.removeAllItems();
+            final DateTimeFormatter dateTimeFormat = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT);
+            final NumberFormat currencyFormat =
+                    NumberFormat.getCurrencyInstance(VaadinSession.getCurrent().getLocale());
+
+            for (final ExecutionSummary e : deviceExecutions) {
+                final Item item = lastExeCont.addItem(e.getId());
+
+                if (e.getStartDate() != null) {
+                    item.getItemProperty(DATE_PROPERTY).setValue(e.getStartDate().format(dateTimeFormat));
+                } else {
+                    item.getItemProperty(DATE_PROPERTY).setValue("-");
+                }
+
+                if (e.getUserName() != null) {
+                    item.getItemProperty(USER_PROPERTY).setValue(e.getUserName());
+                } else {
+                    item.getItemProperty(USER_PROPERTY).setValue("-");
+                }
+                item.getItemProperty(DURATION_PROPERTY).setValue(
+                        DurationFormatUtils.formatDuration(e.getElapsedTime().getSeconds() * 1000, "HH:mm:ss") +
+                                "h");
+                item.getItemProperty(PRICE_PROPERTY).setValue(currencyFormat.format(e.getPrice()));
+
+                final List<String> styles = new Vector<>();
+                if (e.isRunning()) {
+                    styles.add("running-execution");
+                }
+                if (e.isExpired()) {
+                    styles.add("expired-execution");
+                }
+                item.getItemProperty(STYLE_PROPERTY).setValue(StringUtils.join(styles, " "));
+            }
+        }
+
+        @Override
+        public void attach() {
+            super.attach();
+            WashportalManager.instance.getDashboardBroadcaster().subscribe(this, this.statusLabels.keySet());
+        }
+
+        @Override
+        public void detach() {
+            WashportalManager.instance.getDashboardBroadcaster().unsubscribe(this);
+            super.detach();
+        }
+
+        @Override
+        public void onExecutionsChanged(Map<Integer, List<ExecutionSummary>> changed) {
+            final UI ui = this.getUI();
+            if (ui == null) {
+                WashportalManager.instance.getDashboardBroadcaster().unsubscribe(this);
+                return;
+            }
+            ui.access(() -> {
+                for (final Map.Entry<Integer, List<ExecutionSummary>> e : changed.entrySet()) {
+                    this.showExecutions(e.getKey(), e.getValue());
+                }
+            });
         }
 
         @Override
         public void onLocationUpdated(Location l) {
+            this.location = l;
             this.refresh();
         }
     }
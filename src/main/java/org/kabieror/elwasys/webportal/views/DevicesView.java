@@ -10,15 +10,18 @@ import com.vaadin.ui.*;
 import com.vaadin.ui.MenuBar.MenuItem;
 import com.vaadin.ui.Table.Align;
 import org.kabieror.elwasys.common.Device;
-import org.kabieror.elwasys.common.NoDataFoundException;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.kabieror.elwasys.webportal.components.ConfirmWindow;
 import org.kabieror.elwasys.webportal.components.DeviceWindow;
+import org.kabieror.elwasys.webportal.components.TableActions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Seite Geräte
@@ -41,7 +44,8 @@ public class DevicesView extends VerticalLayout implements View {
     private static final String POSITION_PROPERTY = "Position";
     private static final String NAME_PROPERTY = "Name";
     private static final String LOCATION_PROPERTY = "Standort";
-    private static final String BUTTONS_PROPERTY = "buttons";
+    private static final String EDIT_PROPERTY = "edit";
+    private static final String DELETE_PROPERTY = "delete";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -91,77 +95,9 @@ public class DevicesView extends VerticalLayout implements View {
         this.devicesTable.setColumnWidth(INDEX_PROPERTY, 40);
         this.devicesTable.setColumnWidth(POSITION_PROPERTY, 40);
 
-        this.devicesTable.addContainerProperty(BUTTONS_PROPERTY, CssLayout.class, null);
-        this.devicesTable.setColumnHeader(BUTTONS_PROPERTY, "");
-        this.devicesTable.setColumnWidth(BUTTONS_PROPERTY, 100);
-        this.devicesTable.setColumnAlignment(BUTTONS_PROPERTY, Align.CENTER);
-
-        this.devicesTable.addGeneratedColumn(BUTTONS_PROPERTY,
-                (Table source, Object itemId, Object columnId) -> {
-                    Device device;
-                    try {
-                        device = WashportalManager.instance.getDataManager()
-                                .getDevice((int) itemId);
-                    } catch (final SQLException e2) {
-                        this.logger.error("Could not load device to generate buttons for.", e2);
-                        WashportalManager.instance.showDatabaseError(e2);
-                        return null;
-                    }
-                    final CssLayout group = new CssLayout();
-                    group.addStyleName("v-component-group");
-
-                    final Button btnEdit = new Button("");
-                    group.addComponent(btnEdit);
-                    btnEdit.setIcon(FontAwesome.PENCIL_SQUARE_O);
-                    btnEdit.setDescription("Bearbeiten");
-                    btnEdit.addStyleName("small");
-                    btnEdit.addClickListener(e -> {
-                        try {
-                            final DeviceWindow win = new DeviceWindow(device);
-                            win.addDeviceUpdatedEventListener(d -> {
-                                this.updateDevice(d);
-                            });
-                            this.getUI().addWindow(win);
-                        } catch (final Exception e1) {
-                            this.logger.error("Could not load device to edit.", e1);
-                            WashportalManager.instance.showError("Interner Fehler",
-                                    "Ein fehler ist aufgetreten. " + e1.getLocalizedMessage());
-                        }
-                    });
-
-                    final Button btnDelete = new Button("");
-                    group.addComponent(btnDelete);
-                    btnDelete.setIcon(FontAwesome.TRASH_O);
-                    btnDelete.setDescription("Löschen");
-                    btnDelete.addStyleName("small danger");
-                    btnDelete.addClickListener(e -> {
-                        try {
-                            final ConfirmWindow win = new ConfirmWindow("Gerät löschen",
-                                    "Möchten Sie dieses Gerät wirklich löschen?<br><b>"
-                                            + device.getName() + "</b>",
-                                    () -> {
-                                try {
-                                    device.delete();
-                                } catch (final SQLException e1) {
-                                    this.logger.error("Could not delete device.", e1);
-                                    WashportalManager.instance.showDatabaseError(e1);
-                                    return;
-                                } catch (final Exception e1) {
-                                    this.logger.error("Could not delete device.", e1);
-                                    WashportalManager.instance.showError(e1);
-                                    return;
-                                }
-                                this.updateDevice(device);
-                            });
-                            this.getUI().addWindow(win);
-                        } catch (final Exception e1) {
-                            this.logger.error("Could not load program to delete.", e1);
-                            WashportalManager.instance.showError(e1);
-                        }
-                    });
-
-                    return group;
-                });
+        final TableActions actions = new TableActions(this.devicesTable);
+        actions.addAction(EDIT_PROPERTY, "action-edit", "Bearbeiten", itemId -> this.editDevice((int) itemId));
+        actions.addAction(DELETE_PROPERTY, "action-delete", "Löschen", itemId -> this.deleteDevice((int) itemId));
 
         this.setExpandRatio(this.devicesTable, 1);
     }
@@ -174,13 +110,24 @@ public class DevicesView extends VerticalLayout implements View {
     private void loadData() {
         List<Device> devices;
         try {
-            devices = WashportalManager.instance.getDataManager().getDevices();
+            devices = WashportalManager.instance.getEntityCache().getDevices();
         } catch (final SQLException e) {
             this.logger.error("Could not load the devices to display.", e);
             WashportalManager.instance.showDatabaseError(e);
             return;
         }
 
+        // Gelöschte Geräte entfernen
+        final Set<Integer> ids = new HashSet<>();
+        for (final Device d : devices) {
+            ids.add(d.getId());
+        }
+        for (final Object id : new ArrayList<>(this.devicesContainer.getItemIds())) {
+            if (!ids.contains(id)) {
+                this.devicesContainer.removeItem(id);
+            }
+        }
+
         for (final Device d : devices) {
             this.updateDevice(d);
         }
@@ -192,19 +139,6 @@ public class DevicesView extends VerticalLayout implements View {
             return;
         }
 
-        try {
-            d.update();
-        } catch (final SQLException e) {
-            this.logger.error("Could not update the device to display.");
-            return;
-        } catch (final NoDataFoundException e) {
-            // Gerät wurde gelöscht
-            if (this.devicesContainer.containsId(d.getId())) {
-                this.devicesContainer.removeItem(d.getId());
-            }
-            return;
-        }
-
         Item i;
         if (this.devicesContainer.containsId(d.getId())) {
             i = this.devicesContainer.getItem(d.getId());
@@ -221,6 +155,64 @@ public class DevicesView extends VerticalLayout implements View {
         i.getItemProperty(LOCATION_PROPERTY).setValue(d.getLocation().getName());
     }
 
+    /**
+     * Öffnet das Fenster zum Bearbeiten eines Geräts.
+     *
+     * @param deviceId
+     *            Die ID des zu bearbeitenden Geräts
+     */
+    private void editDevice(int deviceId) {
+        try {
+            final Device device = WashportalManager.instance.getDataManager().getDevice(deviceId);
+            final DeviceWindow win = new DeviceWindow(device);
+            win.addDeviceUpdatedEventListener(d -> {
+                this.updateDevice(d);
+            });
+            this.getUI().addWindow(win);
+        } catch (final SQLException e) {
+            this.logger.error("Could not load device to edit.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        } catch (final Exception e) {
+            this.logger.error("Could not load device to edit.", e);
+            WashportalManager.instance.showError("Interner Fehler",
+                    "Ein fehler ist aufgetreten. " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Löscht ein Gerät nach Rückfrage.
+     *
+     * @param deviceId
+     *            Die ID des zu löschenden Geräts
+     */
+    private void deleteDevice(int deviceId) {
+        final Device device;
+        try {
+            device = WashportalManager.instance.getDataManager().getDevice(deviceId);
+        } catch (final SQLException e) {
+            this.logger.error("Could not load device to delete.", e);
+            WashportalManager.instance.showDatabaseError(e);
+            return;
+        }
+        final ConfirmWindow win = new ConfirmWindow("Gerät löschen",
+                "Möchten Sie dieses Gerät wirklich löschen?<br><b>" + device.getName() + "</b>", () -> {
+            try {
+                device.delete();
+            } catch (final SQLException e1) {
+                this.logger.error("Could not delete device.", e1);
+                WashportalManager.instance.showDatabaseError(e1);
+                return;
+            } catch (final Exception e1) {
+                this.logger.error("Could not delete device.", e1);
+                WashportalManager.instance.showError(e1);
+                return;
+            }
+            WashportalManager.instance.getEntityCache().onDeviceUpdated(device);
+            this.devicesContainer.removeItem(device.getId());
+        });
+        this.getUI().addWindow(win);
+    }
+
     private void newDevice() {
         final DeviceWindow win = new DeviceWindow();
         win.addDeviceUpdatedEventListener((d) -> this.updateDevice(d));
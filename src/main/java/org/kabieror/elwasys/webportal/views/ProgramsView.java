@@ -10,16 +10,19 @@ import com.vaadin.ui.*;
 import com.vaadin.ui.MenuBar.MenuItem;
 import com.vaadin.ui.Table.Align;
 import org.kabieror.elwasys.common.Device;
-import org.kabieror.elwasys.common.NoDataFoundException;
 import org.kabieror.elwasys.common.Program;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.kabieror.elwasys.webportal.components.ConfirmWindow;
 import org.kabieror.elwasys.webportal.components.ProgramWindow;
+import org.kabieror.elwasys.webportal.components.TableActions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Seite: Programme
@@ -41,7 +44,8 @@ public class ProgramsView extends VerticalLayout implements View {
     private static final String NAME_PROPERTY = "Name";
     private static final String TYPE_PROPERTY = "Typ";
     private static final String PRICE_PROPERTY = "Preis";
-    private static final String BUTTONS_PROPERTY = "buttons";
+    private static final String EDIT_PROPERTY = "edit";
+    private static final String DELETE_PROPERTY = "delete";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final Table programsTable;
     private final IndexedContainer programsContainer;
@@ -87,90 +91,9 @@ public class ProgramsView extends VerticalLayout implements View {
         this.programsTable.setColumnAlignment(ICON_PROPERTY, Align.CENTER);
         this.programsTable.setColumnWidth(INDEX_PROPERTY, 40);
 
-        this.programsTable.addContainerProperty(BUTTONS_PROPERTY, CssLayout.class, null);
-        this.programsTable.addGeneratedColumn(BUTTONS_PROPERTY,
-                (Table source, Object itemId, Object columnId) -> {
-                    Program program;
-                    try {
-                        program = WashportalManager.instance.getDataManager()
-                                .getProgramById((int) itemId);
-                    } catch (final SQLException e2) {
-                        this.logger.error("Could not load program to generate buttons for.", e2);
-                        WashportalManager.instance.showDatabaseError(e2);
-                        return null;
-                    }
-                    final CssLayout group = new CssLayout();
-                    group.addStyleName("v-component-group");
-
-                    final Button btnEdit = new Button("");
-                    group.addComponent(btnEdit);
-                    btnEdit.setIcon(FontAwesome.PENCIL_SQUARE_O);
-                    btnEdit.setDescription("Bearbeiten");
-                    btnEdit.addStyleName("small");
-                    btnEdit.addClickListener(e -> {
-                        try {
-                            final ProgramWindow win = new ProgramWindow(program);
-                            win.addProgramUpdatedEventListener(p -> {
-                                this.updateProgram(p);
-                            });
-                            this.getUI().addWindow(win);
-                        } catch (final Exception e1) {
-                            this.logger.error("Could not load program to edit.", e1);
-                            WashportalManager.instance.showError(e1);
-                        }
-                    });
-
-                    final Button btnDelete = new Button("");
-                    group.addComponent(btnDelete);
-                    btnDelete.setIcon(FontAwesome.TRASH_O);
-                    btnDelete.setDescription("Löschen");
-                    btnDelete.addStyleName("small danger");
-                    btnDelete.addClickListener(e -> {
-                        try {
-                            // Lade Geräte, die dieses Programm
-                            // verwenden
-                            final List<Device> devices =
-                                    WashportalManager.instance.getDataManager().getDevices(program);
-                            if (devices.isEmpty()) {
-                                final ConfirmWindow win = new ConfirmWindow("Programm löschen",
-                                        "Möchten Sie dieses Programm wirklich löschen?<br><b>"
-                                                + program.getName() + "</b>",
-                                        () -> {
-                                    try {
-                                        program.delete();
-                                    } catch (final SQLException e1) {
-                                        this.logger.error("Could not delete program.", e1);
-                                        WashportalManager.instance.showDatabaseError(e1);
-                                        return;
-                                    } catch (final Exception e1) {
-                                        this.logger.error("Could not delete program.", e1);
-                                        WashportalManager.instance.showError(e1);
-                                        return;
-                                    }
-                                    this.updateProgram(program);
-                                });
-                                this.getUI().addWindow(win);
-                            } else {
-                                WashportalManager.instance.showError(
-                                        "Programm kann kann nicht gelöscht werden.",
-                                        "Das Programm <b>" + program.getName()
-                                                + "</b> ist noch auf " + devices.size()
-                                                + " Gerät(en) verfügbar.");
-                            }
-                        } catch (final SQLException e1) {
-                            this.logger.error("Could not load program to delete.", e1);
-                            WashportalManager.instance.showDatabaseError(e1);
-                        } catch (final Exception e1) {
-                            this.logger.error("Could not load program to delete.", e1);
-                            WashportalManager.instance.showError(e1);
-                        }
-                    });
-
-                    return group;
-                });
-        this.programsTable.setColumnHeader(BUTTONS_PROPERTY, "");
-        this.programsTable.setColumnWidth(BUTTONS_PROPERTY, 100);
-        this.programsTable.setColumnAlignment(BUTTONS_PROPERTY, Align.CENTER);
+        final TableActions actions = new TableActions(this.programsTable);
+        actions.addAction(EDIT_PROPERTY, "action-edit", "Bearbeiten", itemId -> this.editProgram((int) itemId));
+        actions.addAction(DELETE_PROPERTY, "action-delete", "Löschen", itemId -> this.deleteProgram((int) itemId));
 
         this.setExpandRatio(this.programsTable, 1);
     }
@@ -184,13 +107,24 @@ public class ProgramsView extends VerticalLayout implements View {
         List<Program> programs;
 
         try {
-            programs = WashportalManager.instance.getDataManager().getPrograms();
+            programs = WashportalManager.instance.getEntityCache().getPrograms();
         } catch (final SQLException e) {
             this.logger.error("Error while catching the available programs from the database", e);
             WashportalManager.instance.showDatabaseError(e);
             return;
         }
 
+        // Gelöschte Programme entfernen
+        final Set<Integer> ids = new HashSet<>();
+        for (final Program p : programs) {
+            ids.add(p.getId());
+        }
+        for (final Object id : new ArrayList<>(this.programsContainer.getItemIds())) {
+            if (!ids.contains(id)) {
+                this.programsContainer.removeItem(id);
+            }
+        }
+
         for (final Program p : programs) {
             this.updateProgram(p);
         }
@@ -208,19 +142,6 @@ public class ProgramsView extends VerticalLayout implements View {
             return;
         }
 
-        try {
-            p.update();
-        } catch (final SQLException e) {
-            this.logger.error("Could not update program to display");
-            return;
-        } catch (final NoDataFoundException e) {
-            // Programm wurde gelöscht
-            if (this.programsContainer.containsId(p.getId())) {
-                this.programsContainer.removeItem(p.getId());
-            }
-            return;
-        }
-
         Item i;
         if (this.programsContainer.containsId(p.getId())) {
             i = this.programsContainer.getItem(p.getId());
@@ -272,6 +193,73 @@ public class ProgramsView extends VerticalLayout implements View {
         i.getItemProperty(PRICE_PROPERTY).setValue(price);
     }
 
+    /**
+     * Öffnet das Fenster zum Bearbeiten eines Programms
+     *
+     * @param programId
+     *            Die ID des zu bearbeitenden Programms
+     */
+    private void editProgram(int programId) {
+        try {
+            final Program program = WashportalManager.instance.getDataManager().getProgramById(programId);
+            final ProgramWindow win = new ProgramWindow(program);
+            win.addProgramUpdatedEventListener(p -> {
+                this.updateProgram(p);
+            });
+            this.getUI().addWindow(win);
+        } catch (final SQLException e) {
+            this.logger.error("Could not load program to edit.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        } catch (final Exception e) {
+            this.logger.error("Could not load program to edit.", e);
+            WashportalManager.instance.showError(e);
+        }
+    }
+
+    /**
+     * Löscht ein Programm nach Rückfrage, sofern es auf keinem Gerät mehr
+     * verfügbar ist
+     *
+     * @param programId
+     *            Die ID des zu löschenden Programms
+     */
+    private void deleteProgram(int programId) {
+        try {
+            final Program program = WashportalManager.instance.getDataManager().getProgramById(programId);
+            // Lade Geräte, die dieses Programm verwenden
+            final List<Device> devices = WashportalManager.instance.getDataManager().getDevices(program);
+            if (devices.isEmpty()) {
+                final ConfirmWindow win = new ConfirmWindow("Programm löschen",
+                        "Möchten Sie dieses Programm wirklich löschen?<br><b>" + program.getName() + "</b>", () -> {
+                    try {
+                        program.delete();
+                    } catch (final SQLException e1) {
+                        this.logger.error("Could not delete program.", e1);
+                        WashportalManager.instance.showDatabaseError(e1);
+                        return;
+                    } catch (final Exception e1) {
+                        this.logger.error("Could not delete program.", e1);
+                        WashportalManager.instance.showError(e1);
+                        return;
+                    }
+                    WashportalManager.instance.getEntityCache().onProgramUpdated(program);
+                    this.programsContainer.removeItem(program.getId());
+                });
+                this.getUI().addWindow(win);
+            } else {
+                WashportalManager.instance.showError("Programm kann kann nicht gelöscht werden.",
+                        "Das Programm <b>" + program.getName() + "</b> ist noch auf " + devices.size()
+                                + " Gerät(en) verfügbar.");
+            }
+        } catch (final SQLException e) {
+            this.logger.error("Could not load program to delete.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        } catch (final Exception e) {
+            this.logger.error("Could not load program to delete.", e);
+            WashportalManager.instance.showError(e);
+        }
+    }
+
     /**
      * Ã–ffnet ein Fenster zum Erstellen eines neuen Programms
      */
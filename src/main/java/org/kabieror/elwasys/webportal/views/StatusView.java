@@ -0,0 +1,254 @@
+package org.kabieror.elwasys.webportal.views;
+
+import com.vaadin.data.Item;
+import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
+import com.vaadin.server.FontAwesome;
+import com.vaadin.ui.*;
+import com.vaadin.ui.Table.Align;
+import org.kabieror.elwasys.common.Location;
+import org.kabieror.elwasys.webportal.MailQueue;
+import org.kabieror.elwasys.webportal.MaintenanceConnectionManager;
+import org.kabieror.elwasys.webportal.PasswordVerifier;
+import org.kabieror.elwasys.webportal.WashportalManager;
+import org.kabieror.elwasys.webportal.data.ConnectionPool;
+import org.kabieror.elwasys.webportal.data.EntityCache;
+import org.kabieror.elwasys.webportal.data.PortalDatabase;
+import org.kabieror.elwasys.webportal.maintenance.ClientHealth;
+import org.kabieror.elwasys.webportal.maintenance.ClientMetrics;
+import org.kabieror.elwasys.webportal.maintenance.FleetHealthMonitor;
+import org.kabieror.elwasys.webportal.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Seite mit den Messwerten der Wartungsverbindungen zu den Clients der
+ * Standorte, der Datenbank und der Warteschlange für ausgehende Emails. Die
+ * Antwortzeiten helfen dabei, die Fristen der Anfragen passend zu wählen.
+ *
+ * @author Oliver Kabierschke
+ */
+public class StatusView extends VerticalLayout implements View {
+    /**
+     * Der Name des Views, der in der Adresszeile angezeigt wird
+     */
+    public static final String VIEW_NAME = "status";
+    static final String LOCATION_PROPERTY = "Standort";
+    static final String CONNECTION_PROPERTY = "Verbindung";
+    static final String CALLS_PROPERTY = "Anfragen";
+    static final String P50_PROPERTY = "p50";
+    static final String P95_PROPERTY = "p95";
+    static final String P99_PROPERTY = "p99";
+    static final String MAX_PROPERTY = "Max";
+    static final String FAILURES_PROPERTY = "Fehler";
+    static final String TIMEOUTS_PROPERTY = "Fristüberschreitungen";
+    static final String HEARTBEATS_PROPERTY = "Prüfungen verpasst";
+    static final String RECONNECTS_PROPERTY = "Neu verbunden";
+    static final String BYTES_PROPERTY = "Empfangen";
+
+    private static final long serialVersionUID = 1L;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Label lblSummary;
+
+    private final Label lblMail;
+
+    private final Label lblDatabase;
+
+    private final Label lblLogin;
+
+    private final IndexedContainer container;
+
+    public StatusView() {
+        this.setMargin(true);
+        this.setSpacing(true);
+        this.setSizeFull();
+
+        // 1. Menüleiste erstellen
+        final HorizontalLayout topLayout = new HorizontalLayout();
+        topLayout.setWidth("100%");
+        final Label title = new Label("Status");
+        title.addStyleName("h1");
+        topLayout.addComponent(title);
+
+        final MenuBar menuBar = new MenuBar();
+        final MenuBar.MenuItem menuRefresh = menuBar.addItem("Aktualisieren", i -> this.loadData());
+        menuRefresh.setIcon(FontAwesome.REFRESH);
+
+        topLayout.addComponent(menuBar);
+        topLayout.setComponentAlignment(menuBar, Alignment.BOTTOM_RIGHT);
+        topLayout.setExpandRatio(menuBar, 2);
+        topLayout.setExpandRatio(title, 1);
+        this.addComponent(topLayout);
+
+        this.lblSummary = new Label();
+        this.addComponent(this.lblSummary);
+
+        this.lblMail = new Label();
+        this.addComponent(this.lblMail);
+
+        this.lblDatabase = new Label();
+        this.addComponent(this.lblDatabase);
+
+        this.lblLogin = new Label();
+        this.addComponent(this.lblLogin);
+
+        // 2. Tabelle der Wartungsverbindungen erstellen
+        this.container = new IndexedContainer();
+        this.container.addContainerProperty(LOCATION_PROPERTY, String.class, null);
+        this.container.addContainerProperty(CONNECTION_PROPERTY, String.class, null);
+        this.container.addContainerProperty(CALLS_PROPERTY, Long.class, 0L);
+        this.container.addContainerProperty(P50_PROPERTY, String.class, "-");
+        this.container.addContainerProperty(P95_PROPERTY, String.class, "-");
+        this.container.addContainerProperty(P99_PROPERTY, String.class, "-");
+        this.container.addContainerProperty(MAX_PROPERTY, String.class, "-");
+        this.container.addContainerProperty(FAILURES_PROPERTY, Long.class, 0L);
+        this.container.addContainerProperty(TIMEOUTS_PROPERTY, Long.class, 0L);
+        this.container.addContainerProperty(HEARTBEATS_PROPERTY, String.class, "-");
+        this.container.addContainerProperty(RECONNECTS_PROPERTY, Long.class, 0L);
+        this.container.addContainerProperty(BYTES_PROPERTY, String.class, "-");
+
+        final Table table = new Table(null, this.container);
+        table.setSizeFull();
+        table.setSelectable(false);
+        for (final Object p : this.container.getContainerPropertyIds()) {
+            if (!LOCATION_PROPERTY.equals(p) && !CONNECTION_PROPERTY.equals(p)) {
+                table.setColumnAlignment(p, Align.RIGHT);
+            }
+        }
+        this.addComponent(table);
+        this.setExpandRatio(table, 1);
+    }
+
+    @Override
+    public void enter(ViewChangeEvent event) {
+        this.loadData();
+    }
+
+    /**
+     * Liest die aktuellen Messwerte aus.
+     */
+    @SuppressWarnings("unchecked")
+    private void loadData() {
+        this.container.removeAllItems();
+        this.loadMailStatus();
+        this.loadDatabaseStatus();
+        this.loadLoginStatus();
+        final MaintenanceConnectionManager manager = WashportalManager.instance.getMaintenanceConnectionManager();
+        if (manager == null) {
+            this.lblSummary.setValue("Der Wartungsserver ist nicht verfügbar.");
+            return;
+        }
+        this.lblSummary.setValue(String.format("Frist je Anfrage: %d s, laufende Anfragen: %d, wartende Anfragen: %d",
+                manager.getCallTimeout() / 1000, manager.getActiveCalls(), manager.getQueuedCalls()));
+
+        final Map<String, ClientMetrics> metrics = manager.getMetrics().getClients();
+        final FleetHealthMonitor monitor = WashportalManager.instance.getFleetHealthMonitor();
+        try {
+            for (final Location l : WashportalManager.instance.getEntityCache().getLocations()) {
+                final Item i = this.container.addItem(l.getName());
+                i.getItemProperty(LOCATION_PROPERTY).setValue(l.getName());
+                final ClientHealth health = monitor != null ? monitor.getHealth(l) : null;
+                i.getItemProperty(CONNECTION_PROPERTY).setValue(
+                        health == null ? "Unbekannt" : health.isHealthy() ? "OK"
+                                : health.isConnected() ? "Nicht erreichbar" : "Fehler");
+                final ClientMetrics m = metrics.get(l.getName());
+                if (m != null) {
+                    this.fillItem(i, m);
+                }
+            }
+        } catch (final SQLException e) {
+            this.logger.error("Could not load the locations.", e);
+            WashportalManager.instance.showDatabaseError(e);
+        }
+    }
+
+    private void loadMailStatus() {
+        final MailQueue queue = WashportalManager.instance.getMailQueue();
+        if (!queue.isQueued()) {
+            this.lblMail.setValue("Emails: synchroner Versand ohne Wiederholung, die Tabelle mail_outbox fehlt");
+            return;
+        }
+        int[] depth = null;
+        try {
+            depth = queue.getQueueDepth();
+        } catch (final SQLException e) {
+            this.logger.error("Could not count the outgoing emails.", e);
+        }
+        final LatencyHistogram latency = queue.getSendLatency();
+        this.lblMail.setValue(String.format("Emails: %s wartend, %s aufgegeben, %d versandt, %d Fehlversuche, "
+                        + "%d Verbindungen, Übergabe p95: %s, Zustellung p95: %s",
+                depth != null ? String.valueOf(depth[0]) : "?", depth != null ? String.valueOf(depth[1]) : "?",
+                queue.getSentCount(), queue.getFailureCount(), queue.getConnectionCount(),
+                latency.getCount() > 0 ? this.formatMillis(latency.getQuantileMillis(0.95)) : "-",
+                queue.getDeliveryDelay().getCount() > 0
+                        ? this.formatMillis(queue.getDeliveryDelay().getQuantileMillis(0.95)) : "-"));
+    }
+
+    private void loadDatabaseStatus() {
+        final PortalDatabase database = WashportalManager.instance.getPortalDataManager().getDatabase();
+        String status = "Datenbank: " + this.formatPool(database.getPool());
+        if (database.getReplicaPool() != null) {
+            status += "; Replikat: " + this.formatPool(database.getReplicaPool()) + ", Rückstand: "
+                    + (database.getReplicaLagMillis() >= 0 ? this.formatMillis(database.getReplicaLagMillis())
+                    : "unbekannt") + (database.isReplicaAvailable() ? ", genutzt" : ", nicht genutzt");
+        }
+        final EntityCache cache = WashportalManager.instance.getEntityCache();
+        status += String.format("; Zwischenspeicher: %d Einträge, %.0f %% Treffer (%d / %d)", cache.getSize(),
+                cache.getHitRate() * 100, cache.getHits(), cache.getHits() + cache.getMisses());
+        this.lblDatabase.setValue(status);
+    }
+
+    private void loadLoginStatus() {
+        final PasswordVerifier verifier = WashportalManager.instance.getPasswordVerifier();
+        this.lblLogin.setValue(String.format("Anmeldungen: %d wartend, %d laufend, %d geprüft, %d gesperrt, "
+                        + "%d wegen Überlastung abgewiesen, Prüfdauer Mittel: %s, Max: %s",
+                verifier.getQueueDepth(), verifier.getActiveCount(), verifier.getVerificationCount(),
+                verifier.getThrottledCount(), verifier.getRejectedCount(),
+                this.formatMillis(verifier.getAverageHashMillis()), this.formatMillis(verifier.getMaxHashMillis())));
+    }
+
+    private String formatPool(ConnectionPool pool) {
+        final LatencyHistogram acquire = pool.getAcquireLatency();
+        return String.format("%d von %d Verbindungen belegt, %d frei, %d wartend, Wartezeit p95: %s, "
+                        + "Statement-Cache %.0f %% Treffer",
+                pool.getActiveCount(), pool.getMaxSize(), pool.getIdleCount(), pool.getWaitingCount(),
+                acquire.getCount() > 0 ? this.formatMillis(acquire.getQuantileMillis(0.95)) : "-",
+                pool.getStatementCacheHitRate() * 100);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fillItem(Item i, ClientMetrics m) {
+        final LatencyHistogram h = m.getRoundTrip();
+        i.getItemProperty(CALLS_PROPERTY).setValue(h.getCount());
+        if (h.getCount() > 0) {
+            i.getItemProperty(P50_PROPERTY).setValue(this.formatMillis(h.getQuantileMillis(0.5)));
+            i.getItemProperty(P95_PROPERTY).setValue(this.formatMillis(h.getQuantileMillis(0.95)));
+            i.getItemProperty(P99_PROPERTY).setValue(this.formatMillis(h.getQuantileMillis(0.99)));
+            i.getItemProperty(MAX_PROPERTY).setValue(this.formatMillis(h.getMaxMillis()));
+        }
+        i.getItemProperty(FAILURES_PROPERTY).setValue(m.getFailures());
+        i.getItemProperty(TIMEOUTS_PROPERTY).setValue(m.getTimeouts());
+        i.getItemProperty(HEARTBEATS_PROPERTY).setValue(m.getHeartbeatMisses() + " / " + m.getHeartbeats());
+        i.getItemProperty(RECONNECTS_PROPERTY).setValue(m.getReconnects());
+        i.getItemProperty(BYTES_PROPERTY).setValue(this.formatBytes(m.getBytesIn()));
+    }
+
+    private String formatMillis(double millis) {
+        return millis < 1000 ? String.format("%.0f ms", millis) : String.format("%.1f s", millis / 1000);
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / 1024.0 / 1024.0);
+    }
+}
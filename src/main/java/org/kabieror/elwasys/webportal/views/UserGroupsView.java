@@ -11,7 +11,6 @@ import com.vaadin.ui.*;
 import com.vaadin.ui.MenuBar.MenuItem;
 import com.vaadin.ui.Table.Align;
 import org.kabieror.elwasys.common.FormatUtilities;
-import org.kabieror.elwasys.common.NoDataFoundException;
 import org.kabieror.elwasys.common.UserGroup;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.kabieror.elwasys.webportal.components.ConfirmWindow;
@@ -154,7 +153,7 @@ public class UserGroupsView extends VerticalLayout implements View, IUserGroupUp
 
         List<UserGroup> groups;
         try {
-            groups = WashportalManager.instance.getDataManager().getUserGroups();
+            groups = WashportalManager.instance.getEntityCache().getUserGroups();
         } catch (final SQLException e) {
             this.logger.error("Error while catching the available user groups from the database", e);
             WashportalManager.instance.showDatabaseError(e);
@@ -174,13 +173,6 @@ public class UserGroupsView extends VerticalLayout implements View, IUserGroupUp
      */
     @SuppressWarnings("unchecked")
     private void fillItemWithUserGroupData(Item i, UserGroup g) {
-        try {
-            g.update();
-        } catch (NoDataFoundException | SQLException e2) {
-            this.logger.error("Could not fill user groups table with data.", e2);
-            return;
-        }
-
         final Label lblIcon = new Label(FontAwesome.USERS.getHtml(), ContentMode.HTML);
         lblIcon.setStyleName("icon-group-normal");
 
@@ -220,6 +212,7 @@ public class UserGroupsView extends VerticalLayout implements View, IUserGroupUp
                         "derzeit zugewiesen ist, wird die Standardgruppe zugewiesen.", g.getName()), () -> {
             try {
                 g.delete();
+                WashportalManager.instance.getEntityCache().onUserGroupUpdated(g);
                 this.groupsContainer.removeItem(g.getId());
             } catch (final SQLException e) {
                 this.logger.error("Could not delete the user group " + g.getId() + ".", e);
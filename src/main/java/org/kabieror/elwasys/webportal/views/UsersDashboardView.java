@@ -1,7 +1,5 @@
 package org.kabieror.elwasys.webportal.views;
 
-import com.vaadin.data.Item;
-import com.vaadin.data.util.IndexedContainer;
 import com.vaadin.data.util.converter.StringToBigDecimalConverter;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
@@ -14,16 +12,18 @@ import org.kabieror.elwasys.common.NoDataFoundException;
 import org.kabieror.elwasys.common.User;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.kabieror.elwasys.webportal.components.StringToLocalDateTimeConverter;
+import org.kabieror.elwasys.webportal.data.ChangeEvent;
+import org.kabieror.elwasys.webportal.data.ChangeFeed;
+import org.kabieror.elwasys.webportal.data.PagedAccountingContainer;
+import org.kabieror.elwasys.webportal.events.IDatabaseChangedEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.text.NumberFormat;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -32,14 +32,14 @@ import java.util.Locale;
  * @author Oliver Kabierschke
  *
  */
-public class UsersDashboardView extends VerticalLayout implements View {
+public class UsersDashboardView extends VerticalLayout implements View, IDatabaseChangedEventListener {
     /**
      * Der Name des Views, der in der Adresszeile angezeigt wird
      */
     public static final String VIEW_NAME = "dashboard";
-    static final String DATE_PROPERTY = "Datum";
-    static final String TEXT_PROPERTY = "Text";
-    static final String VALUE_PROPERTY = "Wert";
+    static final String DATE_PROPERTY = PagedAccountingContainer.DATE_PROPERTY;
+    static final String TEXT_PROPERTY = PagedAccountingContainer.TEXT_PROPERTY;
+    static final String VALUE_PROPERTY = PagedAccountingContainer.AMOUNT_PROPERTY;
     /**
      *
      */
@@ -47,8 +47,10 @@ public class UsersDashboardView extends VerticalLayout implements View {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final User user;
     private final Label creditLabel;
+    private final Label creditSparkLabel;
     private final Table accountingTable;
-    private final IndexedContainer accountingContainer;
+    private final PagedAccountingContainer accountingContainer;
+    private final Button btnLoadOlder;
     private final StringToBigDecimalConverter bigDecimalConverter =
             new StringToBigDecimalConverter() {
                 /**
@@ -80,11 +82,9 @@ public class UsersDashboardView extends VerticalLayout implements View {
 
         final CssLayout creditPane = new CssLayout();
         creditPane.addStyleName("spark");
-        final Label creditLabel =
-                new Label(FormatUtilities
-                        .formatCurrency(this.user.getCredit()));
-        creditLabel.addStyleName("huge");
-        creditPane.addComponent(creditLabel);
+        this.creditSparkLabel = new Label();
+        this.creditSparkLabel.addStyleName("huge");
+        creditPane.addComponent(this.creditSparkLabel);
 
         final Label creditCaptionLabel = new Label("Guthaben");
         creditCaptionLabel.addStyleName("small light");
@@ -134,10 +134,7 @@ public class UsersDashboardView extends VerticalLayout implements View {
         this.accountingTable.setMultiSelect(false);
         this.accountingTable.setSelectable(false);
 
-        this.accountingContainer = new IndexedContainer();
-        this.accountingContainer.addContainerProperty(DATE_PROPERTY, LocalDateTime.class, null);
-        this.accountingContainer.addContainerProperty(VALUE_PROPERTY, BigDecimal.class, null);
-        this.accountingContainer.addContainerProperty(TEXT_PROPERTY, String.class, null);
+        this.accountingContainer = new PagedAccountingContainer(this.user.getId());
 
         this.accountingTable.setContainerDataSource(this.accountingContainer);
         this.accountingTable.setColumnWidth(DATE_PROPERTY, 150);
@@ -159,11 +156,23 @@ public class UsersDashboardView extends VerticalLayout implements View {
             }
         });
 
+        this.btnLoadOlder = new Button("Ältere Buchungen laden");
+        body.addComponent(this.btnLoadOlder);
+        this.btnLoadOlder.addStyleName("small");
+        this.btnLoadOlder.addClickListener(e -> {
+            try {
+                this.accountingContainer.loadOlder();
+            } catch (final SQLException e1) {
+                this.logger.error("Could not load older accounting entries.", e1);
+                WashportalManager.instance.showDatabaseError(e1);
+            }
+            this.btnLoadOlder.setVisible(this.accountingContainer.hasOlder());
+        });
     }
 
     @Override
     public void enter(ViewChangeEvent event) {
-        this.loadData(1);
+        this.loadData();
     }
 
     /**
@@ -171,7 +180,7 @@ public class UsersDashboardView extends VerticalLayout implements View {
      *
      * @throws SQLException
      */
-    private void loadData(int page) {
+    private void loadData() {
         try {
             this.user.update();
         } catch (final NoDataFoundException e2) {
@@ -185,25 +194,75 @@ public class UsersDashboardView extends VerticalLayout implements View {
             return;
         }
 
-        this.creditLabel.setValue(this.bigDecimalConverter.convertToPresentation(
-                this.user.getCredit(), String.class, VaadinSession.getCurrent().getLocale()));
+        this.loadAccounting(false);
+    }
 
+    /**
+     * Lädt das Guthaben und die neuesten Buchungen des Benutzers.
+     *
+     * @param primary
+     *            True, um die primäre Datenbank abzufragen. Nach einer
+     *            Änderungsmeldung kennt ein Replikat die Änderung eventuell
+     *            noch nicht.
+     */
+    private void loadAccounting(boolean primary) {
+        try {
+            final BigDecimal credit = WashportalManager.instance.getPortalDataManager()
+                    .getCredit(this.user.getId(), primary);
+            this.creditSparkLabel.setValue(FormatUtilities.formatCurrency(credit));
+            this.creditLabel.setValue(this.bigDecimalConverter.convertToPresentation(credit, String.class,
+                    VaadinSession.getCurrent().getLocale()));
+        } catch (final SQLException e) {
+            WashportalManager.instance.showDatabaseError(e);
+            this.logger.error("Could not load the credit of the user", e);
+        }
 
-        // Einträge in Konto-Tabelle
-        List<CreditAccountingEntry> entries;
+
+        // Einträge in Konto-Tabelle, zunächst nur die neueste Seite
         try {
-            entries = WashportalManager.instance.getDataManager().getAccountingEntries(this.user);
-            this.accountingContainer.removeAllItems();
-            for (final CreditAccountingEntry e : entries) {
-                final Item i = this.accountingContainer.addItem(e.getId());
-                i.getItemProperty(DATE_PROPERTY).setValue(e.getDate());
-                i.getItemProperty(VALUE_PROPERTY).setValue(e.getAmount());
-                i.getItemProperty(TEXT_PROPERTY).setValue(e.getDescription());
-            }
+            this.accountingContainer.loadFirstPage(primary);
         } catch (final SQLException e1) {
             this.logger.error("Could not load user accounting entries.", e1);
             WashportalManager.instance.showDatabaseError(e1);
         }
+        this.btnLoadOlder.setVisible(this.accountingContainer.hasOlder());
     }
 
+    @Override
+    public void attach() {
+        super.attach();
+        final ChangeFeed feed = WashportalManager.instance.getChangeFeed();
+        if (feed != null) {
+            feed.addListener(this);
+        }
+    }
+
+    @Override
+    public void detach() {
+        final ChangeFeed feed = WashportalManager.instance.getChangeFeed();
+        if (feed != null) {
+            feed.removeListener(this);
+        }
+        super.detach();
+    }
+
+    @Override
+    public void onDatabaseChanged(ChangeEvent e) {
+        if (e.getTable() == ChangeEvent.Table.ACCOUNTING
+                && Integer.valueOf(this.user.getId()).equals(e.getRelatedId())) {
+            this.reloadAccountingAsync();
+        }
+    }
+
+    @Override
+    public void onChangesMissed() {
+        this.reloadAccountingAsync();
+    }
+
+    private void reloadAccountingAsync() {
+        final UI ui = this.getUI();
+        if (ui != null) {
+            ui.access(() -> this.loadAccounting(true));
+        }
+    }
 }
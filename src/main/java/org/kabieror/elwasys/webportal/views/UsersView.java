@@ -1,29 +1,26 @@
 package org.kabieror.elwasys.webportal.views;
 
-import com.vaadin.data.Container;
-import com.vaadin.data.Item;
-import com.vaadin.data.util.IndexedContainer;
 import com.vaadin.data.util.converter.StringToBigDecimalConverter;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
 import com.vaadin.server.FontAwesome;
+import com.vaadin.shared.ui.textfield.TextChangeEventMode;
 import com.vaadin.ui.*;
 import com.vaadin.ui.MenuBar.MenuItem;
 import com.vaadin.ui.Table.Align;
 import org.kabieror.elwasys.common.FormatUtilities;
-import org.kabieror.elwasys.common.NoDataFoundException;
 import org.kabieror.elwasys.common.User;
 import org.kabieror.elwasys.webportal.WashportalManager;
 import org.kabieror.elwasys.webportal.components.*;
+import org.kabieror.elwasys.webportal.data.LazyUserSummaryContainer;
+import org.kabieror.elwasys.webportal.data.UserSummary;
+import org.kabieror.elwasys.webportal.data.UserSummaryTotals;
 import org.kabieror.elwasys.webportal.events.IUserUpdatedEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.text.NumberFormat;
-import java.util.Collection;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -37,11 +34,11 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
      */
     public static final String VIEW_NAME = "users";
     static final String ICON_PROPERTY = "icon";
-    static final String INDEX_PROPERTY = "ID";
-    static final String CAPTION_PROPERTY = "Name";
-    static final String GROUP_PROPERTY = "Gruppe";
-    static final String CARD_ID_PROPERTY = "Kartennummer";
-    static final String CREDIT_PROPERTY = "Guthaben";
+    static final String INDEX_PROPERTY = LazyUserSummaryContainer.INDEX_PROPERTY;
+    static final String CAPTION_PROPERTY = LazyUserSummaryContainer.NAME_PROPERTY;
+    static final String GROUP_PROPERTY = LazyUserSummaryContainer.GROUP_PROPERTY;
+    static final String CARD_ID_PROPERTY = LazyUserSummaryContainer.CARD_ID_PROPERTY;
+    static final String CREDIT_PROPERTY = LazyUserSummaryContainer.CREDIT_PROPERTY;
     static final String BUTTONS_PROPERTY = "buttons";
     /**
      *
@@ -49,7 +46,7 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
     private static final long serialVersionUID = 4574040337563844816L;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final Table usersTable;
-    private final Container usersContainer;
+    private final LazyUserSummaryContainer usersContainer;
 
     public UsersView() {
         this.setMargin(true);
@@ -63,13 +60,26 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
         title.addStyleName("h1");
         topLayout.addComponent(title);
 
+        // Suche nach Name, Gruppe oder Kartennummer
+        final TextField tfFilter = new TextField();
+        tfFilter.setInputPrompt("Suchen");
+        tfFilter.setIcon(FontAwesome.SEARCH);
+        tfFilter.addStyleName("inline-icon");
+        tfFilter.setTextChangeEventMode(TextChangeEventMode.LAZY);
+        tfFilter.addTextChangeListener(e -> {
+            this.usersContainer.setFilter(e.getText());
+            this.updateSumRow();
+        });
+        topLayout.addComponent(tfFilter);
+
         final MenuBar menuBar = new MenuBar();
         final MenuItem menuAdd = menuBar.addItem("Neu", i -> this.newUser());
         menuAdd.setIcon(FontAwesome.PLUS);
 
         topLayout.addComponent(menuBar);
+        topLayout.setSpacing(true);
+        topLayout.setComponentAlignment(tfFilter, Alignment.BOTTOM_RIGHT);
         topLayout.setComponentAlignment(menuBar, Alignment.BOTTOM_RIGHT);
-        topLayout.setExpandRatio(menuBar, 2);
         topLayout.setExpandRatio(title, 1);
 
         this.addComponent(topLayout);
@@ -80,16 +90,13 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
         this.usersTable.setSizeFull();
         this.usersTable.setMultiSelect(false);
         this.usersTable.setSelectable(false);
-        this.usersContainer = new IndexedContainer();
-
-        this.usersContainer.addContainerProperty(ICON_PROPERTY, Button.class, null);
-        this.usersContainer.addContainerProperty(INDEX_PROPERTY, Integer.class, null);
-        this.usersContainer.addContainerProperty(CAPTION_PROPERTY, String.class, null);
-        this.usersContainer.addContainerProperty(GROUP_PROPERTY, String.class, null);
-        this.usersContainer.addContainerProperty(CARD_ID_PROPERTY, String.class, null);
-        this.usersContainer.addContainerProperty(CREDIT_PROPERTY, BigDecimal.class, null);
+        this.usersContainer = new LazyUserSummaryContainer();
 
         this.usersTable.setContainerDataSource(this.usersContainer);
+        this.usersTable.addGeneratedColumn(ICON_PROPERTY,
+                (Table source, Object itemId, Object columnId) -> this.buildUserIcon(itemId));
+        this.usersTable.setVisibleColumns(ICON_PROPERTY, INDEX_PROPERTY, CAPTION_PROPERTY, GROUP_PROPERTY,
+                CARD_ID_PROPERTY, CREDIT_PROPERTY);
         this.usersTable.setColumnWidth(ICON_PROPERTY, 40);
         this.usersTable.setColumnHeader(ICON_PROPERTY, "");
         this.usersTable.setColumnAlignment(ICON_PROPERTY, Align.CENTER);
@@ -108,7 +115,6 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
         this.usersTable.setColumnAlignment(CREDIT_PROPERTY, Align.RIGHT);
 
         // 2.1. Buttons in Benutzer-Zeilen
-        this.usersTable.addContainerProperty(BUTTONS_PROPERTY, CssLayout.class, null);
         this.usersTable.addGeneratedColumn(BUTTONS_PROPERTY, (Table source, Object itemId, Object columnId) -> {
             final CssLayout group = new CssLayout();
             group.addStyleName("v-component-group");
@@ -155,7 +161,7 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
             btnCreditAccounting.addClickListener(e -> {
                 try {
                     final CreditAccountingWindow window = new CreditAccountingWindow(
-                            WashportalManager.instance.getDataManager().getUserById((Integer) itemId));
+                            WashportalManager.instance.getEntityCache().getUserById((Integer) itemId));
                     this.getUI().addWindow(window);
                     window.center();
                 } catch (final SQLException e1) {
@@ -204,63 +210,38 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
      * Lädt die Benutzer aus der Datenbank
      */
     private void loadData() {
-        this.usersContainer.removeAllItems();
-
-        List<User> users;
-        try {
-            users = WashportalManager.instance.getDataManager().getUsers();
-        } catch (final SQLException e) {
-            this.logger.error("Error while catching the available users from the database", e);
-            WashportalManager.instance.showDatabaseError(e);
-            return;
-        }
-        for (final User u : users) {
-            final Item i = this.usersContainer.addItem(u.getId());
-            this.fillItemWithUserData(i, u);
-        }
-        this.usersTable.sort(new Object[]{GROUP_PROPERTY, CAPTION_PROPERTY}, new boolean[]{true, true});
+        this.usersContainer.refresh();
         this.updateSumRow();
     }
 
     /**
-     * Befüllt ein Item, mit Daten eines Benutzers
+     * Erzeugt das Symbol einer Benutzer-Zeile
      *
-     * @param i Das zu befüllende Item
-     * @param u Der User, dessen Daten verwendet werden sollen
+     * @param itemId Die ID des Benutzers
      */
-    @SuppressWarnings("unchecked")
-    private void fillItemWithUserData(Item i, User u) {
+    private Button buildUserIcon(Object itemId) {
+        final UserSummary u = this.usersContainer.getSummary(itemId);
+        if (u == null) {
+            return null;
+        }
         final Button btn = new Button("");
         FontAwesome icon;
 
-        try {
-            u.update();
-        } catch (NoDataFoundException | SQLException e2) {
-            this.logger.error("Could not fill user table with data.", e2);
-            return;
-        }
-
-        boolean userHasExpiredExecutions = false;
-        try {
-            userHasExpiredExecutions = u.hasExpiredExecutions();
-        } catch (final SQLException e) {
-            this.logger.error("Error while looking up if user has expired executions.", e);
-        }
-
         if (u.isBlocked()) {
             icon = FontAwesome.MINUS_CIRCLE;
             btn.setDescription("Gesperrt");
             btn.setStyleName("icon-user-blocked");
             btn.setEnabled(false);
-        } else if (userHasExpiredExecutions) {
+        } else if (u.hasExpiredExecutions()) {
             icon = FontAwesome.EXCLAMATION_TRIANGLE;
             btn.setDescription("Es gibt nicht abgerechnete Programmausführungen");
             btn.setStyleName("icon-user-expired-executions");
             btn.addClickListener(e -> {
                 ExpiredExecutionsWindow window;
                 try {
-                    window = new ExpiredExecutionsWindow(u, () -> {
-                        this.onUserUpdated(u);
+                    final User user = WashportalManager.instance.getDataManager().getUserById(u.getId());
+                    window = new ExpiredExecutionsWindow(user, () -> {
+                        this.onUserUpdated(user);
                     });
                 } catch (final SQLException e1) {
                     this.logger.error("Could not load the window to show expired executions.", e1);
@@ -281,29 +262,17 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
         }
         btn.setIcon(icon);
         btn.addStyleName("borderless small");
-
-        i.getItemProperty(ICON_PROPERTY).setValue(btn);
-        i.getItemProperty(INDEX_PROPERTY).setValue(u.getId());
-        i.getItemProperty(CAPTION_PROPERTY).setValue(u.getName());
-        i.getItemProperty(GROUP_PROPERTY).setValue(u.getGroup().getName());
-        i.getItemProperty(CARD_ID_PROPERTY).setValue(u.getCardIds().length > 0 ?
-                u.getCardIds().length == 1 ? u.getCardIds()[0] : u.getCardIds().length + " Karten" : "");
-        i.getItemProperty(CREDIT_PROPERTY).setValue(u.getCredit());
+        return btn;
     }
 
     /**
      * Aktualisiert die Summenzeile
      */
     private void updateSumRow() {
-        Collection<?> ids = this.usersContainer.getItemIds();
-        this.usersTable.setColumnFooter(CAPTION_PROPERTY, ids.size() + " Benutzer");
-        BigDecimal sum = BigDecimal.ZERO;
-        for (Object id : ids) {
-           Item i = this.usersContainer.getItem(id);
-           sum = sum.add((BigDecimal) i.getItemProperty(CREDIT_PROPERTY).getValue());
-        }
+        final UserSummaryTotals totals = this.usersContainer.getTotals();
+        this.usersTable.setColumnFooter(CAPTION_PROPERTY, totals.getCount() + " Benutzer");
         this.usersTable.setColumnFooter(CREDIT_PROPERTY,
-                FormatUtilities.formatCurrency(sum));
+                FormatUtilities.formatCurrency(totals.getCreditSum()));
     }
 
 
@@ -324,8 +293,8 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
                 "Möchten Sie diesen Benutzer wirklich löschen?<br><b>" + u.getName() + "</b>", () -> {
             try {
                 u.setDeleted(true);
-                this.usersContainer.removeItem(u.getId());
-                this.updateSumRow();
+                WashportalManager.instance.getEntityCache().onUserUpdated(u);
+                this.onUserUpdated(u);
             } catch (final SQLException e) {
                 this.logger.error("Could not delete the user " + u.getId() + ".", e);
                 WashportalManager.instance.showDatabaseError(e);
@@ -337,14 +306,9 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
         this.getUI().addWindow(confirmWindow);
     }
 
-    @SuppressWarnings("unchecked")
     private void addCredit(User u) {
         final UserCreditWindow creditWindow = new UserCreditWindow(u, () -> {
-            final Item i = this.usersContainer.getItem(u.getId());
-            i.getItemProperty(CREDIT_PROPERTY).setValue(u.getCredit());
-        });
-        creditWindow.addCloseListener((args) -> {
-            this.updateSumRow();
+            this.onUserUpdated(u);
         });
         this.getUI().addWindow(creditWindow);
     }
@@ -355,13 +319,9 @@ public class UsersView extends VerticalLayout implements View, IUserUpdatedEvent
      */
     @Override
     public void onUserUpdated(User u) {
-        Item i;
-        if (this.usersContainer.containsId(u.getId())) {
-            i = this.usersContainer.getItem(u.getId());
-        } else {
-            i = this.usersContainer.addItem(u.getId());
-        }
-        this.fillItemWithUserData(i, u);
+        // Die eigene Änderung muss in der Tabelle sichtbar sein
+        WashportalManager.instance.getPortalDataManager().markWritten();
+        this.usersContainer.refresh();
         this.updateSumRow();
     }
 }
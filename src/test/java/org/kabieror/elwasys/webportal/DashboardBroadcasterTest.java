@@ -0,0 +1,142 @@
+package org.kabieror.elwasys.webportal;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kabieror.elwasys.webportal.data.ChangeEvent;
+import org.kabieror.elwasys.webportal.data.ChangeFeed;
+import org.kabieror.elwasys.webportal.data.ExecutionSummary;
+import org.kabieror.elwasys.webportal.data.PortalDataManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prüft, dass das Administrator-Dashboard aus dem gemeinsamen Stand des
+ * {@link DashboardBroadcaster} gerendert werden kann: Bereits verfolgte
+ * Geräte werden ohne Datenbankzugriff beantwortet, und nach einer
+ * Änderungsmeldung wird nur das geänderte Gerät von der Hauptdatenbank
+ * geladen.
+ *
+ * @author Oliver Kabierschke
+ */
+public class DashboardBroadcasterTest {
+
+    private final RecordingDataManager dataManager = new RecordingDataManager();
+
+    private DashboardBroadcaster broadcaster;
+
+    @After
+    public void tearDown() {
+        if (this.broadcaster != null) {
+            this.broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    public void renderingTrackedDevicesUsesTheSnapshot() throws Exception {
+        this.broadcaster = new DashboardBroadcaster(this.dataManager, null, 5, 3600);
+
+        final Map<Integer, List<ExecutionSummary>> first = this.broadcaster.getExecutions(Arrays.asList(1, 2));
+        final Load load = this.dataManager.loads.poll();
+        assertNotNull(load);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), load.deviceIds);
+        assertFalse(load.primary);
+
+        // Weitere Sitzungen rendern dieselben Geräte ohne Abfrage
+        final Map<Integer, List<ExecutionSummary>> second = this.broadcaster.getExecutions(Arrays.asList(2, 1));
+        assertNull(this.dataManager.loads.poll());
+        assertEquals(first, second);
+
+        // Nur das noch nicht verfolgte Gerät wird geladen
+        this.broadcaster.getExecutions(Arrays.asList(1, 2, 3));
+        assertEquals(Collections.singleton(3), this.dataManager.loads.poll().deviceIds);
+        assertNull(this.dataManager.loads.poll());
+    }
+
+    @Test
+    public void changeReloadsOnlyTheChangedDeviceFromThePrimary() throws Exception {
+        final ChangeFeed feed = new ChangeFeed("jdbc:postgresql://localhost/elwasys", new Properties(), 500) {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+        };
+        this.broadcaster = new DashboardBroadcaster(this.dataManager, feed, 5, 1);
+        final List<Integer> devices = Arrays.asList(1, 2);
+        this.broadcaster.getExecutions(devices);
+        this.dataManager.loads.clear();
+
+        final BlockingQueue<Map<Integer, List<ExecutionSummary>>> notifications = new LinkedBlockingQueue<>();
+        this.broadcaster.subscribe(notifications::add, devices);
+
+        // Der erste Durchlauf gleicht alle Geräte ab
+        final Load resync = this.dataManager.loads.poll(5, TimeUnit.SECONDS);
+        assertNotNull(resync);
+        assertEquals(new HashSet<>(devices), resync.deviceIds);
+
+        this.dataManager.executions.put(2, Collections.singletonList(
+                new ExecutionSummary(10, 2, LocalDateTime.now().minusMinutes(90), LocalDateTime.now().minusMinutes(30),
+                        "Anna", new BigDecimal("1.50"), false, false)));
+        this.broadcaster.onDatabaseChanged(new ChangeEvent(ChangeEvent.Table.EXECUTION,
+                ChangeEvent.Operation.INSERT, 10, 2));
+
+        final Load reload = this.dataManager.loads.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reload);
+        assertEquals(Collections.singleton(2), reload.deviceIds);
+        assertTrue(reload.primary);
+
+        final Map<Integer, List<ExecutionSummary>> changed = notifications.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changed);
+        assertEquals(Collections.singleton(2), changed.keySet());
+
+        // Ohne weitere Meldungen wird nichts mehr geladen
+        assertNull(this.dataManager.loads.poll(1500, TimeUnit.MILLISECONDS));
+        assertEquals(changed.get(2), this.broadcaster.getExecutions(Collections.singletonList(2)).get(2));
+        assertNull(this.dataManager.loads.poll());
+    }
+
+    /**
+     * Eine Abfrage der letzten Ausführungen
+     */
+    private static class Load {
+        private final Set<Integer> deviceIds;
+        private final boolean primary;
+
+        Load(Collection<Integer> deviceIds, boolean primary) {
+            this.deviceIds = new HashSet<>(deviceIds);
+            this.primary = primary;
+        }
+    }
+
+    /**
+     * Beantwortet die Abfragen aus dem Speicher und zeichnet sie auf
+     */
+    private static class RecordingDataManager extends PortalDataManager {
+        private final BlockingQueue<Load> loads = new LinkedBlockingQueue<>();
+        private final Map<Integer, List<ExecutionSummary>> executions = new ConcurrentHashMap<>();
+
+        RecordingDataManager() {
+            super(null);
+        }
+
+        @Override
+        public Map<Integer, List<ExecutionSummary>> getLastExecutions(Collection<Integer> deviceIds, int depth,
+                                                                      boolean primary) {
+            this.loads.add(new Load(deviceIds, primary));
+            final Map<Integer, List<ExecutionSummary>> res = new HashMap<>();
+            for (final Integer id : deviceIds) {
+                if (this.executions.containsKey(id)) {
+                    res.put(id, new ArrayList<>(this.executions.get(id)));
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.kabieror.elwasys.webportal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kabieror.elwasys.common.maintenance.IClientConnection;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Prüft die Frist und den Abbruch von Anfragen an die Clients.
+ *
+ * @author Oliver Kabierschke
+ */
+public class MaintenanceConnectionManagerTest {
+
+    private static final String LOCATION = "Waschküche";
+
+    private final IClientConnection client = (IClientConnection) Proxy.newProxyInstance(
+            IClientConnection.class.getClassLoader(), new Class<?>[] { IClientConnection.class },
+            (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private MaintenanceConnectionManager manager;
+
+    @Before
+    public void setUp() {
+        this.manager = new MaintenanceConnectionManager(null, 2, 4, 5000);
+    }
+
+    @After
+    public void tearDown() {
+        this.manager.shutdown();
+    }
+
+    @Test
+    public void returnsTheValueOfTheCall() throws Exception {
+        final CompletableFuture<String> result = this.manager.callAsync(LOCATION, this.client, c -> {
+            assertSame(this.client, c);
+            return "ok";
+        }, 5000);
+
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertEquals(0, this.manager.getMetrics().getClients().get(LOCATION).getFailures());
+    }
+
+    @Test
+    public void deadlineFailsTheResultAndInterruptsTheCall() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CompletableFuture<String> result = this.manager.callAsync(LOCATION, this.client,
+                c -> this.block(interrupted), 200);
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("The call should have timed out.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, this.manager.getMetrics().getClients().get(LOCATION).getTimeouts());
+    }
+
+    @Test
+    public void cancellingTheResultInterruptsTheCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CompletableFuture<String> result = this.manager.callAsync(LOCATION, this.client, c -> {
+            started.countDown();
+            return this.block(interrupted);
+        }, 5000);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(result.cancel(true));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(this.manager.getMetrics().getClients().get(LOCATION) == null
+                || this.manager.getMetrics().getClients().get(LOCATION).getTimeouts() == 0);
+    }
+
+    /**
+     * Blockiert wie ein Client, der nicht antwortet, bis der Thread
+     * unterbrochen wird.
+     */
+    private String block(CountDownLatch interrupted) throws InterruptedException {
+        try {
+            new CountDownLatch(1).await();
+        } catch (final InterruptedException e) {
+            interrupted.countDown();
+            throw e;
+        }
+        return null;
+    }
+}